@@ -0,0 +1,98 @@
+package nl.bigo.rrdantlr4;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Runs the benchmarks of this module. It accepts the same arguments as
+ * JMH's own main class, but always adds the gc profiler, so every result
+ * reports the allocation rate next to the throughput.
+ */
+public final class Benchmarks {
+
+    // The directory the benchmarked grammars are copied to.
+    private static File grammarDir;
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    /**
+     * Returns a local copy of one of the grammars on the class path:
+     * `DiagramGenerator` names its output after the file it reads.
+     *
+     * @param name
+     *         the name of the grammar, like `Json.g4`.
+     *
+     * @return the path of the local copy.
+     *
+     * @throws IOException
+     *         when the grammar could not be copied.
+     */
+    static synchronized String grammarFile(String name) throws IOException {
+
+        if (grammarDir == null) {
+            grammarDir = File.createTempFile("rrd-benchmarks", "");
+
+            if (!grammarDir.delete() || !grammarDir.mkdir()) {
+                throw new IOException("could not create: " + grammarDir);
+            }
+
+            grammarDir.deleteOnExit();
+        }
+
+        File file = new File(grammarDir, name);
+
+        if (!file.isFile()) {
+
+            InputStream in = Benchmarks.class.getResourceAsStream("/" + name);
+
+            if (in == null) {
+                throw new IOException("no such grammar: " + name);
+            }
+
+            OutputStream out = new FileOutputStream(file);
+
+            try {
+                byte[] buffer = new byte[8192];
+
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            finally {
+                out.close();
+                in.close();
+            }
+
+            file.deleteOnExit();
+        }
+
+        return file.getPath();
+    }
+}
@@ -0,0 +1,83 @@
+package nl.bigo.rrdantlr4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracting the rule descriptions from the comments of a grammar:
+ * `scanner` is what `CommentsParser` does, `regex` the regular
+ * expressions it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommentsParserBenchmark {
+
+    private static final Pattern COMMENT = Pattern.compile("/\\*(.)*?\\*/", Pattern.MULTILINE | Pattern.DOTALL);
+
+    private static final Pattern RULE_NAME = Pattern.compile("<(.*?)>", Pattern.MULTILINE | Pattern.DOTALL);
+
+    @Param({"Java.g4"})
+    public String grammar;
+
+    private String input;
+
+    @Setup
+    public void setUp() throws IOException {
+        input = GrammarSource.load(Benchmarks.grammarFile(grammar)).getText().toString();
+
+        if (!scanner().equals(regex())) {
+            throw new IllegalStateException("different comments in: " + grammar);
+        }
+    }
+
+    // The regular expressions `CommentsParser.commentsMap` used to apply.
+    @Benchmark
+    public Map<String, String> regex() {
+        Map<String, String> commentsMap = new HashMap<String, String>();
+        List<String> comments = new ArrayList<String>();
+
+        Matcher commentMatcher = COMMENT.matcher(input);
+
+        while (commentMatcher.find()) {
+            comments.add(commentMatcher.group());
+        }
+
+        for (String comment : comments) {
+            Matcher ruleName = RULE_NAME.matcher(comment);
+
+            if (ruleName.find()) {
+                commentsMap.put(ruleName.group(1), comment.replaceAll("<(.*?)>", "")
+                        .replaceAll("/\\*|\\*/", "").trim());
+            }
+        }
+
+        return commentsMap;
+    }
+
+    @Benchmark
+    public Map<String, String> scanner() {
+        return CommentsParser.commentsMap(input);
+    }
+}
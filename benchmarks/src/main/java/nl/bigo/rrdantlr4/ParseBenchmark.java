@@ -0,0 +1,71 @@
+package nl.bigo.rrdantlr4;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases in which `DiagramGenerator` turns a grammar into diagram
+ * models: parsing the grammar, and visiting the parse tree.
+ *
+ * `grammarSpec` is the plain LL parse, `twoStage` the SLL-then-LL parse
+ * `DiagramGenerator` uses: compare the two for the speedup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"Java.g4", "IRI.g4", "Json.g4"})
+    public String grammar;
+
+    private GrammarSource source;
+    private ParseTree tree;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = GrammarSource.load(Benchmarks.grammarFile(grammar));
+        tree = grammarSpec();
+    }
+
+    // Lexes and parses the whole grammar with a new lexer and parser, in
+    // the default LL prediction mode.
+    @Benchmark
+    public ParseTree grammarSpec() {
+        ANTLRv4Lexer lexer = new ANTLRv4Lexer(source.newCharStream());
+        ANTLRv4Parser parser = new ANTLRv4Parser(new CommonTokenStream(lexer));
+        return parser.grammarSpec();
+    }
+
+    // Lexes and parses the whole grammar the way `DiagramGenerator` does:
+    // SLL first, with the reused lexer and parser of the thread.
+    @Benchmark
+    public ParseTree twoStage() {
+        return GrammarParser.parse(source);
+    }
+
+    // Turns the parse tree of the grammar into diagram models.
+    @Benchmark
+    public Map<String, DiagramNode> visit() {
+        RuleVisitor visitor = new RuleVisitor();
+        visitor.visit(tree);
+        return visitor.getDiagramModels();
+    }
+}
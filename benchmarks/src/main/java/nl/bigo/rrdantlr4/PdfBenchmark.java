@@ -0,0 +1,48 @@
+package nl.bigo.rrdantlr4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating the pdf with all rules of a grammar, in both modes. The pdf
+ * is written to `./output/<grammar>`, like the command line tool does.
+ * A raster pdf includes rasterizing the PNG images it embeds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PdfBenchmark {
+
+    @Param({"Java.g4", "IRI.g4", "Json.g4"})
+    public String grammar;
+
+    @Param({"VECTOR", "RASTER"})
+    public PdfMode pdfMode;
+
+    private DiagramGenerator generator;
+
+    @Setup
+    public void setUp() throws IOException {
+        generator = new DiagramGenerator(Benchmarks.grammarFile(grammar));
+    }
+
+    @Benchmark
+    public boolean createPdf() {
+        return generator.createPdf(pdfMode);
+    }
+}
@@ -0,0 +1,54 @@
+package nl.bigo.rrdantlr4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rasterizing the PNG image of every rule of a grammar, one rule at a
+ * time. The images are written to `./output/<grammar>`, like the command
+ * line tool does.
+ *
+ * Run with `-p compression=1,6,9` to compare the compression levels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PngBenchmark {
+
+    @Param({"Java.g4", "IRI.g4", "Json.g4"})
+    public String grammar;
+
+    @Param({"6"})
+    public int compression;
+
+    private DiagramGenerator generator;
+
+    @Setup
+    public void setUp() throws IOException {
+        generator = new DiagramGenerator(Benchmarks.grammarFile(grammar));
+        generator.setPngCompression(compression);
+    }
+
+    @Benchmark
+    public void createDiagram(Blackhole blackhole) {
+        for (String ruleName : generator.getRuleNames()) {
+            blackhole.consume(generator.createDiagram(ruleName));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package nl.bigo.rrdantlr4;
+
+import nl.bigo.rrdantlr4.railroad.Linker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases in which `DiagramGenerator` turns diagram models into text:
+ * rendering the SVG of every rule, linking the rules in those SVGs, and
+ * creating the html page. Every operation covers all rules of a grammar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"Java.g4", "IRI.g4", "Json.g4"})
+    public String grammar;
+
+    @Param({"JAVA"})
+    public Renderer renderer;
+
+    private DiagramGenerator generator;
+    private List<String> svgs;
+    private Linker linker;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        generator = new DiagramGenerator(Benchmarks.grammarFile(grammar), renderer);
+        svgs = new ArrayList<String>();
+
+        final Map<String, String> hrefs = new HashMap<String, String>();
+
+        for (String ruleName : generator.getRuleNames()) {
+            svgs.add(generator.getSVG(ruleName));
+            hrefs.put(ruleName, "#" + grammar + "_" + ruleName);
+        }
+
+        // The same references as the html page uses.
+        linker = new Linker() {
+            @Override
+            public String href(String text) {
+                return hrefs.get(text);
+            }
+
+            @Override
+            public String target() {
+                return null;
+            }
+        };
+    }
+
+    @Benchmark
+    public void getSVG(Blackhole blackhole) {
+        for (String ruleName : generator.getRuleNames()) {
+            blackhole.consume(generator.getSVG(ruleName));
+        }
+    }
+
+    // The same, on 4 threads sharing the generator, like the PNG workers
+    // and the threads of `DiagramServer` do.
+    @Benchmark
+    @Threads(4)
+    public void getSVGParallel(Blackhole blackhole) {
+        for (String ruleName : generator.getRuleNames()) {
+            blackhole.consume(generator.getSVG(ruleName));
+        }
+    }
+
+    // Links the non-terminals in SVGs that were rendered without links,
+    // as is done for diagrams coming from the cache.
+    @Benchmark
+    public void link(Blackhole blackhole) {
+        for (String svg : svgs) {
+            blackhole.consume(Renderer.link(svg, linker));
+        }
+    }
+
+    @Benchmark
+    public String getHtml() {
+        return generator.getHtml("index.html", false);
+    }
+}
@@ -0,0 +1,620 @@
+package nl.bigo.rrdantlr4;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the whole `DiagramGenerator` pipeline (parsing, PNG images, pdf
+ * and html page) over synthetic grammars of growing size, and compares
+ * the results with a stored baseline:
+ *
+ * - the number of rules, diagram elements and output bytes of every
+ *   grammar,
+ * - how much more time a grammar takes, and how many more bytes it
+ *   allocates on the heap, than a smaller one measured in the same run,
+ *   like 2000 rules over 100: these ratios do not depend on the speed of
+ *   the machine, but grow when the tool stops scaling linearly.
+ *
+ * It exits with status 1 when any of them changed, or got larger by more
+ * than the tolerance, so it can be used as a check:
+ *
+ *     mvn verify -P scaling
+ *
+ * A run with `--record` stores its results as the new baseline; without
+ * a baseline, the check fails. The absolute wall time and peak heap do
+ * depend on the machine, and are only recorded with `--timings`: a
+ * baseline with them should be recorded on the machine that runs the
+ * check, and is not the one committed with this module.
+ */
+public final class ScalingHarness {
+
+    private static final SyntheticGrammar R100 = new SyntheticGrammar(100, 8, 3, 0.25);
+    private static final SyntheticGrammar R1000 = new SyntheticGrammar(1000, 8, 3, 0.25);
+    private static final SyntheticGrammar R2000 = new SyntheticGrammar(2000, 8, 3, 0.25);
+    private static final SyntheticGrammar W8 = new SyntheticGrammar(200, 8, 2, 0.25);
+    private static final SyntheticGrammar W300 = new SyntheticGrammar(200, 300, 2, 0.25);
+    private static final SyntheticGrammar D3 = new SyntheticGrammar(200, 8, 3, 0.25);
+    private static final SyntheticGrammar D12 = new SyntheticGrammar(200, 8, 12, 0.25);
+    private static final SyntheticGrammar C100 = new SyntheticGrammar(1000, 8, 3, 1.0);
+
+    // The grammars the pipeline runs over: growing rule counts, and the
+    // extremes of every other dimension.
+    private static final List<SyntheticGrammar> GRAMMARS = Arrays.asList(R100, R1000, R2000, W8, W300, D3, D12, C100);
+
+    // The grammars that differ in a single dimension only: how much more a
+    // grammar takes than the other is compared with the baseline.
+    private static final List<Ratio> RATIOS = Arrays.asList(
+            new Ratio("rules_2000_over_100", R2000, R100),
+            new Ratio("rules_2000_over_1000", R2000, R1000),
+            new Ratio("rules_1000_over_100", R1000, R100),
+            new Ratio("width_300_over_8", W300, W8),
+            new Ratio("depth_12_over_3", D12, D3),
+            new Ratio("comments_100_over_25", C100, R1000)
+    );
+
+    // The number of times the smallest grammar is processed before
+    // anything is measured.
+    private static final int WARM_UP_RUNS = 5;
+
+    // Wall times below this many milliseconds are too noisy to compare
+    // relatively: they may grow by this much on top of the tolerance.
+    private static final long TIME_SLACK_MILLIS = 250;
+
+    @Option(name="--baseline", metaVar = "FILE", usage = "The file the baseline is read from, and recorded to." +
+            "\nDefault is scaling-baseline.properties")
+    private File baseline = new File("scaling-baseline.properties");
+
+    @Option(name="--record", usage = "Record the results as the new baseline instead of checking them.")
+    private boolean record;
+
+    @Option(name="--timings", usage = "Also record the wall time and peak heap, which depend on the machine. They are checked whenever the baseline has them.")
+    private boolean timings;
+
+    @Option(name="--runs", metaVar = "COUNT", usage = "The number of times every grammar is processed: the best run counts." +
+            "\nDefault is 3")
+    private int runs = 3;
+
+    @Option(name="--threads", metaVar = "COUNT", usage = "The number of threads used to create the PNG images." +
+            "\nDefault is the number of processors")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name="--time-tolerance", metaVar = "FACTOR", usage = "How many times slower than the baseline a grammar may get." +
+            "\nDefault is 1.5")
+    private double timeTolerance = 1.5;
+
+    @Option(name="--heap-tolerance", metaVar = "FACTOR", usage = "How many times more heap than the baseline a grammar may use." +
+            "\nDefault is 1.5")
+    private double heapTolerance = 1.5;
+
+    @Option(name="--ratio-tolerance", metaVar = "FACTOR", usage = "How many times larger than the baseline the ratio of " +
+            "the time or allocated heap of two grammars may get.\nDefault is 1.5")
+    private double ratioTolerance = 1.5;
+
+    @Option(name="--size-tolerance", metaVar = "FACTOR", usage = "How many times larger than the baseline the output may get." +
+            "\nDefault is 1.05")
+    private double sizeTolerance = 1.05;
+
+    @Option(name="--help", aliases = {"-?","-h"}, help = true, usage = "Show the command line usage and exit")
+    private boolean requestingHelp;
+
+    // Counts the bytes allocated by all threads.
+    private final Allocations allocations = new Allocations();
+
+    /**
+     * What processing a single grammar took.
+     */
+    static final class Result {
+
+        final String grammar;
+        final int rules;
+        final long elements;
+        final long wallMillis;
+        final long peakHeapBytes;
+        final long allocatedBytes;
+        final long outputBytes;
+
+        Result(String grammar, int rules, long elements, long wallMillis, long peakHeapBytes, long allocatedBytes,
+               long outputBytes) {
+            this.grammar = grammar;
+            this.rules = rules;
+            this.elements = elements;
+            this.wallMillis = wallMillis;
+            this.peakHeapBytes = peakHeapBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.outputBytes = outputBytes;
+        }
+    }
+
+    /**
+     * Counts the bytes allocated on the heap by all threads, including the
+     * ones that are gone by now: the heap in use, plus what every garbage
+     * collection freed.
+     */
+    static final class Allocations implements NotificationListener {
+
+        // The collections that were counted, by collector.
+        private final Map<String, Long> counted = new HashMap<String, Long>();
+        private long freedBytes;
+
+        Allocations() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+
+        @Override
+        public synchronized void handleNotification(Notification notification, Object handback) {
+
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+
+            freedBytes += used(info.getGcInfo().getMemoryUsageBeforeGc()) - used(info.getGcInfo().getMemoryUsageAfterGc());
+            counted.put(info.getGcName(), info.getGcInfo().getId());
+            notifyAll();
+        }
+
+        private static long used(Map<String, MemoryUsage> pools) {
+
+            long used = 0;
+
+            for (MemoryUsage usage : pools.values()) {
+                used += usage.getUsed();
+            }
+
+            return used;
+        }
+
+        /**
+         * Collects the garbage, and returns the number of bytes allocated
+         * so far: the heap in use now, plus what all collections freed.
+         *
+         * @return the number of bytes allocated so far.
+         *
+         * @throws InterruptedException
+         *         when interrupted while waiting for the collections to be
+         *         counted.
+         */
+        synchronized long collect() throws InterruptedException {
+
+            System.gc();
+
+            // The collections are counted on another thread: wait for it
+            // to catch up with this one.
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+
+                Long seen = counted.get(collector.getName());
+
+                while ((seen == null ? 0 : seen) < collector.getCollectionCount()) {
+                    wait(TimeUnit.SECONDS.toMillis(10));
+                    seen = counted.get(collector.getName());
+                }
+            }
+
+            Runtime runtime = Runtime.getRuntime();
+
+            return runtime.totalMemory() - runtime.freeMemory() + freedBytes;
+        }
+    }
+
+    /**
+     * Two grammars of which the time and allocations are compared.
+     */
+    static final class Ratio {
+
+        final String name;
+        final SyntheticGrammar numerator;
+        final SyntheticGrammar denominator;
+
+        Ratio(String name, SyntheticGrammar numerator, SyntheticGrammar denominator) {
+            this.name = name;
+            this.numerator = numerator;
+            this.denominator = denominator;
+        }
+
+        double time(Map<String, Result> results) {
+            return (double) results.get(numerator.getName()).wallMillis /
+                    results.get(denominator.getName()).wallMillis;
+        }
+
+        double heap(Map<String, Result> results) {
+            return (double) results.get(numerator.getName()).allocatedBytes /
+                    results.get(denominator.getName()).allocatedBytes;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        ScalingHarness harness = new ScalingHarness();
+        CmdLineParser cmdLineParser = new CmdLineParser(harness);
+
+        try {
+            cmdLineParser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            cmdLineParser.printUsage(System.err);
+            System.exit(1);
+        }
+
+        if (harness.requestingHelp) {
+            cmdLineParser.printUsage(System.out);
+            System.exit(0);
+        }
+
+        System.exit(harness.run() ? 0 : 1);
+    }
+
+    /**
+     * Processes all grammars, and either records the results or checks
+     * them against the baseline.
+     *
+     * @return `true` iff no grammar regressed.
+     *
+     * @throws Exception
+     *         when a grammar could not be processed.
+     */
+    boolean run() throws Exception {
+
+        if (!record && !baseline.isFile()) {
+            System.out.println("no baseline in: " + baseline + ", run with --record to create it");
+            return false;
+        }
+
+        File directory = File.createTempFile("rrd-scaling", "");
+
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("could not create: " + directory);
+        }
+
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+
+        try {
+            // Warm up the JIT on the smallest grammar first: a grammar
+            // measured while it is still compiling would seem slower than
+            // the ones after it, and skew their ratios.
+            for (int i = 0; i < WARM_UP_RUNS; i++) {
+                measure(GRAMMARS.get(0).write(directory));
+            }
+
+            for (SyntheticGrammar grammar : GRAMMARS) {
+
+                File file = grammar.write(directory);
+                Result best = null;
+
+                for (int i = 0; i < runs; i++) {
+                    Result result = measure(file);
+
+                    if (best == null || result.wallMillis < best.wallMillis) {
+                        best = result;
+                    }
+                }
+
+                System.out.printf("%-32s %6d rules %8d elements %8dms %8dMB peak %8dMB allocated %10d bytes%n",
+                        best.grammar, best.rules, best.elements, best.wallMillis, best.peakHeapBytes / (1024 * 1024),
+                        best.allocatedBytes / (1024 * 1024), best.outputBytes);
+
+                results.put(best.grammar, best);
+            }
+        }
+        finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+
+        for (Ratio ratio : RATIOS) {
+            System.out.printf("%-32s %8.2f time %8.2f allocated%n", ratio.name, ratio.time(results), ratio.heap(results));
+        }
+
+        if (record) {
+            save(results);
+            System.out.println("recorded the baseline in: " + baseline);
+            return true;
+        }
+
+        return check(results, load());
+    }
+
+    // Runs the whole pipeline over a grammar, like the command line tool
+    // does with `--png --pdf`.
+    private Result measure(File grammar) throws Exception {
+
+        long allocatedBytes = allocations.collect();
+
+        List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heap.add(pool);
+            }
+        }
+
+        long start = System.nanoTime();
+
+        DiagramGenerator generator = new DiagramGenerator(grammar.getPath());
+        generator.setOutputDir(new File(grammar.getParentFile(), "output"));
+
+        if (!generator.createDiagrams(generator.getRuleNames(), threads).isEmpty()) {
+            throw new IllegalStateException("could not create all png images of: " + grammar);
+        }
+
+        if (!generator.createPdf(PdfMode.VECTOR)) {
+            throw new IllegalStateException("could not create the pdf of: " + grammar);
+        }
+
+        if (!generator.createHtml()) {
+            throw new IllegalStateException("could not create the html page of: " + grammar);
+        }
+
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        allocatedBytes = allocations.collect() - allocatedBytes;
+
+        long peakHeapBytes = 0;
+
+        for (MemoryPoolMXBean pool : heap) {
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+
+        long outputBytes = 0;
+
+        for (File file : generator.getOutputDir().listFiles()) {
+            outputBytes += file.length();
+        }
+
+        long elements = 0;
+
+        for (String ruleName : generator.getRuleNames()) {
+            elements += generator.getDiagramModel(ruleName).accept(COUNT_ELEMENTS);
+        }
+
+        for (File file : generator.getOutputDir().listFiles()) {
+            file.delete();
+        }
+
+        generator.getOutputDir().delete();
+
+        return new Result(grammar.getName().replaceAll("\\.g4$", ""), generator.getRuleNames().size(), elements,
+                wallMillis, peakHeapBytes, allocatedBytes, outputBytes);
+    }
+
+    // Counts the nodes of a diagram model: the elements of its diagram.
+    private static final DiagramNode.Visitor<Long> COUNT_ELEMENTS = new DiagramNode.Visitor<Long>() {
+
+        private long count(List<DiagramNode> nodes) {
+
+            long count = 1;
+
+            for (DiagramNode node : nodes) {
+                count += node.accept(this);
+            }
+
+            return count;
+        }
+
+        @Override
+        public Long visitSequence(DiagramNode.Sequence sequence) {
+            return count(sequence.getItems());
+        }
+
+        @Override
+        public Long visitChoice(DiagramNode.Choice choice) {
+            return count(choice.getAlternatives());
+        }
+
+        @Override
+        public Long visitRepetition(DiagramNode.Repetition repetition) {
+            return 1 + repetition.getItem().accept(this);
+        }
+
+        @Override
+        public Long visitTerminal(DiagramNode.Terminal terminal) {
+            return 1L;
+        }
+
+        @Override
+        public Long visitNonTerminal(DiagramNode.NonTerminal nonTerminal) {
+            return 1L;
+        }
+
+        @Override
+        public Long visitComment(DiagramNode.Comment comment) {
+            return 1L;
+        }
+    };
+
+    private boolean check(Map<String, Result> results, Properties expected) {
+
+        boolean passed = true;
+
+        for (Result result : results.values()) {
+
+            String rules = expected.getProperty(result.grammar + ".rules");
+
+            if (rules == null) {
+                System.out.println(result.grammar + ": not in the baseline, run with --record to add it");
+                passed = false;
+                continue;
+            }
+
+            passed &= checkEqual(result.grammar, "rule count", result.rules, Long.parseLong(rules));
+
+            String elements = expected.getProperty(result.grammar + ".elements");
+
+            passed &= checkEqual(result.grammar, "element count", result.elements, Long.parseLong(elements));
+
+            String outputBytes = expected.getProperty(result.grammar + ".outputBytes");
+
+            passed &= check(result.grammar, "output size", result.outputBytes,
+                    (long) (Long.parseLong(outputBytes) * sizeTolerance), outputBytes + " bytes");
+
+            // Only in a baseline that was recorded with `--timings`.
+            String wallMillis = expected.getProperty(result.grammar + ".wallMillis");
+
+            if (wallMillis != null) {
+
+                long allowedMillis = Math.max((long) (Long.parseLong(wallMillis) * timeTolerance),
+                        Long.parseLong(wallMillis) + TIME_SLACK_MILLIS);
+
+                passed &= check(result.grammar, "wall time", result.wallMillis, allowedMillis, wallMillis + "ms");
+            }
+
+            String peakHeapBytes = expected.getProperty(result.grammar + ".peakHeapBytes");
+
+            if (peakHeapBytes != null) {
+                passed &= check(result.grammar, "peak heap", result.peakHeapBytes,
+                        (long) (Long.parseLong(peakHeapBytes) * heapTolerance), peakHeapBytes + " bytes");
+            }
+        }
+
+        for (Ratio ratio : RATIOS) {
+
+            String time = expected.getProperty("ratio." + ratio.name + ".time");
+            String heap = expected.getProperty("ratio." + ratio.name + ".heap");
+
+            if (time == null || heap == null) {
+                System.out.println(ratio.name + ": not in the baseline, run with --record to add it");
+                passed = false;
+                continue;
+            }
+
+            passed &= checkRatio(ratio.name, "time", ratio.time(results), Double.parseDouble(time));
+            passed &= checkRatio(ratio.name, "allocation", ratio.heap(results), Double.parseDouble(heap));
+        }
+
+        System.out.println(passed ? "no regressions against: " + baseline : "regressions against: " + baseline);
+
+        return passed;
+    }
+
+    private static boolean check(String grammar, String what, long actual, long allowed, String expected) {
+
+        if (actual <= allowed) {
+            return true;
+        }
+
+        System.out.println(grammar + ": " + what + " regressed: " + actual + ", the baseline is " + expected);
+        return false;
+    }
+
+    private boolean checkRatio(String ratio, String what, double actual, double expected) {
+
+        if (actual <= expected * ratioTolerance) {
+            return true;
+        }
+
+        System.out.printf("%s: %s ratio regressed: %.2f, the baseline is %.2f%n", ratio, what, actual, expected);
+        return false;
+    }
+
+    private static boolean checkEqual(String grammar, String what, long actual, long expected) {
+
+        if (actual == expected) {
+            return true;
+        }
+
+        System.out.println(grammar + ": " + what + " changed: " + actual + ", the baseline is " + expected);
+        return false;
+    }
+
+    private Properties load() throws IOException {
+
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(baseline);
+
+        try {
+            properties.load(in);
+        }
+        finally {
+            in.close();
+        }
+
+        return properties;
+    }
+
+    private void save(Map<String, Result> results) throws IOException {
+
+        Properties properties = new Properties();
+
+        for (Result result : results.values()) {
+            properties.setProperty(result.grammar + ".rules", String.valueOf(result.rules));
+            properties.setProperty(result.grammar + ".elements", String.valueOf(result.elements));
+            properties.setProperty(result.grammar + ".outputBytes", String.valueOf(result.outputBytes));
+
+            if (timings) {
+                properties.setProperty(result.grammar + ".wallMillis", String.valueOf(result.wallMillis));
+                properties.setProperty(result.grammar + ".peakHeapBytes", String.valueOf(result.peakHeapBytes));
+            }
+        }
+
+        for (Ratio ratio : RATIOS) {
+            properties.setProperty("ratio." + ratio.name + ".time", String.format(Locale.ROOT, "%.2f", ratio.time(results)));
+            properties.setProperty("ratio." + ratio.name + ".heap", String.format(Locale.ROOT, "%.2f", ratio.heap(results)));
+        }
+
+        StringWriter text = new StringWriter();
+
+        properties.store(text, timings ? String.format("recorded by ScalingHarness on java %s, %s, %d processors, %d threads",
+                System.getProperty("java.version"), System.getProperty("os.arch"),
+                Runtime.getRuntime().availableProcessors(), threads) : "recorded by ScalingHarness");
+
+        // The comments first, and the properties in order: a new baseline
+        // is committed as a readable diff of the old one.
+        List<String> comments = new ArrayList<String>();
+        List<String> lines = new ArrayList<String>();
+
+        for (String line : text.toString().split("\\r?\\n")) {
+            (line.startsWith("#") ? comments : lines).add(line);
+        }
+
+        Collections.sort(lines);
+        comments.addAll(lines);
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(baseline), "ISO-8859-1");
+
+        try {
+            for (String line : comments) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package nl.bigo.rrdantlr4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes ANTLR 4 grammars of any size, to see how the tool scales. Every
+ * parser rule has
+ *
+ * - an alternation of `width` keywords,
+ * - a chain of `depth` nested EBNF blocks, each one level deeper than
+ *   the one around it,
+ * - references to rules further down the grammar,
+ *
+ * and a `commentDensity` fraction of the rules is described by a block
+ * comment. The same parameters always give the same grammar.
+ */
+public final class SyntheticGrammar {
+
+    private final int rules;
+    private final int width;
+    private final int depth;
+    private final double commentDensity;
+
+    /**
+     * Creates a generator of grammars with the provided shape.
+     *
+     * @param rules
+     *         the number of parser rules.
+     * @param width
+     *         the number of keywords in the alternation of every rule.
+     * @param depth
+     *         the number of nested blocks in every rule.
+     * @param commentDensity
+     *         the fraction of rules that is described by a comment, from
+     *         `0` (none) to `1` (all).
+     */
+    public SyntheticGrammar(int rules, int width, int depth, double commentDensity) {
+
+        if (rules < 1 || width < 1 || depth < 0 || commentDensity < 0 || commentDensity > 1) {
+            throw new IllegalArgumentException(String.format("invalid grammar shape: rules=%d, width=%d, depth=%d, " +
+                    "commentDensity=%s", rules, width, depth, commentDensity));
+        }
+
+        this.rules = rules;
+        this.width = width;
+        this.depth = depth;
+        this.commentDensity = commentDensity;
+    }
+
+    /**
+     * Returns the name of the grammar, which describes its shape: like
+     * `Synthetic_r1000_w8_d3_c25` for 1000 rules, 8 keywords, 3 nested
+     * blocks and 25% comments.
+     *
+     * @return the name of the grammar.
+     */
+    public String getName() {
+        return String.format("Synthetic_r%d_w%d_d%d_c%d", rules, width, depth, Math.round(commentDensity * 100));
+    }
+
+    /**
+     * Returns the grammar.
+     *
+     * @return the grammar.
+     */
+    public String generate() {
+
+        StringBuilder grammar = new StringBuilder();
+        Random random = new Random(getName().hashCode());
+
+        grammar.append("grammar ").append(getName()).append(";\n\n");
+
+        for (int i = 0; i < rules; i++) {
+
+            // Spread the comments evenly over the grammar.
+            if (Math.floor((i + 1) * commentDensity) > Math.floor(i * commentDensity)) {
+                grammar.append("/* <").append(ruleName(i)).append(">\n")
+                        .append(" * Synthetic rule number ").append(i).append(", which has ")
+                        .append(width).append(" keywords and ").append(depth).append(" nested blocks.\n")
+                        .append(" */\n");
+            }
+
+            grammar.append(ruleName(i)).append("\n");
+            grammar.append(" : ");
+            appendKeywords(grammar, random);
+            grammar.append(' ');
+            appendBlock(grammar, random, i, depth);
+            grammar.append("\n | ID\n ;\n\n");
+        }
+
+        for (int i = 0; i < keywords(); i++) {
+            grammar.append(keywordName(i)).append(" : 'kw").append(i).append("';\n");
+        }
+
+        grammar.append("\nID : [a-zA-Z_] [a-zA-Z_0-9]*;\n");
+        grammar.append("WS : [ \\t\\r\\n]+ -> skip;\n");
+
+        return grammar.toString();
+    }
+
+    /**
+     * Writes the grammar to `directory`, in a file named after the grammar.
+     *
+     * @param directory
+     *         the directory to write the grammar to.
+     *
+     * @return the file the grammar was written to.
+     *
+     * @throws IOException
+     *         when the grammar could not be written.
+     */
+    public File write(File directory) throws IOException {
+
+        File file = new File(directory, getName() + ".g4");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            writer.write(generate());
+        }
+        finally {
+            writer.close();
+        }
+
+        return file;
+    }
+
+    // There are at least as many keywords as there are alternatives, and
+    // a few more so that not all rules use the same ones.
+    private int keywords() {
+        return Math.max(16, width * 2);
+    }
+
+    private void appendKeywords(StringBuilder grammar, Random random) {
+
+        if (width == 1) {
+            grammar.append(keywordName(random.nextInt(keywords())));
+            return;
+        }
+
+        int first = random.nextInt(keywords());
+
+        grammar.append("( ");
+
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                grammar.append(" | ");
+            }
+            grammar.append(keywordName((first + i) % keywords()));
+        }
+
+        grammar.append(" )");
+    }
+
+    // A block of nesting level `level`: an atom, an optional or repeated
+    // block of the next level (or an atom), and another atom. The size of
+    // a rule grows linearly with its depth.
+    private void appendBlock(StringBuilder grammar, Random random, int rule, int level) {
+
+        appendAtom(grammar, random, rule);
+
+        if (level > 0) {
+            grammar.append(" ( ");
+            appendBlock(grammar, random, rule, level - 1);
+            grammar.append(" | ");
+            appendAtom(grammar, random, rule);
+            grammar.append(" )").append("?*+".charAt(random.nextInt(3)));
+        }
+
+        grammar.append(' ');
+        appendAtom(grammar, random, rule);
+    }
+
+    // A keyword, or a reference to a rule further down: a grammar without
+    // left recursion, in which most rules are used by another one.
+    private void appendAtom(StringBuilder grammar, Random random, int rule) {
+
+        if (rule + 1 < rules && random.nextBoolean()) {
+            grammar.append(ruleName(rule + 1 + random.nextInt(Math.min(10, rules - rule - 1))));
+        }
+        else {
+            grammar.append(keywordName(random.nextInt(keywords())));
+        }
+    }
+
+    private static String ruleName(int index) {
+        return "rule" + index;
+    }
+
+    private static String keywordName(int index) {
+        return "KW_" + index;
+    }
+}
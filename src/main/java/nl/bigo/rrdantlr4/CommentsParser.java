@@ -7,39 +7,66 @@ import com.google.common.collect.Maps;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Extracts the descriptions of rules from the block comments in a
+ * grammar: a block comment containing `<expression>` describes the rule
+ * `expression`.
+ *
+ * All methods scan their input once, from left to right, without any
+ * regular expressions. They give the same results as the patterns below
+ * (compiled with `MULTILINE | DOTALL`) did.
+ */
 public class CommentsParser {
+
+    /**
+     * @deprecated no longer used: the rule name is scanned for instead.
+     */
+    @Deprecated
     public static final String RULE_NAME_PATTERN = "<(.*?)>";
+
+    /**
+     * @deprecated no longer used: the comment boundaries are scanned for
+     * instead.
+     */
+    @Deprecated
     public static final String COMMENT_BOUNDARY_PATTERN = "/\\*|\\*/";
 
     public static Optional<String> ruleName(String comment) {
-        Matcher matcher = patternMatcher(comment, RULE_NAME_PATTERN);
+        int open = comment.indexOf('<');
+        int close = open < 0 ? -1 : comment.indexOf('>', open + 1);
 
-        if (matcher.find()) {
-            return Optional.of(matcher.group(1));
+        if (close >= 0) {
+            return Optional.of(comment.substring(open + 1, close));
         }
         return Optional.absent();
     }
 
     public static String ruleDescription(String comment) {
-        return comment.replaceAll(RULE_NAME_PATTERN, "").replaceAll(COMMENT_BOUNDARY_PATTERN, "").trim();
+        return removeCommentBoundaries(removeRuleNames(comment)).trim();
     }
 
-    public static List<String> comments(String input) {
+    public static List<String> comments(CharSequence input) {
         List<String> comments = Lists.newArrayList();
 
-        Matcher commentMatcher = patternMatcher(input, "/\\*(.)*?\\*/");
+        int start = indexOf(input, '/', '*', 0);
 
-        while (commentMatcher.find()) {
-            comments.add(commentMatcher.group());
+        while (start >= 0) {
+            // The shortest comment is `/**/`: its end cannot overlap its start.
+            int end = indexOf(input, '*', '/', start + 2);
+
+            if (end < 0) {
+                // Neither this comment, nor any after it, is closed.
+                break;
+            }
 
+            comments.add(input.subSequence(start, end + 2).toString());
+            start = indexOf(input, '/', '*', end + 2);
         }
         return comments;
     }
 
-    public static Map<String, String> commentsMap(String input) {
+    public static Map<String, String> commentsMap(CharSequence input) {
         HashMap<String, String> commentsMap = Maps.newHashMap();
         List<String> comments = comments(input);
         for (String comment : comments) {
@@ -51,8 +78,69 @@ public class CommentsParser {
         return commentsMap;
     }
 
-    private static Matcher patternMatcher(String input, String regex) {
-        Pattern commentsPattern = Pattern.compile(regex,Pattern.MULTILINE | Pattern.DOTALL);
-        return commentsPattern.matcher(input);
+    // Returns the index of the first `first` that is directly followed by
+    // `second`, at or after `from`.
+    private static int indexOf(CharSequence input, char first, char second, int from) {
+        for (int i = from, last = input.length() - 1; i < last; i++) {
+            if (input.charAt(i) == first && input.charAt(i + 1) == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Removes every `<...>` that does not span lines, exactly like
+    // `replaceAll(RULE_NAME_PATTERN, "")` (where `.` does not match line
+    // terminators) does.
+    private static String removeRuleNames(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        int done = 0;
+        int open = text.indexOf('<');
+
+        while (open >= 0) {
+            int close = open + 1;
+
+            while (close < text.length() && text.charAt(close) != '>' && !isLineTerminator(text.charAt(close))) {
+                close++;
+            }
+
+            if (close == text.length()) {
+                break;
+            }
+
+            if (text.charAt(close) == '>') {
+                builder.append(text, done, open);
+                done = close + 1;
+            }
+
+            // Any other `<` before `close` would end at `close` as well.
+            open = text.indexOf('<', close + 1);
+        }
+
+        return builder.append(text, done, text.length()).toString();
+    }
+
+    private static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    // Removes every `/*` and `*/`, like `replaceAll(COMMENT_BOUNDARY_PATTERN, "")`.
+    private static String removeCommentBoundaries(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        int i = 0;
+
+        while (i < text.length()) {
+            char ch = text.charAt(i);
+
+            if (i + 1 < text.length() && ((ch == '/' && text.charAt(i + 1) == '*') || (ch == '*' && text.charAt(i + 1) == '/'))) {
+                i += 2;
+            }
+            else {
+                builder.append(ch);
+                i++;
+            }
+        }
+
+        return builder.toString();
     }
 }
@@ -0,0 +1,328 @@
+package nl.bigo.rrdantlr4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed cache of rendered diagrams on disk. Every entry
+ * is a file named after the SHA-256 hash of everything that determines
+ * its contents (see `key(String, String...)`), so an entry never has to be
+ * invalidated: when a rule changes, it simply gets a new key.
+ *
+ * When the total size of the entries exceeds the maximum size, the
+ * least recently used entries are removed. The last access time of an
+ * entry is kept as the modification time of its file, so the order in
+ * which entries are evicted survives between runs.
+ *
+ * A cache can be used by many threads at once.
+ */
+public final class DiagramCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final long maxBytes;
+
+    // All entries mapped to their size in bytes, from least- to most
+    // recently used.
+    private final LinkedHashMap<String, Long> entries;
+    private long totalBytes;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    /**
+     * Opens, or creates, a cache in `directory`.
+     *
+     * @param directory
+     *         the directory the entries are stored in.
+     * @param maxBytes
+     *         the maximum total size of all entries.
+     *
+     * @throws IOException
+     *         when the directory could not be created.
+     */
+    public DiagramCache(File directory, long maxBytes) throws IOException {
+
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("the maximum size cannot be negative: " + maxBytes);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create cache dir: " + directory);
+        }
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        this.totalBytes = 0;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+
+        this.load();
+    }
+
+    /**
+     * Returns the key of the entry identified by `parts`: the hex encoded
+     * SHA-256 hash of all parts, followed by a dot and `extension`.
+     *
+     * @param extension
+     *         the extension of the entry, like `svg` or `png`.
+     * @param parts
+     *         everything that determines the contents of the entry, like
+     *         the DSL of a rule and the version of the renderer.
+     *
+     * @return the key of the entry identified by `parts`.
+     */
+    public static String key(String extension, String... parts) {
+
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new RuntimeException(e);
+        }
+
+        for (String part : parts) {
+            byte[] bytes = part.getBytes(UTF_8);
+            // Prefix every part with its length: ("ab", "c") and ("a", "bc")
+            // must not end up with the same key.
+            digest.update(Integer.toString(bytes.length).getBytes(UTF_8));
+            digest.update((byte) ':');
+            digest.update(bytes);
+        }
+
+        byte[] hash = digest.digest();
+        StringBuilder key = new StringBuilder(hash.length * 2 + 1 + extension.length());
+
+        for (byte b : hash) {
+            key.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+
+        return key.append('.').append(extension).toString();
+    }
+
+    /**
+     * Returns the contents of an entry.
+     *
+     * @param key
+     *         the key of the entry, as created by `key(String, String...)`.
+     *
+     * @return the contents of the entry, or `null` if it is not cached.
+     */
+    public byte[] get(String key) {
+
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        File file = new File(directory, key);
+
+        try {
+            byte[] contents = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return contents;
+        }
+        catch (IOException e) {
+            // Removed behind our back: by another process, or evicted by
+            // another thread right after the lookup above.
+            synchronized (this) {
+                Long size = entries.remove(key);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the contents of an entry as a string.
+     *
+     * @param key
+     *         the key of the entry, as created by `key(String, String...)`.
+     *
+     * @return the contents of the entry, or `null` if it is not cached.
+     */
+    public String getString(String key) {
+        byte[] contents = get(key);
+        return contents == null ? null : new String(contents, UTF_8);
+    }
+
+    /**
+     * Stores an entry, and evicts the least recently used entries when
+     * the cache has grown beyond its maximum size. A failure to write
+     * the entry is reported, but otherwise ignored: the cache is only
+     * an optimization.
+     *
+     * @param key
+     *         the key of the entry, as created by `key(String, String...)`.
+     * @param contents
+     *         the contents of the entry.
+     */
+    public void put(String key, byte[] contents) {
+
+        File file = new File(directory, key);
+
+        try {
+            // Write to a temporary file first, so a concurrent reader never
+            // sees a partially written entry.
+            File temp = File.createTempFile(".entry", ".tmp", directory);
+
+            try {
+                Files.write(temp.toPath(), contents);
+                move(temp, file);
+            }
+            finally {
+                temp.delete();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        List<String> evicted = new ArrayList<String>();
+
+        synchronized (this) {
+
+            Long previous = entries.put(key, (long) contents.length);
+            totalBytes += contents.length - (previous == null ? 0 : previous);
+
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+
+                Map.Entry<String, Long> eldest = iterator.next();
+
+                if (eldest.getKey().equals(key)) {
+                    // Never evict the entry that was just stored.
+                    continue;
+                }
+
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+
+        for (String eldest : evicted) {
+            new File(directory, eldest).delete();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stores an entry of which the contents is a string.
+     *
+     * @param key
+     *         the key of the entry, as created by `key(String, String...)`.
+     * @param contents
+     *         the contents of the entry.
+     */
+    public void putString(String key, String contents) {
+        put(key, contents.getBytes(UTF_8));
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return the number of lookups that found an entry.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find an entry.
+     *
+     * @return the number of lookups that did not find an entry.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries removed to stay below the maximum size.
+     *
+     * @return the number of entries removed to stay below the maximum size.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the total size of all entries, in bytes.
+     *
+     * @return the total size of all entries, in bytes.
+     */
+    public synchronized long getSize() {
+        return totalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, %d evictions, %d bytes in %s",
+                getHits(), getMisses(), getEvictions(), getSize(), directory);
+    }
+
+    // Indexes the entries already in the cache directory, from least- to
+    // most recently used.
+    private void load() {
+
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        for (File file : files) {
+            if (file.isFile() && !file.getName().startsWith(".")) {
+                entries.put(file.getName(), file.length());
+                totalBytes += file.length();
+            }
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
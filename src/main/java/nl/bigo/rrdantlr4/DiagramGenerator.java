@@ -1,34 +1,44 @@
 package nl.bigo.rrdantlr4;
 
+import com.itextpdf.awt.PdfGraphics2D;
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Image;
 import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfTemplate;
 import com.itextpdf.text.pdf.PdfWriter;
 import com.itextpdf.text.pdf.codec.PngImage;
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
+import nl.bigo.rrdantlr4.railroad.Linker;
+import nl.bigo.rrdantlr4.railroad.SymbolTable;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.apache.batik.transcoder.TranscoderException;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
+import java.awt.Graphics2D;
 import java.io.*;
-import java.net.URL;
-import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The workhorse of this little library: it parses the ANTLR 4
- * grammar, and invokes the JavaScript library that translates
- * the DSL produces by the ANTLR parser to a SVG.
+ * grammar, and invokes the `Renderer` that translates the DSL
+ * produces by the ANTLR parser to a SVG.
  *
  * Through this class you can also create an html page containing
  * railroad diagrams of all parsed rules and create individual png
@@ -36,53 +46,106 @@ import java.util.regex.Pattern;
  */
 public class DiagramGenerator {
 
-    // Java's built-in JS interpreter (Rhino).
-    private static final ScriptEngineManager MANAGER = new ScriptEngineManager();
-    private static final ScriptEngine ENGINE = MANAGER.getEngineByName("graal.js");
-
-    // The library used to convert grammar rules to SVG.
-    private static final String RAILROAD_SCRIPT = slurp(DiagramGenerator.class.getResourceAsStream("/railroad-diagram.js"));
+    // The style sheet of the SVG railroad diagrams: inserted in every
+    // diagram that is a document of its own, and once in the html page
+    // for the diagrams in the page.
     private static final String RAILROAD_CSS = slurp(DiagramGenerator.class.getResourceAsStream("/railroad-diagram.css"));
 
+    // The same style sheet, without the white space around punctuation.
+    private static final String RAILROAD_CSS_MINIFIED = RAILROAD_CSS.replaceAll("\\s*([{};:,])\\s*", "$1").trim();
+
+    // Part of the key of every cached diagram: bump it whenever the
+    // SVG or PNG output changes without the DSL, renderer or style sheet
+    // changing.
+    private static final String CACHE_VERSION = "1";
+
     // The templates used to create an HTML page from all grammar rules.
     private static final String HTML_TEMPLATE = slurp(DiagramGenerator.class.getResourceAsStream("/template.html"));
     private static final String HTML_SIMPLE_TEMPLATE = slurp(DiagramGenerator.class.getResourceAsStream("/template.simple.html"));
     private static final String CSS_TEMPLATE = slurp(DiagramGenerator.class.getResourceAsStream("/template.css"));
 
-    // Initialize the JS engine to load the library used to convert the diagram-DSL
-    static {
-        try {
-            ENGINE.eval(RAILROAD_SCRIPT);
-        }
-        catch (ScriptException e) {
-            e.printStackTrace();
-            System.err.println("could not evaluate script:\n" + RAILROAD_SCRIPT);
-            System.exit(1);
-        }
-    }
+    // Loads the diagrams of a lazy html page once they scroll into view.
+    private static final String LAZY_SCRIPT = "<script>\n" +
+            slurp(DiagramGenerator.class.getResourceAsStream("/template.lazy.js")) + "</script>\n";
+
+    // The parts of the HTML templates before and after the `${rows}` slot,
+    // with the style sheet already filled in. Only `${grammar}` is left to
+    // be resolved for a specific grammar.
+    private static final String[] HTML_PARTS = splitAtRows(HTML_TEMPLATE.replace("${css}", CSS_TEMPLATE + "\n" + RAILROAD_CSS));
+    private static final String[] HTML_SIMPLE_PARTS = splitAtRows(HTML_SIMPLE_TEMPLATE.replace("${css}", RAILROAD_CSS));
 
     // The ANTLR 4 grammar to parse. It can be a remote- or local file
     private final String antlr4Grammar;
 
+    // Translates the DSL of the grammar rules to SVG.
+    private final Renderer renderer;
+
+    // The parts of the diagrams of `rules` laid out by the renderer so far.
+    private final Renderer.Layouts layouts = new Renderer.Layouts();
+
     // The filename of the ANTLR 4 grammar.
     private String antlr4GrammarFileName;
 
     // The grammar name of the grammar to parse.
     private String antlr4GrammarName;
 
-    // The directory to save the html and/or png diagrams to.
+    // The directory to save the html and/or png diagrams to. It is
+    // created when the first file is written to it.
     private File outputDir;
 
     // The collection that maps all grammar rules from `antlr4Grammar` to
-    // a DSL that the JavaScript library, `railroad-diagram.js`, uses to
-    // translate to SVG-railroad diagrams.
-    private final Map<String, String> rules;
+    // the diagram model that the renderer translates to SVG-railroad
+    // diagrams.
+    private final Map<String, DiagramNode> rules;
 
     private final Map<String, String> comments;
 
+    // Which rules refer to which, over all rules of the grammar and its
+    // imports: also those that are left out because they cannot be reached
+    // from the root rules.
+    private final RuleGraph graph;
+
+    // The names of the grammars the grammar imports.
+    private List<String> imports;
+
+    // The locations of the grammars the grammar imports, directly or not.
+    private final List<String> importedGrammars;
+
+    // Links the terminals and non-terminals that refer to a grammar rule
+    // to the row of that rule in the html page.
+    private final Linker linker;
+
+    // The cache of rendered diagrams, or `null` when diagrams are always
+    // rendered.
+    private volatile DiagramCache cache;
+
+    // Whether the SVG diagrams are written as small as possible.
+    private volatile boolean minifiedSVG;
+
+    // Whether the parts diagrams share are written to the html page once.
+    private volatile boolean sharedSymbols;
+
+    // The number of pixels a PNG image is rasterized in at once.
+    private volatile long maxPixels = Rasterizer.DEFAULT_MAX_PIXELS;
+
+    // The number of pixels per pixel of a diagram in a PNG image, and
+    // the compression level of the images.
+    private volatile float pngScale = 1;
+    private volatile int pngCompression = Rasterizer.DEFAULT_COMPRESSION;
+
+    // The rasterizer of every thread that is not a PNG worker, like the
+    // threads of `DiagramServer`.
+    private static final ThreadLocal<Rasterizer> rasterizers = new ThreadLocal<Rasterizer>() {
+        @Override
+        protected Rasterizer initialValue() {
+            return new Rasterizer();
+        }
+    };
+
     /**
      * Creates a new instance of this class and will parse the
-     * provided `antlr4Grammar`.
+     * provided `antlr4Grammar`. The diagrams are rendered by the
+     * `Renderer.JAVA` renderer.
      *
      * @param antlr4Grammar
      *         the ANTLR 4 grammar to parse. It can be a remote- or local file
@@ -91,370 +154,1507 @@ public class DiagramGenerator {
      *         when the grammar could not be parsed.
      */
     public DiagramGenerator(String antlr4Grammar) throws IOException {
-        this.antlr4Grammar = antlr4Grammar.trim();
-        this.antlr4GrammarFileName = null;
-        this.antlr4GrammarName = null;
-        this.outputDir = null;
-        this.rules = parse();
+        this(antlr4Grammar, Renderer.JAVA);
+    }
 
-        this.comments = CommentsParser.commentsMap(inputAsString(new FileInputStream(antlr4Grammar)));
+    /**
+     * Creates a new instance of this class and will parse the
+     * provided `antlr4Grammar`.
+     *
+     * @param antlr4Grammar
+     *         the ANTLR 4 grammar to parse. It can be a remote- or local file
+     * @param renderer
+     *         the renderer used to translate the grammar rules to SVG.
+     *
+     * @throws IOException
+     *         when the grammar could not be parsed.
+     */
+    public DiagramGenerator(String antlr4Grammar, Renderer renderer) throws IOException {
+        this(antlr4Grammar, renderer, Collections.<String>emptyList());
     }
 
     /**
-     * Parses `this.antlr4Grammar` and returns all parsed grammar rules.
+     * Creates a new instance of this class and will parse the
+     * provided `antlr4Grammar`, keeping only the rules that can be
+     * reached from the provided root rules.
      *
-     * @return all parsed grammar rules.
+     * @param antlr4Grammar
+     *         the ANTLR 4 grammar to parse. It can be a remote- or local file
+     * @param renderer
+     *         the renderer used to translate the grammar rules to SVG.
+     * @param roots
+     *         the rules to start from, like the start rule of the grammar,
+     *         or no rules to keep all of them.
      *
      * @throws IOException
      *         when the grammar could not be parsed.
+     * @throws IllegalArgumentException
+     *         when one of the roots is not a rule of the grammar, or of a
+     *         grammar it imports.
      */
-    private Map<String, String> parse() throws IOException {
+    public DiagramGenerator(String antlr4Grammar, Renderer renderer, Collection<String> roots) throws IOException {
+        this.antlr4Grammar = antlr4Grammar.trim();
+        this.renderer = renderer;
+        this.antlr4GrammarFileName = null;
+        this.antlr4GrammarName = null;
+        this.outputDir = null;
 
-        InputStream input;
+        // Read the grammar once: the lexer and the comments parser share
+        // its characters.
+        GrammarSource source = GrammarSource.load(this.antlr4Grammar);
 
-        File file = new File(antlr4Grammar);
+        this.rules = parse(source);
+        this.cache = null;
 
-        // First check if `antlr4Grammar` is a local file.
-        if (file.exists()) {
-            input = new FileInputStream(antlr4Grammar);
-            this.antlr4GrammarFileName = file.getName();
+        Stats.Span span = Stats.begin(Stats.Phase.COMMENTS, this.antlr4GrammarFileName, null);
+
+        try {
+            this.comments = CommentsParser.commentsMap(source.getText());
         }
-        else if (antlr4Grammar.startsWith("http://") || antlr4Grammar.startsWith("https://")) {
-            URLConnection connection = new URL(antlr4Grammar).openConnection();
-            this.antlr4GrammarFileName = antlr4Grammar.substring(antlr4Grammar.lastIndexOf('/') + 1);
-            input = connection.getInputStream();
+        finally {
+            span.end();
         }
-        else {
-            // We'll assume the the string _is_ the ANTLR 4 grammar...
-            this.antlr4GrammarFileName = "grammar-" + System.currentTimeMillis();
-            input = new ByteArrayInputStream(antlr4Grammar.getBytes("UTF-8"));
+
+        // The imported rules are rendered and linked like the grammar's own.
+        this.importedGrammars = GrammarModel.addImports(this.antlr4Grammar, this.imports, this.rules, this.comments);
+
+        this.graph = RuleGraph.of(this.rules);
+
+        // The rules that are left refer to each other only, and are the
+        // only ones rendered.
+        if (!roots.isEmpty()) {
+            this.rules.keySet().retainAll(this.graph.getReachable(roots));
         }
 
+        this.linker = createLinker();
+    }
+
+    /**
+     * Parses the grammar and returns all parsed grammar rules.
+     *
+     * @param source
+     *         the text of `this.antlr4Grammar`.
+     *
+     * @return all parsed grammar rules.
+     *
+     * @throws IOException
+     *         when the grammar could not be parsed.
+     */
+    private Map<String, DiagramNode> parse(GrammarSource source) throws IOException {
+
+        this.antlr4GrammarFileName = source.getFileName();
         this.antlr4GrammarName = this.antlr4GrammarFileName.replaceAll(".[gG]4$", "");
         this.outputDir = new File("./output", this.antlr4GrammarName);
 
-        if (!this.outputDir.exists() && !this.outputDir.mkdirs()) {
-            throw new RuntimeException("could not create output dir: " + this.outputDir);
+        ParseTree tree;
+        Stats.Span span = Stats.begin(Stats.Phase.PARSE, this.antlr4GrammarFileName, null);
+
+        try {
+            // Now parse the grammar: SLL first, LL when that fails.
+            tree = GrammarParser.parse(source);
+        }
+        finally {
+            span.end(source.getText().length());
         }
 
-        // Now parse the grammar.
-        ANTLRv4Lexer lexer = new ANTLRv4Lexer(new ANTLRInputStream(new BufferedInputStream(input)));
-        ANTLRv4Parser parser = new ANTLRv4Parser(new CommonTokenStream(lexer));
+        span = Stats.begin(Stats.Phase.VISIT, this.antlr4GrammarFileName, null);
+
+        try {
+            RuleVisitor visitor = new RuleVisitor();
+            visitor.visit(tree);
 
-        ParseTree tree = parser.grammarSpec();
-        RuleVisitor visitor = new RuleVisitor();
-        visitor.visit(tree);
+            this.imports = visitor.getImports();
 
-        return visitor.getRules();
+            return visitor.getDiagramModels();
+        }
+        finally {
+            span.end();
+        }
     }
 
     /**
-     * Returns a map containing all parser- and lexer rules mapped to
-     * the DSL `railroad-diagram.js` uses to translate to SVG-railroad
-     * diagrams.
+     * Creates the linker used for the html page. The reference of every
+     * rule is computed once, up front, so linking a diagram is a single
+     * lookup per terminal and non-terminal.
      *
-     * @return a map containing all parser- and lexer rules mapped to
-     * the DSL `railroad-diagram.js` uses to translate to SVG-railroad
-     * diagrams.
+     * @return the linker used for the html page.
      */
-    public Map<String, String> getRules() {
-        return new LinkedHashMap<String, String>(rules);
+    private Linker createLinker() {
+        return createLinker("", null);
     }
 
     /**
-     * Returns the SVG railroad diagram corresponding to the provided grammar rule.
+     * Creates a linker to the rows of the rules in an html page.
      *
-     * @param ruleName
-     *         the grammar rule to get the SVG railroad diagram from.
+     * @param page
+     *         the html page the rows are in, or the empty string for
+     *         diagrams that are part of the page themselves.
+     * @param target
+     *         the browsing context the links open in, or `null`.
      *
-     * @return the SVG railroad diagram corresponding to the provided grammar rule.
+     * @return a linker to the rows of the rules in `page`.
      */
-    public String getSVG(String ruleName) {
+    private Linker createLinker(String page, final String target) {
 
-        try {
-            CharSequence dsl = rules.get(ruleName);
+        final Map<String, String> hrefs = new HashMap<String, String>();
 
-            if (dsl == null) {
-                throw new RuntimeException("no such rule found: " + ruleName);
-            }
+        for (String ruleName : this.rules.keySet()) {
+            hrefs.put(ruleName, page + "#" + this.antlr4GrammarFileName + "_" + ruleName);
+        }
 
-            // Evaluate the DSL that translates the input back to a SVG.
-            String svg = (String) ENGINE.eval(dsl.toString());
+        return new Linker() {
+            @Override
+            public String href(String text) {
+                return hrefs.get(text);
+            }
 
-            // Insert the proper namespaces and (custom) style sheet.
-            svg = svg.replaceFirst("<svg ", "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" ");
-            svg = svg.replaceFirst("<g ", "<style type=\"text/css\">" + RAILROAD_CSS + "</style>\n<g ");
+            @Override
+            public String target() {
+                return target;
+            }
+        };
+    }
 
-            return svg;
-        }
-        catch (ScriptException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Returns the grammar this generator parsed: the path of a local
+     * file, a URL, or the text of an inline grammar.
+     *
+     * @return the grammar this generator parsed.
+     */
+    public String getGrammar() {
+        return antlr4Grammar;
     }
 
     /**
-     * Creates a PNG image from the provided grammar rule.
+     * Returns the locations of the grammars the grammar imports, directly
+     * or not: local files, or URLs. The ones that could not be found are
+     * included.
      *
-     * @param ruleName
-     *         the grammar rule to create a PNG image from.
+     * @return the locations of the grammars the grammar imports.
+     */
+    public List<String> getImportedGrammars() {
+        return Collections.unmodifiableList(importedGrammars);
+    }
+
+    /**
+     * Returns the name of the grammar: the name of its file, without the
+     * `.g4` extension.
      *
-     * @return `true` iff the writing of the image was successful.
+     * @return the name of the grammar.
      */
-    public boolean createDiagram(String ruleName) {
+    public String getGrammarName() {
+        return antlr4GrammarName;
+    }
 
-        String svg = getSVG(ruleName);
+    /**
+     * Sets the cache in which rendered SVG diagrams and PNG images are
+     * kept between runs. Diagrams of rules that are already in the cache
+     * are neither rendered nor rasterized again.
+     *
+     * @param cache
+     *         the cache to use, or `null` to always render.
+     */
+    public void setCache(DiagramCache cache) {
+        this.cache = cache;
+    }
 
-        if (svg == null) {
-            return false;
-        }
+    /**
+     * Sets whether the SVG diagrams are written as small as possible:
+     * without new lines, with all numbers rounded to two decimals and with
+     * shortened path data. The diagrams look the same, but are no longer
+     * byte-for-byte what `railroad-diagram.js` creates.
+     *
+     * @param minifiedSVG
+     *         `true` to minify the SVG diagrams.
+     */
+    public void setMinifiedSVG(boolean minifiedSVG) {
+        this.minifiedSVG = minifiedSVG;
+    }
 
-        OutputStream stream = null;
+    public boolean isMinifiedSVG() {
+        return minifiedSVG;
+    }
 
-        try {
-            PNGTranscoder transcoder = new PNGTranscoder();
+    /**
+     * Sets whether the parts that occur in more than one diagram of the
+     * html page are written to the page once, as a SVG `<symbol>` that
+     * the diagrams refer to. The page gets smaller, but its diagrams are
+     * no longer taken from the cache: what a diagram writes itself depends
+     * on the diagrams written before it.
+     *
+     * @param sharedSymbols
+     *         `true` to write the shared parts of the diagrams once.
+     */
+    public void setSharedSymbols(boolean sharedSymbols) {
+        this.sharedSymbols = sharedSymbols;
+    }
 
-            TranscoderInput input = new TranscoderInput(new StringReader(svg));
-            stream = new FileOutputStream(new File(this.outputDir, ruleName + ".png"));
-            TranscoderOutput output = new TranscoderOutput(stream);
+    public boolean isSharedSymbols() {
+        return sharedSymbols;
+    }
 
-            // Save the image.
-            transcoder.transcode(input, output);
-            stream.close();
+    /**
+     * Sets the number of pixels a PNG image is rasterized in at once. A
+     * diagram with more pixels is rasterized in bands of as many rows as
+     * fit, which are encoded one after the other, so the memory taken by a
+     * very wide diagram stays bounded.
+     *
+     * @param maxPixels
+     *         the number of pixels rasterized at once, or `0` to always
+     *         rasterize a diagram as a whole.
+     */
+    public void setMaxPixels(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
 
-            return true;
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
-        finally {
-            if (stream != null) {
-                try {
-                    stream.close();
-                }
-                catch (IOException e) {
-                    // Ignore this.
-                }
-            }
-        }
+    public long getMaxPixels() {
+        return maxPixels;
     }
 
     /**
-     * create pdf file based on png images which are generated by provided grammar rule
+     * Sets the size of the PNG images relative to the SVG diagrams. An
+     * image at scale `2` has four times as many pixels, and states twice
+     * the resolution: 192 DPI instead of 96.
      *
-     * @param rules the grammar rule to get the pdf of railroad diagram from.
-     * @return `true` if writting of the pdf is successful
+     * @param pngScale
+     *         the number of pixels per pixel of a diagram.
      */
-    public boolean createPdf(Map<String, String> rules) {
-        if (rules == null) {
-            return false;
-        }
+    public void setPngScale(float pngScale) {
 
-        if (rules.isEmpty()) {
-            return false;
+        if (pngScale <= 0) {
+            throw new IllegalArgumentException("the scale must be positive, not: " + pngScale);
         }
 
-        InputStream stream = null;
-        try {
-            Document convertPngToPdf = new Document();
-            PdfWriter.getInstance(convertPngToPdf, new FileOutputStream(new File(this.outputDir, "index.pdf")));
-            convertPngToPdf.open();
-            for (String ruleName : rules.keySet()) {
-                // get the png file just created
-                stream = new FileInputStream(new File(this.outputDir, ruleName + ".png"));
-                Image ruleImage = PngImage.getImage(stream);
-                if (ruleImage == null) {
-                    return false;
-                }
-                // set up the page layout
-                float documentWidth =
-                    convertPngToPdf.getPageSize().getWidth() - convertPngToPdf.leftMargin() - convertPngToPdf
-                        .rightMargin();
-                float documentHeight =
-                    convertPngToPdf.getPageSize().getHeight() - convertPngToPdf.topMargin() - convertPngToPdf
-                        .bottomMargin();
-                // fit the image to the pdf page
-                ruleImage.scaleToFit(documentWidth, documentHeight);
-                // append the image to the pdf
-                convertPngToPdf.add(new Paragraph(ruleName.concat(" : ")));
-                convertPngToPdf.add(ruleImage);
+        this.pngScale = pngScale;
+    }
 
-            }
-            convertPngToPdf.close();
-            return true;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return false;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        } catch (DocumentException e) {
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (stream != null) {
-                try {
-                    stream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+    public float getPngScale() {
+        return pngScale;
     }
 
     /**
-     * Creates an html page as a string of all grammar rules.
-     *
-     * @param fileName
-     *         the name of the html page.
+     * Sets the compression level of the PNG images. The images are
+     * mostly empty, so even the fastest level compresses them well.
      *
-     * @return an html page as a string of all grammar rules.
+     * @param pngCompression
+     *         the compression level, from `0` (none, and fastest) to `9`
+     *         (smallest).
      */
-    public String getHtml(String fileName, boolean simpleHTML) {
-        StringBuilder rows = new StringBuilder();
-
-        for (String ruleName : this.rules.keySet()) {
-            String svg = this.getSVG(ruleName);
-            String ruleDescription = comments.get(ruleName);
+    public void setPngCompression(int pngCompression) {
 
-            rows.append("<tr><td id=\"").append(antlr4GrammarFileName).append("_").append(ruleName).append("\"><h4>")
-                .append(ruleName).append("</h4></td><td>").append(svg).append("</td></tr>");
-            if (ruleDescription != null) {
-                rows.append("<tr class=\"border-notop\"><td></td><td>" + ruleDescription.replaceAll("\n", "<br>") + "</td></tr>");
-            }
-        }
-
-        if(simpleHTML) {
-            final String template = HTML_SIMPLE_TEMPLATE
-                .replace("${rows}", rows);
-            return addLinks(antlr4GrammarFileName, template);
+        if (pngCompression < 0 || pngCompression > 9) {
+            throw new IllegalArgumentException("the compression level must be from 0 to 9, not: " + pngCompression);
         }
-        else {
 
-            final String template = HTML_TEMPLATE
-                .replace("${grammar}", antlr4GrammarFileName)
-                .replace("${css}", CSS_TEMPLATE)
-                .replace("${rows}", rows);
+        this.pngCompression = pngCompression;
+    }
 
-            return addLinks(antlr4GrammarFileName, template);
-        }
+    public int getPngCompression() {
+        return pngCompression;
     }
 
     /**
-     * Creates a default (index.html) page containing all grammar rules.
+     * Returns the cache of rendered diagrams.
      *
-     * @return `true` iff the creation of the html page was successful.
+     * @return the cache of rendered diagrams, or `null` if there is none.
      */
-    public boolean createHtml() {
-        return createHtml("index.html", false);
+    public DiagramCache getCache() {
+        return cache;
     }
 
     /**
-     * Creates an html page containing all grammar rules.
-     *
-     * @param fileName
-     *         the file name of the generated html page.
+     * Returns a map containing all parser- and lexer rules mapped to
+     * the DSL `railroad-diagram.js` uses to translate to SVG-railroad
+     * diagrams.
      *
-     * @return `true` iff the creation of the html page was successful.
+     * @return a map containing all parser- and lexer rules mapped to
+     * the DSL `railroad-diagram.js` uses to translate to SVG-railroad
+     * diagrams.
      */
-    public boolean createHtml(String fileName, boolean simpleHTML) {
-
-        String html = this.getHtml(fileName, simpleHTML);
+    public Map<String, String> getRules() {
 
-        PrintWriter out = null;
+        Map<String, String> dsl = new LinkedHashMap<String, String>();
 
-        try {
-            out = new PrintWriter(new File(this.outputDir, fileName));
-            out.write(html);
-            return true;
-        }
-        catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-        finally {
-            if (out != null) {
-                out.close();
-            }
+        for (Map.Entry<String, DiagramNode> entry : rules.entrySet()) {
+            dsl.put(entry.getKey(), entry.getValue().toDiagramDsl());
         }
+
+        return dsl;
     }
 
     /**
-     * Converts an input stream into a String.
+     * Returns the names of all parser- and lexer rules, in the order
+     * they are defined in the grammar.
      *
-     * @param input
-     *         the input to convert into a String.
-     *
-     * @return the input stream as a String.
+     * @return the names of all parser- and lexer rules.
      */
-    private static String slurp(InputStream input) {
+    public List<String> getRuleNames() {
+        return new ArrayList<String>(rules.keySet());
+    }
 
-        StringBuilder builder = new StringBuilder();
-        Scanner scan = new Scanner(input);
+    /**
+     * Returns which rules refer to which, over all rules of the grammar
+     * and the grammars it imports, including the rules that are left out
+     * because they cannot be reached from the root rules.
+     *
+     * @return the graph of the rules.
+     */
+    public RuleGraph getRuleGraph() {
+        return graph;
+    }
 
-        while (scan.hasNextLine()) {
-            builder.append(scan.nextLine()).append(scan.hasNextLine() ? "\n" : "");
-        }
+    /**
+     * Sets the directory the html page, pdf and images are written to.
+     * It is created when the first file is written to it.
+     *
+     * @param outputDir
+     *         the directory to write to. Default is `./output/<grammar>`.
+     */
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
 
-        return builder.toString();
+    /**
+     * Returns the directory the html page, pdf and images are written to.
+     *
+     * @return the directory the html page, pdf and images are written to.
+     */
+    public File getOutputDir() {
+        return outputDir;
     }
 
-    // TODO rewrite the stuff below to properly wrap <a ...> tags around the <text ...> tags that have a corresponding grammar rule in `this#rules`.
+    // Returns a file in the output directory, creating the directory
+    // when it does not exist yet.
+    private File outputFile(String fileName) throws IOException {
+
+        if (!this.outputDir.isDirectory() && !this.outputDir.mkdirs()) {
+            throw new IOException("could not create output dir: " + this.outputDir);
+        }
 
-    // The pattern matching a SVG text tag, or any other single character.
-    private static final Pattern TEXT_PATTERN = Pattern.compile("(<text\\s+[^>]*?>\\s*(.+?)\\s*</text>)|[\\s\\S]");
+        return new File(this.outputDir, fileName);
+    }
 
     /**
-     * Returns an HTML template containing SVG text-tags that
-     * will be wrapped with '<a xlink:href=...' to make the grammar
-     * rules clickable inside the HTML page.
+     * Returns the diagram model of a parser- or lexer rule.
      *
-     * @param antlr4GrammarFileName
-     *         the name of the parsed grammar.
-     * @param template
-     *         the template whose text-tags need to be linked.
+     * @param ruleName
+     *         the grammar rule to get the diagram model of.
      *
-     * @return an HTML template containing SVG text-tags that
-     * will be wrapped with '<a xlink:href=...' to make the grammar
-     * rules clickable inside the HTML page.
+     * @return the diagram model of the rule, or `null` if there is no
+     * such rule.
      */
-    private String addLinks(String antlr4GrammarFileName, String template) {
+    public DiagramNode getDiagramModel(String ruleName) {
+        return rules.get(ruleName);
+    }
 
-        StringBuilder builder = new StringBuilder();
-        Matcher m = TEXT_PATTERN.matcher(template);
+    /**
+     * Returns the SVG railroad diagram corresponding to the provided grammar rule.
+     *
+     * @param ruleName
+     *         the grammar rule to get the SVG railroad diagram from.
+     *
+     * @return the SVG railroad diagram corresponding to the provided grammar rule.
+     */
+    public String getSVG(String ruleName) {
+        return getSVG(ruleName, Linker.NONE, false);
+    }
+
+    /**
+     * Returns the SVG railroad diagram corresponding to the provided
+     * grammar rule, in which all references to other grammar rules link
+     * to the rows of those rules in the html page.
+     *
+     * @param ruleName
+     *         the grammar rule to get the SVG railroad diagram from.
+     *
+     * @return the linked SVG railroad diagram corresponding to the
+     * provided grammar rule.
+     */
+    public String getLinkedSVG(String ruleName) {
+        return getLinkedSVG(ruleName, this.linker, false);
+    }
+
+    // Returns the linked SVG of a rule, without a style sheet when it is
+    // `embedded` in the html page, which holds the style sheet once.
+    private String getLinkedSVG(String ruleName, Linker linker, boolean embedded) {
+
+        if (cache != null) {
+            // Linking a (cached) SVG is a single pass over it, so there is
+            // no need to cache the linked diagrams as well.
+            String svg = getSVG(ruleName, Linker.NONE, embedded);
+            Stats.Span span = Stats.begin(Stats.Phase.LINK, this.antlr4GrammarFileName, ruleName);
+
+            try {
+                svg = Renderer.link(svg, linker);
+            }
+            finally {
+                span.end(svg.length());
+            }
+
+            return svg;
+        }
+
+        return getSVG(ruleName, linker, embedded);
+    }
+
+    private String getSVG(String ruleName, Linker linker, boolean embedded) {
+
+        DiagramNode model = rules.get(ruleName);
+
+        if (model == null) {
+            throw new RuntimeException("no such rule found: " + ruleName);
+        }
+
+        DiagramCache cache = this.cache;
+
+        String styleSheet = embedded ? null : minifiedSVG ? RAILROAD_CSS_MINIFIED : RAILROAD_CSS;
+
+        if (cache == null || linker != Linker.NONE) {
+            return render(ruleName, model, linker, styleSheet);
+        }
+
+        String key = cacheKey("svg", model, styleSheet);
+        String svg = cache.getString(key);
+
+        if (svg == null) {
+            svg = render(ruleName, model, linker, styleSheet);
+            cache.putString(key, svg);
+        }
+
+        return svg;
+    }
+
+    // The key of the cached SVG (`svg`) or PNG (`png`) of a rule, styled
+    // by `styleSheet` (or by the page it is embedded in when `null`).
+    private String cacheKey(String extension, DiagramNode model, String styleSheet) {
+        return DiagramCache.key(extension, CACHE_VERSION, renderer.name(), styleSheet == null ? "" : styleSheet,
+                minifiedSVG ? "minified" : "", model.toDiagramDsl());
+    }
+
+    private String render(String ruleName, DiagramNode model, Linker linker, String styleSheet) {
+        return render(ruleName, model, linker, styleSheet, null);
+    }
+
+    private String render(String ruleName, DiagramNode model, Linker linker, String styleSheet, SymbolTable symbols) {
+
+        String svg = null;
+        Stats.Span span = Stats.begin(Stats.Phase.RENDER, this.antlr4GrammarFileName, ruleName);
+
+        try {
+            // Translate the diagram model to a SVG document, with the
+            // (custom) style sheet when it is not embedded in a page.
+            svg = renderer.render(model, linker, styleSheet, minifiedSVG, layouts, symbols);
+
+            return svg;
+        }
+        finally {
+            span.end(svg == null ? 0 : svg.length());
+        }
+    }
+
+    /**
+     * Returns the PNG image of the provided grammar rule, without writing
+     * it to the output directory.
+     *
+     * @param ruleName
+     *         the grammar rule to create a PNG image from.
+     *
+     * @return the PNG image of the rule.
+     *
+     * @throws TranscoderException
+     *         when the SVG of the rule could not be rasterized.
+     */
+    public byte[] getPNG(String ruleName) throws TranscoderException {
+        return rasterize(ruleName, rasterizers.get());
+    }
+
+    /**
+     * Creates a PNG image from the provided grammar rule.
+     *
+     * @param ruleName
+     *         the grammar rule to create a PNG image from.
+     *
+     * @return `true` iff the writing of the image was successful.
+     */
+    public boolean createDiagram(String ruleName) {
+
+        try {
+            writeDiagram(ruleName, rasterizers.get());
+            return true;
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // The end-of-work marker put in the queue of `createDiagrams`. It is
+    // compared by identity, so it can never clash with a rule name.
+    private static final String END_OF_RULES = new String("<end-of-rules>");
+
+    /**
+     * Creates PNG images from the provided grammar rules, using
+     * `parallelism` worker threads. Each worker owns its own rasterizer
+     * and takes rules from a bounded queue, so the amount of pending work
+     * stays small no matter how many rules there are.
+     *
+     * A failing rule does not stop the other rules from being written:
+     * all failures are collected and returned.
+     *
+     * @param ruleNames
+     *         the grammar rules to create PNG images from.
+     * @param parallelism
+     *         the number of images that are created at the same time.
+     *
+     * @return the rules whose image could not be written mapped to the
+     * cause, in the order of `ruleNames`. Empty when all images were
+     * written successfully.
+     *
+     * @throws InterruptedException
+     *         when interrupted while waiting for the workers.
+     */
+    public Map<String, Throwable> createDiagrams(Collection<String> ruleNames, int parallelism) throws InterruptedException {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, not: " + parallelism);
+        }
+
+        final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(parallelism * 2);
+        final Map<String, Throwable> failures = new ConcurrentHashMap<String, Throwable>();
+
+        Thread[] workers = new Thread[parallelism];
+
+        for (int i = 0; i < workers.length; i++) {
+
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+
+                    Rasterizer rasterizer = new Rasterizer();
+
+                    try {
+                        for (String ruleName = queue.take(); ruleName != END_OF_RULES; ruleName = queue.take()) {
+                            try {
+                                writeDiagram(ruleName, rasterizer);
+                            }
+                            catch (Throwable t) {
+                                // Also errors (like running out of memory on a huge diagram):
+                                // the other rules can still be written.
+                                failures.put(ruleName, t);
+                            }
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        // Stop working.
+                    }
+                }
+            }, "rrd-png-" + antlr4GrammarName + "-" + i);
+
+            workers[i].start();
+        }
+
+        try {
+            for (String ruleName : ruleNames) {
+                queue.put(ruleName);
+            }
+
+            for (Thread ignored : workers) {
+                queue.put(END_OF_RULES);
+            }
+
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+        catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw e;
+        }
+
+        Map<String, Throwable> ordered = new LinkedHashMap<String, Throwable>();
+
+        for (String ruleName : ruleNames) {
+            Throwable failure = failures.get(ruleName);
+            if (failure != null) {
+                ordered.put(ruleName, failure);
+            }
+        }
+
+        return ordered;
+    }
+
+    /**
+     * Creates PNG images from the provided grammar rules and, at the same
+     * time, a pdf file (index.pdf) in which those images are embedded. It
+     * produces the same files as `createDiagrams(Collection, int)`
+     * followed by `createPdf(PdfMode.RASTER)`, but every image is
+     * rasterized once and never read back from disk.
+     *
+     * The images are rasterized by `parallelism` worker threads, each with
+     * its own rasterizer. A worker writes the image it rasterized to the
+     * output directory and hands it over to a single thread that adds the
+     * images to the pdf, in the order of `ruleNames`. At most
+     * `parallelism * 2` images wait to be added to the pdf, so the memory
+     * used stays bounded no matter how many rules there are.
+     *
+     * A rule whose image could not be rasterized is left out of the pdf.
+     *
+     * @param ruleNames
+     *         the grammar rules to create PNG images from, in the order
+     *         they appear in the pdf.
+     * @param parallelism
+     *         the number of images that are created at the same time.
+     *
+     * @return the rules whose image could not be written mapped to the
+     * cause, in the order of `ruleNames`. Empty when all images were
+     * written successfully.
+     *
+     * @throws IOException
+     *         when the pdf could not be written.
+     * @throws InterruptedException
+     *         when interrupted while waiting for the workers.
+     */
+    public Map<String, Throwable> createDiagramsAndPdf(final List<String> ruleNames, int parallelism)
+            throws IOException, InterruptedException {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, not: " + parallelism);
+        }
+
+        // The rasterized images, in the order of `ruleNames`. A worker can
+        // only start on a rule once there is room for its image.
+        final BlockingQueue<Future<byte[]>> images = new ArrayBlockingQueue<Future<byte[]>>(parallelism * 2);
+        final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile("index.pdf")));
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, namedThreads("rrd-png-" + antlr4GrammarName));
+        ExecutorService assembler = Executors.newSingleThreadExecutor(namedThreads("rrd-pdf-" + antlr4GrammarName));
+
+        try {
+            Future<Void> pdf = assembler.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+
+                    Document document = new Document();
+                    Throwable error = null;
+
+                    try {
+                        PdfWriter.getInstance(document, out).setCloseStream(false);
+                        document.open();
+                    }
+                    catch (DocumentException e) {
+                        error = e;
+                    }
+
+                    // Take every image, also after the pdf failed: otherwise
+                    // the workers would wait for room in `images` forever.
+                    for (String ruleName : ruleNames) {
+
+                        byte[] png;
+
+                        try {
+                            png = images.take().get();
+                        }
+                        catch (ExecutionException e) {
+                            failures.put(ruleName, e.getCause());
+                            continue;
+                        }
+
+                        if (error == null) {
+                            Stats.Span span = Stats.begin(Stats.Phase.PDF, antlr4GrammarFileName, ruleName);
+
+                            try {
+                                addDiagram(document, ruleName, Image.getInstance(png));
+                            }
+                            catch (Throwable t) {
+                                error = t;
+                            }
+                            finally {
+                                span.end(png.length);
+                            }
+                        }
+                    }
+
+                    if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    if (error != null) {
+                        throw (Exception) error;
+                    }
+
+                    document.close();
+                    return null;
+                }
+            });
+
+            for (final String ruleName : ruleNames) {
+
+                if (pdf.isDone()) {
+                    // The assembler failed and takes no more images: its
+                    // error is reported below.
+                    break;
+                }
+
+                Future<byte[]> image = workers.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        byte[] png = rasterize(ruleName, rasterizers.get());
+                        writeFile(ruleName + ".png", png);
+                        return png;
+                    }
+                });
+
+                // Wait for room in `images`, but not for an assembler that
+                // is no longer there to make it.
+                while (!images.offer(image, 100, TimeUnit.MILLISECONDS)) {
+                    if (pdf.isDone()) {
+                        image.cancel(true);
+                        break;
+                    }
+                }
+            }
+
+            try {
+                pdf.get();
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("could not write the pdf", e.getCause());
+            }
+
+            return failures;
+        }
+        finally {
+            workers.shutdownNow();
+            assembler.shutdownNow();
+            out.close();
+        }
+    }
+
+    // Creates threads named `prefix-0`, `prefix-1`, ...
+    private static ThreadFactory namedThreads(final String prefix) {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, prefix + "-" + count.getAndIncrement());
+            }
+        };
+    }
+
+    /**
+     * Writes the PNG image of a grammar rule to the output directory.
+     *
+     * @param ruleName
+     *         the grammar rule to create a PNG image from.
+     * @param rasterizer
+     *         the rasterizer used to rasterize the SVG of the rule.
+     *
+     * @throws IOException
+     *         when the image could not be written.
+     * @throws TranscoderException
+     *         when the SVG could not be rasterized.
+     */
+    private void writeDiagram(String ruleName, Rasterizer rasterizer) throws IOException, TranscoderException {
+        writeFile(ruleName + ".png", rasterize(ruleName, rasterizer));
+    }
+
+    // Returns the PNG image of a grammar rule: from the cache if it has
+    // been rasterized before, and rasterized by `rasterizer` otherwise.
+    private byte[] rasterize(String ruleName, Rasterizer rasterizer) throws TranscoderException {
+
+        DiagramCache cache = this.cache;
+
+        if (cache == null) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            transcode(ruleName, rasterizer, stream);
+            return stream.toByteArray();
+        }
+
+        DiagramNode model = rules.get(ruleName);
+
+        if (model == null) {
+            throw new RuntimeException("no such rule found: " + ruleName);
+        }
+
+        // The image of the SVG, at a scale and compression level.
+        String key = DiagramCache.key("png", cacheKey("svg", model, RAILROAD_CSS), Float.toString(pngScale),
+                Integer.toString(pngCompression));
+        byte[] png = cache.get(key);
+
+        if (png == null) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            transcode(ruleName, rasterizer, stream);
+            png = stream.toByteArray();
+            cache.put(key, png);
+        }
+
+        return png;
+    }
+
+    private void writeFile(String fileName, byte[] contents) throws IOException {
+
+        OutputStream stream = new FileOutputStream(outputFile(fileName));
+
+        try {
+            stream.write(contents);
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    // Rasterizes the SVG of a grammar rule to `stream`.
+    private void transcode(String ruleName, Rasterizer rasterizer, ByteArrayOutputStream stream) throws TranscoderException {
+
+        String svg = getSVG(ruleName);
+        Stats.Span span = Stats.begin(Stats.Phase.PNG, this.antlr4GrammarFileName, ruleName);
+
+        try {
+            rasterizer.rasterize(svg, pngScale, maxPixels, pngCompression, stream);
+        }
+        catch (IOException e) {
+            throw new TranscoderException(e);
+        }
+        finally {
+            span.end(stream.size());
+        }
+    }
+
+    /**
+     * create pdf file based on png images which are generated by provided grammar rule
+     *
+     * @param rules the grammar rule to get the pdf of railroad diagram from.
+     * @return `true` if writting of the pdf is successful
+     */
+    public boolean createPdf(Map<String, String> rules) {
+        if (rules == null) {
+            return false;
+        }
+
+        if (rules.isEmpty()) {
+            return false;
+        }
+
+        InputStream stream = null;
+        Stats.Span pdfSpan = Stats.begin(Stats.Phase.PDF, this.antlr4GrammarFileName, null);
+        try {
+            Document convertPngToPdf = new Document();
+            PdfWriter.getInstance(convertPngToPdf, new FileOutputStream(outputFile("index.pdf")));
+            convertPngToPdf.open();
+            for (String ruleName : rules.keySet()) {
+                Stats.Span ruleSpan = Stats.begin(Stats.Phase.PDF, this.antlr4GrammarFileName, ruleName);
+                try {
+                    // get the png file just created
+                    stream = new FileInputStream(new File(this.outputDir, ruleName + ".png"));
+                    Image ruleImage = PngImage.getImage(stream);
+                    stream.close();
+                    stream = null;
+                    if (ruleImage == null) {
+                        return false;
+                    }
+                    addDiagram(convertPngToPdf, ruleName, ruleImage);
+                } finally {
+                    ruleSpan.end();
+                }
+            }
+            convertPngToPdf.close();
+            return true;
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } catch (DocumentException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            pdfSpan.end();
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a pdf file (index.pdf) with the railroad diagrams of all
+     * grammar rules.
+     *
+     * @param mode
+     *         whether to draw the diagrams as vector graphics, or to embed
+     *         PNG images of them.
+     *
+     * @return `true` if writing of the pdf is successful.
+     */
+    public boolean createPdf(PdfMode mode) {
+        return mode == PdfMode.RASTER ? createRasterPdf(getRuleNames()) : createVectorPdf(getRuleNames());
+    }
+
+    /**
+     * Creates a pdf file (index.pdf) in which the PNG images of the
+     * provided grammar rules are embedded. Unlike `createPdf(Map)`, the
+     * images need not have been created before: every image is taken
+     * from the cache, or rasterized, without writing it to the output
+     * directory.
+     *
+     * @param ruleNames
+     *         the grammar rules to put in the pdf, in order.
+     *
+     * @return `true` if writing of the pdf is successful.
+     */
+    public boolean createRasterPdf(Collection<String> ruleNames) {
+
+        if (ruleNames.isEmpty()) {
+            return false;
+        }
+
+        Rasterizer rasterizer = rasterizers.get();
+        OutputStream out = null;
+        Stats.Span span = Stats.begin(Stats.Phase.PDF, this.antlr4GrammarFileName, null);
+
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(outputFile("index.pdf")));
+
+            Document document = new Document();
+            PdfWriter.getInstance(document, out).setCloseStream(false);
+            document.open();
+
+            for (String ruleName : ruleNames) {
+
+                byte[] png = rasterize(ruleName, rasterizer);
+                Stats.Span ruleSpan = Stats.begin(Stats.Phase.PDF, this.antlr4GrammarFileName, ruleName);
+
+                try {
+                    addDiagram(document, ruleName, Image.getInstance(png));
+                }
+                finally {
+                    ruleSpan.end(png.length);
+                }
+            }
+
+            document.close();
+            return true;
+        }
+        catch (TranscoderException e) {
+            e.printStackTrace();
+            return false;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        catch (DocumentException e) {
+            e.printStackTrace();
+            return false;
+        }
+        finally {
+            span.end();
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a pdf file (index.pdf) with the railroad diagrams of the
+     * provided grammar rules as vector graphics. Unlike `createPdf(Map)`,
+     * no PNG images are needed: the SVG of every rule is drawn directly
+     * on the pdf page.
+     *
+     * @param ruleNames
+     *         the grammar rules to put in the pdf, in order.
+     *
+     * @return `true` if writing of the pdf is successful.
+     */
+    public boolean createVectorPdf(Collection<String> ruleNames) {
 
-        while (m.find()) {
+        OutputStream out = null;
 
-            if (m.group(1) == null) {
-                // We didn't match a text-tag, just append whatever we did match.
-                builder.append(m.group());
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(outputFile("index.pdf")));
+            this.writeVectorPdf(ruleNames, out);
+            return true;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        catch (DocumentException e) {
+            e.printStackTrace();
+            return false;
+        }
+        finally {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
-            else {
-                // We found an SVG text tag.
-                String textTag = m.group(1);
-                String rule = m.group(2);
-
-                // The rule does not match any of the parser rules (one of:
-                // epsilon/not/comment/literal tags probably). Do not link
-                // but just add it back in the builder.
-                if (!this.rules.containsKey(rule)) {
-                    builder.append(textTag);
+        }
+    }
+
+    /**
+     * Writes a pdf with the railroad diagrams of the provided grammar
+     * rules as vector graphics: one heading and one diagram, scaled to
+     * fit the page, per rule. See `createVectorPdf(Collection)`.
+     *
+     * @param ruleNames
+     *         the grammar rules to put in the pdf, in order.
+     * @param out
+     *         the stream to write the pdf to. It is not closed.
+     *
+     * @throws IOException
+     *         when the SVG of a rule could not be parsed.
+     * @throws DocumentException
+     *         when the pdf could not be written.
+     */
+    public void writeVectorPdf(Collection<String> ruleNames, OutputStream out) throws IOException, DocumentException {
+
+        Stats.Span span = Stats.begin(Stats.Phase.PDF, this.antlr4GrammarFileName, null);
+
+        try {
+            Document document = new Document();
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+
+            // Diagrams are mostly repeated path operators: they compress well.
+            writer.setFullCompression();
+            writer.setCloseStream(false);
+
+            document.open();
+
+            for (String ruleName : ruleNames) {
+
+                String svg = getSVG(ruleName);
+                Stats.Span ruleSpan = Stats.begin(Stats.Phase.PDF, this.antlr4GrammarFileName, ruleName);
+
+                try {
+                    addVectorDiagram(document, writer, ruleName, svg);
                 }
-                else {
-                    // Yes, the rule matches with a parsed rule, add a link
-                    // around it.
-                    builder.append("<a xlink:href=\"").append("#").append(antlr4GrammarFileName).append("_").append(rule).append("\">")
-                            .append(textTag).append("</a>");
+                finally {
+                    ruleSpan.end();
                 }
             }
+
+            document.close();
+        }
+        finally {
+            span.end();
         }
+    }
 
-        return builder.toString();
+    // Draws the SVG of a grammar rule on a pdf page.
+    private static void addVectorDiagram(Document document, PdfWriter writer, String ruleName, String svg)
+            throws IOException, DocumentException {
+
+        SvgGraphics diagram = SvgGraphics.build(SvgGraphics.parse(svg, ruleName));
+
+        try {
+            // Draw the diagram on a template of its own size: the image
+            // wrapping the template scales it as a whole, like a picture.
+            PdfTemplate template = writer.getDirectContent().createTemplate(diagram.getWidth(), diagram.getHeight());
+            Graphics2D graphics = new PdfGraphics2D(template, diagram.getWidth(), diagram.getHeight());
+
+            try {
+                diagram.paint(graphics);
+            }
+            finally {
+                graphics.dispose();
+            }
+
+            addDiagram(document, ruleName, Image.getInstance(template));
+        }
+        finally {
+            diagram.close();
+        }
+    }
+
+    // Appends the heading and the diagram of a grammar rule to a pdf, with
+    // the diagram scaled to fit the page.
+    private static void addDiagram(Document document, String ruleName, Image ruleImage) throws DocumentException {
+
+        // set up the page layout
+        float documentWidth = document.getPageSize().getWidth() - document.leftMargin() - document.rightMargin();
+        float documentHeight = document.getPageSize().getHeight() - document.topMargin() - document.bottomMargin();
+
+        // fit the image to the pdf page
+        ruleImage.scaleToFit(documentWidth, documentHeight);
+
+        // append the image to the pdf
+        document.add(new Paragraph(ruleName.concat(" : ")));
+        document.add(ruleImage);
+    }
+
+    /**
+     * Creates an html page as a string of all grammar rules.
+     *
+     * @param fileName
+     *         the name of the html page.
+     *
+     * @return an html page as a string of all grammar rules.
+     */
+    public String getHtml(String fileName, boolean simpleHTML) {
+
+        StringWriter html = new StringWriter();
+
+        try {
+            this.writeHtml(html, simpleHTML);
+        }
+        catch (IOException e) {
+            // Cannot happen when writing to a StringWriter.
+            throw new RuntimeException(e);
+        }
+
+        return html.toString();
+    }
+
+    /**
+     * Writes an html page of all grammar rules to a stream, encoded as
+     * UTF-8. See `writeHtml(Writer, boolean)`.
+     *
+     * @param stream
+     *         the stream to write the html page to. It is flushed, but not
+     *         closed.
+     * @param simpleHTML
+     *         `true` to only write the table of diagrams.
+     *
+     * @throws IOException
+     *         when the page could not be written.
+     */
+    public void writeHtml(OutputStream stream, boolean simpleHTML) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+        this.writeHtml(writer, simpleHTML);
+        writer.flush();
+    }
+
+    /**
+     * Writes an html page of all grammar rules. The page is written rule
+     * by rule: the linked SVG of a rule is created, written and flushed
+     * before the next rule is rendered, so no more than a single diagram
+     * is held in memory at once.
+     *
+     * @param writer
+     *         the writer to write the html page to. It is flushed, but not
+     *         closed.
+     * @param simpleHTML
+     *         `true` to only write the table of diagrams.
+     *
+     * @throws IOException
+     *         when the page could not be written.
+     */
+    public void writeHtml(Writer writer, boolean simpleHTML) throws IOException {
+        this.writeHtml(writer, simpleHTML, null);
+    }
+
+    /**
+     * Writes an html page of all grammar rules, taking the rows of the
+     * rules from `rows` when present and adding the rows that are not.
+     *
+     * @param writer
+     *         the writer to write the html page to.
+     * @param simpleHTML
+     *         `true` to only write the table of diagrams.
+     * @param rows
+     *         the html rows of the rules, or `null` to create all rows.
+     *
+     * @throws IOException
+     *         when the page could not be written.
+     */
+    void writeHtml(Writer writer, boolean simpleHTML, Map<String, String> rows) throws IOException {
+        this.writeHtml(writer, simpleHTML, rows, null);
+    }
+
+    /**
+     * Writes an html page of all grammar rules, taking the rows of the
+     * rules from `rows` when present and adding the rows that are not.
+     *
+     * @param writer
+     *         the writer to write the html page to.
+     * @param simpleHTML
+     *         `true` to only write the table of diagrams.
+     * @param rows
+     *         the html rows of the rules, or `null` to create all rows.
+     * @param lazyPage
+     *         the file name of the page, to write the diagram of every
+     *         rule to a file of its own that the page only loads once it
+     *         scrolls into view, or `null` to put the diagrams in the page.
+     *
+     * @throws IOException
+     *         when the page, or the diagram of a rule, could not be
+     *         written.
+     */
+    void writeHtml(Writer writer, boolean simpleHTML, Map<String, String> rows, String lazyPage) throws IOException {
+
+        String[] parts = simpleHTML ? HTML_SIMPLE_PARTS : HTML_PARTS;
+        Stats.Span span = Stats.begin(Stats.Phase.HTML, this.antlr4GrammarFileName, null);
+
+        try {
+            // The parts diagrams share are written once, as symbols, in a
+            // page that is written as a whole: rows that are kept for the
+            // next page cannot use the symbols of this one.
+            SymbolTable symbols = sharedSymbols && rows == null && lazyPage == null ?
+                    renderer.newSymbolTable(antlr4GrammarFileName, this.rules.values(), layouts) : null;
+
+            writer.write(parts[0].replace("${grammar}", antlr4GrammarFileName));
+
+            for (String ruleName : this.rules.keySet()) {
+
+                String row = rows == null ? null : rows.get(ruleName);
+
+                if (row == null) {
+                    row = lazyPage == null ? this.getHtmlRow(ruleName, symbols) : this.getLazyHtmlRow(ruleName, lazyPage);
+
+                    if (rows != null) {
+                        rows.put(ruleName, row);
+                    }
+                }
+
+                writer.write(row);
+                writer.flush();
+            }
+
+            String end = parts[1].replace("${grammar}", antlr4GrammarFileName);
+            String tail = lazyPage != null ? LAZY_SCRIPT : symbols != null ? symbols.toSvg() : "";
+
+            if (!tail.isEmpty()) {
+                int body = end.lastIndexOf("</body>");
+                end = body < 0 ? end + tail : end.substring(0, body) + tail + end.substring(body);
+            }
+
+            writer.write(end);
+            writer.flush();
+        }
+        finally {
+            span.end();
+        }
+    }
+
+    // Creates the html table row(s) of a single grammar rule: its linked
+    // diagram and, when present, its description. The diagram uses the
+    // symbols of the page, if any.
+    private String getHtmlRow(String ruleName, SymbolTable symbols) {
+
+        if (symbols == null) {
+            return this.getHtmlRow(ruleName, this.getLinkedSVG(ruleName, this.linker, true));
+        }
+
+        // Not cached: what the diagram writes itself depends on the
+        // rules that were written before it.
+        return this.getHtmlRow(ruleName, this.render(ruleName, rules.get(ruleName), this.linker, null, symbols));
+    }
+
+    // Creates the html table row(s) of a single grammar rule whose diagram
+    // is written to a file of its own, `<rule>.svg`: the row only holds a
+    // placeholder of the size of the diagram, which the script of the page
+    // loads once it scrolls into view. An `<object>` is used, not an
+    // `<img>`: the links in an image cannot be followed.
+    private String getLazyHtmlRow(String ruleName, String page) throws IOException {
+
+        String svg = this.getLinkedSVG(ruleName, this.createLinker(page, "_top"), false);
+        String fileName = ruleName + ".svg";
+
+        this.writeFile(fileName, svg.getBytes("UTF-8"));
+
+        String root = svg.substring(0, Math.max(0, svg.indexOf('>')));
+
+        return this.getHtmlRow(ruleName, "<object class=\"diagram\" type=\"image/svg+xml\" data-diagram=\"" + fileName +
+                "\" width=\"" + attribute(root, "width") + "\" height=\"" + attribute(root, "height") + "\"><a href=\"" +
+                fileName + "\">" + ruleName + "</a></object>");
+    }
+
+    private String getHtmlRow(String ruleName, String diagram) {
+
+        String ruleDescription = comments.get(ruleName);
+
+        StringBuilder row = new StringBuilder();
+        Stats.Span span = Stats.begin(Stats.Phase.HTML, this.antlr4GrammarFileName, ruleName);
+
+        try {
+            row.append("<tr><td id=\"").append(antlr4GrammarFileName).append("_").append(ruleName).append("\"><h4>")
+                .append(ruleName).append("</h4></td><td>").append(diagram).append("</td></tr>");
+            if (ruleDescription != null) {
+                row.append("<tr class=\"border-notop\"><td></td><td>" + ruleDescription.replaceAll("\n", "<br>") + "</td></tr>");
+            }
+
+            return row.toString();
+        }
+        finally {
+            span.end(row.length());
+        }
+    }
+
+    // Returns the value of an attribute of a start tag, or the empty
+    // string when the tag does not have it.
+    private static String attribute(String tag, String name) {
+
+        int start = tag.indexOf(" " + name + "=\"");
+
+        if (start < 0) {
+            return "";
+        }
+
+        start += name.length() + 3;
+
+        return tag.substring(start, tag.indexOf('"', start));
+    }
+
+    /**
+     * Returns the description of a grammar rule: the comment in front of
+     * it in the grammar.
+     *
+     * @param ruleName
+     *         the grammar rule to get the description of.
+     *
+     * @return the description of the rule, or `null` if it has none.
+     */
+    String getComment(String ruleName) {
+        return comments.get(ruleName);
+    }
+
+    /**
+     * Creates a default (index.html) page containing all grammar rules.
+     *
+     * @return `true` iff the creation of the html page was successful.
+     */
+    public boolean createHtml() {
+        return createHtml("index.html", false);
+    }
+
+    /**
+     * Creates an html page containing all grammar rules.
+     *
+     * @param fileName
+     *         the file name of the generated html page.
+     *
+     * @return `true` iff the creation of the html page was successful.
+     */
+    public boolean createHtml(String fileName, boolean simpleHTML) {
+        return createHtml(fileName, simpleHTML, null);
     }
 
-    private static String inputAsString(InputStream input) {
-        final StringBuilder builder = new StringBuilder();
-        final Scanner scan = new Scanner(input);
+    /**
+     * Creates an html page containing all grammar rules, reusing the
+     * rows in `rows`. See `writeHtml(Writer, boolean, Map)`.
+     *
+     * @param fileName
+     *         the file name of the generated html page.
+     * @param rows
+     *         the html rows of the rules, or `null` to create all rows.
+     *
+     * @return `true` iff the creation of the html page was successful.
+     */
+    boolean createHtml(String fileName, boolean simpleHTML, Map<String, String> rows) {
+        return createHtml(fileName, simpleHTML, rows, false);
+    }
+
+    /**
+     * Creates a lazy-loading html page containing all grammar rules: the
+     * diagram of every rule is written to a file of its own, `<rule>.svg`,
+     * which the page only loads once it scrolls into view. The page of a
+     * large grammar shows up right away, however many rules it has.
+     *
+     * @param fileName
+     *         the file name of the generated html page.
+     *
+     * @return `true` iff the creation of the html page was successful.
+     */
+    public boolean createLazyHtml(String fileName, boolean simpleHTML) {
+        return createHtml(fileName, simpleHTML, null, true);
+    }
+
+    /**
+     * Creates an html page containing all grammar rules, reusing the
+     * rows in `rows`. See `writeHtml(Writer, boolean, Map, String)`.
+     *
+     * @param fileName
+     *         the file name of the generated html page.
+     * @param rows
+     *         the html rows of the rules, or `null` to create all rows.
+     *         The diagram file of a lazy row is only written along with
+     *         the row.
+     * @param lazy
+     *         `true` to write the diagrams to files of their own.
+     *
+     * @return `true` iff the creation of the html page was successful.
+     */
+    boolean createHtml(String fileName, boolean simpleHTML, Map<String, String> rows, boolean lazy) {
+
+        OutputStream out = null;
+
+        try {
+            out = new FileOutputStream(outputFile(fileName));
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            this.writeHtml(writer, simpleHTML, rows, lazy ? fileName : null);
+            writer.flush();
+
+            return true;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        finally {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    // Splits an HTML template in the part before- and the part after
+    // the `${rows}` slot.
+    private static String[] splitAtRows(String template) {
+
+        int index = template.indexOf("${rows}");
+
+        if (index < 0) {
+            throw new RuntimeException("no ${rows} slot in template:\n" + template);
+        }
+
+        return new String[]{ template.substring(0, index), template.substring(index + "${rows}".length()) };
+    }
+
+    /**
+     * Converts an input stream into a String.
+     *
+     * @param input
+     *         the input to convert into a String.
+     *
+     * @return the input stream as a String.
+     */
+    static String slurp(InputStream input) {
+
+        StringBuilder builder = new StringBuilder();
+        Scanner scan = new Scanner(input);
 
         while (scan.hasNextLine()) {
             builder.append(scan.nextLine()).append(scan.hasNextLine() ? "\n" : "");
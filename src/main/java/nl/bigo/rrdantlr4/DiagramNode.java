@@ -0,0 +1,382 @@
+package nl.bigo.rrdantlr4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, typed representation of (a part of) a railroad
+ * diagram, as created by `RuleVisitor` for each grammar rule.
+ *
+ * The DSL that `railroad-diagram.js` evaluates is just one
+ * serialization of this tree, see `toDsl()`.
+ */
+public abstract class DiagramNode {
+
+    /**
+     * A visitor over the different kinds of nodes.
+     *
+     * @param <T>
+     *         the return type of the visit operation.
+     */
+    public interface Visitor<T> {
+
+        T visitSequence(Sequence sequence);
+
+        T visitChoice(Choice choice);
+
+        T visitRepetition(Repetition repetition);
+
+        T visitTerminal(Terminal terminal);
+
+        T visitNonTerminal(NonTerminal nonTerminal);
+
+        T visitComment(Comment comment);
+    }
+
+    // The hash code of this node, computed on first use: nodes are
+    // immutable, and hashing a large tree over and over is not cheap.
+    private int hash;
+
+    // Only the nested classes below can extend this class.
+    private DiagramNode() {
+    }
+
+    public abstract <T> T accept(Visitor<T> visitor);
+
+    /**
+     * Returns this node in the DSL `railroad-diagram.js` understands.
+     *
+     * @return this node in the DSL `railroad-diagram.js` understands.
+     */
+    public final String toDsl() {
+        StringBuilder builder = new StringBuilder();
+        this.appendDsl(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Returns the DSL that, when evaluated by `railroad-diagram.js`,
+     * results in the SVG of a diagram containing this node.
+     *
+     * @return the DSL of a complete diagram containing this node.
+     */
+    public final String toDiagramDsl() {
+        StringBuilder builder = new StringBuilder("Diagram(");
+        this.appendDsl(builder);
+        return builder.append(").toString()").toString();
+    }
+
+    abstract void appendDsl(StringBuilder builder);
+
+    abstract int computeHashCode();
+
+    @Override
+    public final int hashCode() {
+
+        int hash = this.hash;
+
+        if (hash == 0) {
+            hash = computeHashCode();
+            this.hash = hash;
+        }
+
+        return hash;
+    }
+
+    // Only nodes with the same hash code need to be compared node by node.
+    final boolean sameHashCode(Object o) {
+        return ((DiagramNode) o).hashCode() == hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.toDsl();
+    }
+
+    /**
+     * Items that are placed one after the other.
+     */
+    public static final class Sequence extends DiagramNode {
+
+        private final List<DiagramNode> items;
+
+        public Sequence(List<? extends DiagramNode> items) {
+            this.items = Collections.unmodifiableList(new ArrayList<DiagramNode>(items));
+        }
+
+        public List<DiagramNode> getItems() {
+            return items;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitSequence(this);
+        }
+
+        @Override
+        void appendDsl(StringBuilder builder) {
+            appendCall(builder, "Sequence(", items);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || (o instanceof Sequence && sameHashCode(o) && ((Sequence) o).items.equals(items));
+        }
+
+        @Override
+        int computeHashCode() {
+            return 31 + items.hashCode();
+        }
+    }
+
+    /**
+     * Alternatives of which exactly one is taken.
+     */
+    public static final class Choice extends DiagramNode {
+
+        private final List<DiagramNode> alternatives;
+
+        public Choice(List<? extends DiagramNode> alternatives) {
+            this.alternatives = Collections.unmodifiableList(new ArrayList<DiagramNode>(alternatives));
+        }
+
+        public List<DiagramNode> getAlternatives() {
+            return alternatives;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitChoice(this);
+        }
+
+        @Override
+        void appendDsl(StringBuilder builder) {
+            appendCall(builder, "Choice(0, ", alternatives);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || (o instanceof Choice && sameHashCode(o) && ((Choice) o).alternatives.equals(alternatives));
+        }
+
+        @Override
+        int computeHashCode() {
+            return 37 + alternatives.hashCode();
+        }
+    }
+
+    /**
+     * An item suffixed with one of the EBNF operators `?`, `*` or `+`.
+     */
+    public static final class Repetition extends DiagramNode {
+
+        public enum Kind {
+
+            OPTIONAL("Optional("),
+            ZERO_OR_MORE("ZeroOrMore("),
+            ONE_OR_MORE("OneOrMore(");
+
+            private final String dsl;
+
+            Kind(String dsl) {
+                this.dsl = dsl;
+            }
+        }
+
+        private final Kind kind;
+        private final DiagramNode item;
+
+        public Repetition(Kind kind, DiagramNode item) {
+            this.kind = kind;
+            this.item = item;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public DiagramNode getItem() {
+            return item;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitRepetition(this);
+        }
+
+        @Override
+        void appendDsl(StringBuilder builder) {
+            builder.append(kind.dsl);
+            item.appendDsl(builder);
+            builder.append(')');
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || (o instanceof Repetition && ((Repetition) o).kind == kind && sameHashCode(o)
+                    && ((Repetition) o).item.equals(item));
+        }
+
+        @Override
+        int computeHashCode() {
+            return 41 * kind.hashCode() + item.hashCode();
+        }
+    }
+
+    /**
+     * A node displaying a text: a terminal, non-terminal or comment.
+     */
+    public static abstract class Text extends DiagramNode {
+
+        private final String text;
+
+        private Text(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Returns the text exactly as it is displayed in the diagram.
+         *
+         * @return the text exactly as it is displayed in the diagram.
+         */
+        public String getText() {
+            return text;
+        }
+
+        abstract String function();
+
+        @Override
+        void appendDsl(StringBuilder builder) {
+            builder.append(function()).append('(');
+            appendString(builder, text);
+            builder.append(')');
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o != null && o.getClass() == getClass() && ((Text) o).text.equals(text);
+        }
+
+        @Override
+        int computeHashCode() {
+            return function().hashCode() * 43 + text.hashCode();
+        }
+    }
+
+    /**
+     * A lexer rule or a literal: displayed as a rounded box.
+     */
+    public static final class Terminal extends Text {
+
+        public Terminal(String text) {
+            super(text);
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitTerminal(this);
+        }
+
+        @Override
+        String function() {
+            return "Terminal";
+        }
+    }
+
+    /**
+     * A parser rule: displayed as a square box.
+     */
+    public static final class NonTerminal extends Text {
+
+        public NonTerminal(String text) {
+            super(text);
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitNonTerminal(this);
+        }
+
+        @Override
+        String function() {
+            return "NonTerminal";
+        }
+    }
+
+    /**
+     * Text without a box, like `not`, `predicate` or an epsilon.
+     */
+    public static final class Comment extends Text {
+
+        public Comment(String text) {
+            super(text);
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitComment(this);
+        }
+
+        @Override
+        String function() {
+            return "Comment";
+        }
+    }
+
+    private static void appendCall(StringBuilder builder, String function, List<DiagramNode> nodes) {
+
+        builder.append(function);
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            nodes.get(i).appendDsl(builder);
+        }
+
+        builder.append(')');
+    }
+
+    // Appends `text` as a single quoted JavaScript string literal.
+    private static void appendString(StringBuilder builder, String text) {
+
+        builder.append('\'');
+
+        for (int i = 0; i < text.length(); i++) {
+
+            char ch = text.charAt(i);
+
+            switch (ch) {
+                case '\'':
+                    builder.append("\\'");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\u2028':
+                case '\u2029':
+                    builder.append(String.format("\\u%04x", (int) ch));
+                    break;
+                default:
+                    if (ch < ' ') {
+                        builder.append(String.format("\\x%02x", (int) ch));
+                    }
+                    else {
+                        builder.append(ch);
+                    }
+            }
+        }
+
+        builder.append('\'');
+    }
+}
@@ -0,0 +1,345 @@
+package nl.bigo.rrdantlr4;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Serves the railroad diagrams of grammars over HTTP, rendering them on
+ * demand instead of writing them to files:
+ *
+ * - `/` lists the grammars,
+ * - `/grammar/{name}` is the html page of a grammar,
+ * - `/grammar/{name}/rule/{rule}.svg` and `.png` are the diagram of a
+ *   single rule,
+ * - `/metrics` reports the latency, cache hit rate and queue depth, in the
+ *   Prometheus text format.
+ *
+ * Rendered pages and diagrams are kept in a size-bounded LRU cache, and
+ * concurrent requests for the same diagram are rendered once.
+ */
+public final class DiagramServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // The upper bounds of the latency histogram, in milliseconds.
+    private static final long[] LATENCY_BUCKETS = { 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+
+    // The generators of the served grammars, by grammar name.
+    private final Map<String, DiagramGenerator> generators;
+
+    private final RenderCache cache;
+    private final ThreadPoolExecutor executor;
+    private HttpServer server;
+
+    // The number of requests per latency bucket, the last one unbounded.
+    private final AtomicLongArray latencies;
+    private final AtomicLong latencyNanos;
+    private final AtomicLong requests;
+    private final AtomicLong errors;
+    private final AtomicInteger active;
+
+    /**
+     * Creates a server of the provided grammars.
+     *
+     * @param generators
+     *         the grammars to serve. They are served under their grammar
+     *         name, so no two of them may have the same name.
+     * @param cacheBytes
+     *         the number of bytes the rendered pages and diagrams may take.
+     * @param threads
+     *         the number of requests that are handled at the same time.
+     */
+    public DiagramServer(Iterable<DiagramGenerator> generators, long cacheBytes, int threads) {
+
+        this.generators = new LinkedHashMap<String, DiagramGenerator>();
+
+        for (DiagramGenerator generator : generators) {
+            if (this.generators.put(generator.getGrammarName(), generator) != null) {
+                throw new IllegalArgumentException("more than one grammar is named: " + generator.getGrammarName());
+            }
+        }
+
+        this.cache = new RenderCache(cacheBytes);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        this.latencies = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+        this.latencyNanos = new AtomicLong();
+        this.requests = new AtomicLong();
+        this.errors = new AtomicLong();
+        this.active = new AtomicInteger();
+    }
+
+    /**
+     * Starts serving.
+     *
+     * @param port
+     *         the port to listen on, or `0` for any free port.
+     *
+     * @return the port the server listens on.
+     *
+     * @throws IOException
+     *         when the port could not be bound.
+     */
+    public synchronized int start(int port) throws IOException {
+
+        if (server != null) {
+            throw new IllegalStateException("already started");
+        }
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                DiagramServer.this.handle(exchange);
+            }
+        });
+        server.start();
+
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving, without waiting for the requests that are handled.
+     */
+    public synchronized void stop() {
+
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+
+        executor.shutdownNow();
+    }
+
+    public Map<String, DiagramGenerator> getGenerators() {
+        return Collections.unmodifiableMap(generators);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+
+        long start = System.nanoTime();
+        active.incrementAndGet();
+
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "only GET and HEAD are supported\n");
+            }
+            else {
+                route(exchange, exchange.getRequestURI().getPath());
+            }
+        }
+        catch (Exception e) {
+            errors.incrementAndGet();
+            send(exchange, 500, "text/plain", "could not render: " + e + "\n");
+        }
+        finally {
+            active.decrementAndGet();
+            record(System.nanoTime() - start);
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, String path) throws Exception {
+
+        if (path.equals("/")) {
+            send(exchange, 200, "text/html; charset=utf-8", getIndex());
+            return;
+        }
+
+        if (path.equals("/metrics")) {
+            send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", getMetrics());
+            return;
+        }
+
+        // /grammar/{name}, /grammar/{name}/ or /grammar/{name}/rule/{rule}.{svg|png}
+        String[] parts = path.split("/", -1);
+
+        if (parts.length < 3 || !parts[0].isEmpty() || !parts[1].equals("grammar")) {
+            send(exchange, 404, "text/plain", "not found: " + path + "\n");
+            return;
+        }
+
+        final DiagramGenerator generator = generators.get(parts[2]);
+
+        if (generator == null) {
+            send(exchange, 404, "text/plain", "no such grammar: " + parts[2] + "\n");
+            return;
+        }
+
+        if (parts.length == 3 || (parts.length == 4 && parts[3].isEmpty())) {
+            byte[] html = cache.get(parts[2] + "/index.html", new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return generator.getHtml("index.html", false).getBytes(UTF_8);
+                }
+            });
+            send(exchange, 200, "text/html; charset=utf-8", html);
+            return;
+        }
+
+        int dot = parts.length == 5 ? parts[4].lastIndexOf('.') : -1;
+
+        if (dot < 0 || !parts[3].equals("rule")) {
+            send(exchange, 404, "text/plain", "not found: " + path + "\n");
+            return;
+        }
+
+        final String ruleName = parts[4].substring(0, dot);
+        String extension = parts[4].substring(dot + 1);
+
+        if (generator.getDiagramModel(ruleName) == null) {
+            send(exchange, 404, "text/plain", "no such rule: " + ruleName + "\n");
+        }
+        else if (extension.equals("svg")) {
+            byte[] svg = cache.get(parts[2] + "/rule/" + parts[4], new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return generator.getSVG(ruleName).getBytes(UTF_8);
+                }
+            });
+            send(exchange, 200, "image/svg+xml", svg);
+        }
+        else if (extension.equals("png")) {
+            byte[] png = cache.get(parts[2] + "/rule/" + parts[4], new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return generator.getPNG(ruleName);
+                }
+            });
+            send(exchange, 200, "image/png", png);
+        }
+        else {
+            send(exchange, 404, "text/plain", "no such format: " + extension + "\n");
+        }
+    }
+
+    private String getIndex() {
+
+        StringBuilder index = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>grammars</title>" +
+                "</head><body><ul>\n");
+
+        for (DiagramGenerator generator : generators.values()) {
+            index.append("<li><a href=\"/grammar/").append(generator.getGrammarName()).append("\">")
+                    .append(generator.getGrammarName()).append("</a> (").append(generator.getRuleNames().size())
+                    .append(" rules)</li>\n");
+        }
+
+        return index.append("</ul></body></html>\n").toString();
+    }
+
+    /**
+     * Returns the metrics of this server, in the Prometheus text format.
+     *
+     * @return the metrics of this server.
+     */
+    public String getMetrics() {
+
+        StringBuilder metrics = new StringBuilder();
+
+        metrics.append("# TYPE rrd_requests_total counter\n");
+        metrics.append("rrd_requests_total ").append(requests.get()).append('\n');
+        metrics.append("# TYPE rrd_request_errors_total counter\n");
+        metrics.append("rrd_request_errors_total ").append(errors.get()).append('\n');
+
+        metrics.append("# TYPE rrd_request_duration_seconds histogram\n");
+
+        long count = 0;
+
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            count += latencies.get(i);
+            metrics.append("rrd_request_duration_seconds_bucket{le=\"").append(LATENCY_BUCKETS[i] / 1000.0).append("\"} ")
+                    .append(count).append('\n');
+        }
+
+        count += latencies.get(LATENCY_BUCKETS.length);
+
+        metrics.append("rrd_request_duration_seconds_bucket{le=\"+Inf\"} ").append(count).append('\n');
+        metrics.append("rrd_request_duration_seconds_sum ").append(latencyNanos.get() / 1e9).append('\n');
+        metrics.append("rrd_request_duration_seconds_count ").append(count).append('\n');
+
+        long hits = cache.getHits();
+        long lookups = hits + cache.getMisses();
+
+        metrics.append("# TYPE rrd_cache_hits_total counter\n");
+        metrics.append("rrd_cache_hits_total ").append(hits).append('\n');
+        metrics.append("# TYPE rrd_cache_misses_total counter\n");
+        metrics.append("rrd_cache_misses_total ").append(cache.getMisses()).append('\n');
+        metrics.append("# TYPE rrd_cache_hit_ratio gauge\n");
+        metrics.append("rrd_cache_hit_ratio ").append(lookups == 0 ? 0 : hits / (double) lookups).append('\n');
+        metrics.append("# TYPE rrd_cache_evictions_total counter\n");
+        metrics.append("rrd_cache_evictions_total ").append(cache.getEvictions()).append('\n');
+        metrics.append("# TYPE rrd_cache_bytes gauge\n");
+        metrics.append("rrd_cache_bytes ").append(cache.getSize()).append('\n');
+        metrics.append("# TYPE rrd_cache_max_bytes gauge\n");
+        metrics.append("rrd_cache_max_bytes ").append(cache.getMaxBytes()).append('\n');
+        metrics.append("# TYPE rrd_cache_entries gauge\n");
+        metrics.append("rrd_cache_entries ").append(cache.getCount()).append('\n');
+
+        metrics.append("# TYPE rrd_renders_in_flight gauge\n");
+        metrics.append("rrd_renders_in_flight ").append(cache.getRendering()).append('\n');
+        metrics.append("# TYPE rrd_renders_coalesced_total counter\n");
+        metrics.append("rrd_renders_coalesced_total ").append(cache.getCoalesced()).append('\n');
+
+        metrics.append("# TYPE rrd_queue_depth gauge\n");
+        metrics.append("rrd_queue_depth ").append(executor.getQueue().size()).append('\n');
+        metrics.append("# TYPE rrd_requests_active gauge\n");
+        metrics.append("rrd_requests_active ").append(active.get()).append('\n');
+
+        return metrics.toString();
+    }
+
+    private void record(long nanos) {
+
+        int bucket = 0;
+
+        while (bucket < LATENCY_BUCKETS.length && nanos > TimeUnit.MILLISECONDS.toNanos(LATENCY_BUCKETS[bucket])) {
+            bucket++;
+        }
+
+        latencies.incrementAndGet(bucket);
+        latencyNanos.addAndGet(nanos);
+        requests.incrementAndGet();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        send(exchange, status, contentType, body.getBytes(UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+
+        OutputStream out = exchange.getResponseBody();
+
+        try {
+            out.write(body);
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package nl.bigo.rrdantlr4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the outputs of many grammars in a single process. The grammars
+ * are processed in parallel, and all of them share the same (warm)
+ * renderer and, optionally, the same cache.
+ */
+public final class GrammarBatch {
+
+    /**
+     * The outcome of processing a single grammar.
+     */
+    public static final class Result {
+
+        private final String grammar;
+        private int rules;
+        private long parseMillis;
+        private long pngMillis;
+        private long pdfMillis;
+        private long htmlMillis;
+        private Map<String, Throwable> failures;
+        private String error;
+
+        private Result(String grammar) {
+            this.grammar = grammar;
+            this.failures = Collections.emptyMap();
+            this.error = null;
+        }
+
+        public String getGrammar() {
+            return grammar;
+        }
+
+        public int getRules() {
+            return rules;
+        }
+
+        public long getParseMillis() {
+            return parseMillis;
+        }
+
+        public long getPngMillis() {
+            return pngMillis;
+        }
+
+        public long getPdfMillis() {
+            return pdfMillis;
+        }
+
+        public long getHtmlMillis() {
+            return htmlMillis;
+        }
+
+        /**
+         * Returns the rules of which no PNG image could be created.
+         *
+         * @return the rules of which no PNG image could be created,
+         * mapped to the cause.
+         */
+        public Map<String, Throwable> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns what went wrong with the grammar as a whole.
+         *
+         * @return what went wrong with the grammar as a whole, or `null`
+         * when nothing did.
+         */
+        public String getError() {
+            return error;
+        }
+
+        public boolean isFailed() {
+            return error != null || !failures.isEmpty();
+        }
+    }
+
+    private final RrdAntlrOptions options;
+    private final DiagramCache cache;
+
+    // The directory holding the output directory of every grammar.
+    private File outputDir = new File("./output");
+
+    /**
+     * Creates a batch that creates the outputs selected by `options`.
+     *
+     * @param options
+     *         the outputs to create, and the number of threads to use.
+     * @param cache
+     *         the cache shared by all grammars, or `null`.
+     */
+    public GrammarBatch(RrdAntlrOptions options, DiagramCache cache) {
+        this.options = options;
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the directory the output directory of every grammar is created
+     * in, named after the grammar.
+     *
+     * @param outputDir
+     *         the directory to write to. Default is `./output`.
+     */
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Processes all grammars. At most `--threads` grammars are processed
+     * at the same time; the PNG images of a grammar are created on the
+     * threads that are left for it, and at least one.
+     *
+     * A grammar that would write to the same output directory as a grammar
+     * before it, like `a/Expr.g4` after `b/Expr.g4`, is not processed, and
+     * fails.
+     *
+     * @param grammars
+     *         the grammars to process.
+     *
+     * @return the outcome of every grammar, in the order of `grammars`.
+     *
+     * @throws InterruptedException
+     *         when interrupted while waiting for the grammars.
+     */
+    public List<Result> run(List<String> grammars) throws InterruptedException {
+
+        int threads = Math.max(1, Math.min(options.getThreads(), grammars.size()));
+        final int pngThreads = Math.max(1, options.getThreads() / threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            // The future of every grammar, or `null` for a grammar that is
+            // not processed.
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            Map<String, String> outputNames = new HashMap<String, String>();
+
+            for (final String grammar : grammars) {
+
+                String outputName = outputName(grammar);
+
+                if (outputNames.containsKey(outputName)) {
+                    futures.add(null);
+                    continue;
+                }
+
+                outputNames.put(outputName, grammar);
+
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws InterruptedException {
+                        return process(grammar, pngThreads);
+                    }
+                }));
+            }
+
+            List<Result> results = new ArrayList<Result>();
+
+            for (int i = 0; i < grammars.size(); i++) {
+
+                String grammar = grammars.get(i);
+                Future<Result> future = futures.get(i);
+
+                if (future == null) {
+                    Result result = new Result(grammar);
+                    result.error = "same output directory as " + outputNames.get(outputName(grammar)) +
+                            ": " + new File(outputDir, outputName(grammar));
+                    results.add(result);
+                    continue;
+                }
+
+                try {
+                    results.add(future.get());
+                }
+                catch (ExecutionException e) {
+
+                    if (e.getCause() instanceof Error) {
+                        // Like a StackOverflowError on a deeply nested
+                        // grammar: only this grammar fails.
+                        Result result = new Result(grammar);
+                        result.error = e.getCause().toString();
+                        results.add(result);
+                        continue;
+                    }
+
+                    // Other than errors, only an interrupt escapes `process`.
+                    InterruptedException interrupted = new InterruptedException("interrupted while processing a grammar");
+                    interrupted.initCause(e.getCause());
+                    throw interrupted;
+                }
+            }
+
+            return results;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // The name of the directory below `outputDir` that the outputs of a
+    // grammar are written to.
+    private static String outputName(String grammar) {
+        return GrammarSource.fileName(grammar.trim()).replaceAll(".[gG]4$", "");
+    }
+
+    // Creates all outputs of a single grammar, recording what failed
+    // instead of giving up on the whole batch.
+    private Result process(String grammar, int pngThreads) throws InterruptedException {
+
+        Result result = new Result(grammar);
+        long start = System.nanoTime();
+
+        DiagramGenerator generator;
+
+        try {
+            generator = new DiagramGenerator(grammar, options.getRenderer(), options.getRoots());
+        }
+        catch (Exception e) {
+            result.error = "could not parse: " + e;
+            return result;
+        }
+
+        options.configure(generator, cache);
+        generator.setOutputDir(new File(outputDir, outputName(grammar)));
+        result.rules = generator.getRuleNames().size();
+        result.parseMillis = millisSince(start);
+
+        try {
+            if (options.wantPNG && options.wantPDF && options.getPdfMode() == PdfMode.RASTER) {
+                // The images are embedded in the pdf while they are being
+                // created: both are timed as png.
+                start = System.nanoTime();
+                try {
+                    result.failures = generator.createDiagramsAndPdf(generator.getRuleNames(), pngThreads);
+                }
+                catch (IOException e) {
+                    result.error = "creating pdf failed: " + e;
+                }
+                result.pngMillis = millisSince(start);
+            }
+            else {
+                if (options.wantPNG) {
+                    start = System.nanoTime();
+                    result.failures = generator.createDiagrams(generator.getRuleNames(), pngThreads);
+                    result.pngMillis = millisSince(start);
+                }
+
+                if (options.wantPDF) {
+                    start = System.nanoTime();
+                    if (!generator.createPdf(options.getPdfMode())) {
+                        result.error = "creating pdf failed";
+                    }
+                    result.pdfMillis = millisSince(start);
+                }
+            }
+
+            start = System.nanoTime();
+            if (!generator.createHtml(options.getOutputFileName(), options.wantSimpleHTML, null, options.wantLazyHTML)) {
+                result.error = "creating html failed";
+            }
+            result.htmlMillis = millisSince(start);
+        }
+        catch (RuntimeException e) {
+            result.error = e.toString();
+        }
+
+        return result;
+    }
+
+    /**
+     * Prints a table with the timings and failures of every grammar,
+     * followed by the cause of every failure.
+     *
+     * @param results
+     *         the outcome of the grammars, as returned by `run(List)`.
+     * @param out
+     *         the stream to print to.
+     */
+    public static void printSummary(List<Result> results, PrintStream out) {
+
+        int width = "grammar".length();
+
+        for (Result result : results) {
+            width = Math.max(width, result.grammar.length());
+        }
+
+        String row = "%-" + width + "s %6s %8s %8s %8s %8s  %s%n";
+
+        out.printf(row, "grammar", "rules", "parse", "png", "pdf", "html", "status");
+
+        int failed = 0;
+
+        for (Result result : results) {
+
+            String status = result.error != null ? result.error :
+                    !result.failures.isEmpty() ? result.failures.size() + " rule(s) failed" : "ok";
+
+            out.printf(row, result.grammar, result.rules, result.parseMillis + "ms", result.pngMillis + "ms",
+                    result.pdfMillis + "ms", result.htmlMillis + "ms", status);
+
+            if (result.isFailed()) {
+                failed++;
+            }
+        }
+
+        for (Result result : results) {
+            for (Map.Entry<String, Throwable> failure : result.failures.entrySet()) {
+                out.println(result.grammar + ": could not create png image of rule " + failure.getKey() + ": " + failure.getValue());
+            }
+        }
+
+        out.printf("%d grammar(s), %d failed%n", results.size(), failed);
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
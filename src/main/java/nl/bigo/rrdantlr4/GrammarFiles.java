@@ -0,0 +1,151 @@
+package nl.bigo.rrdantlr4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Expands the grammars given on the command line: directories into the
+ * grammar files (`*.g4`) below them, and globs like `grammars/**.g4` into
+ * the files they match. URLs and inline grammars are passed on as is.
+ */
+public final class GrammarFiles {
+
+    private GrammarFiles() {
+    }
+
+    /**
+     * Expands the provided grammars into a list of grammars that can be
+     * passed to `DiagramGenerator`, without duplicates.
+     *
+     * @param grammars
+     *         local files, directories, globs, URLs or inline grammars.
+     *
+     * @return the grammars in the order they are provided; the files of a
+     * directory or glob are sorted by path.
+     *
+     * @throws IOException
+     *         when a directory could not be read, or when a directory or
+     *         glob holds no grammar.
+     */
+    public static List<String> expand(List<String> grammars) throws IOException {
+
+        Set<String> expanded = new LinkedHashSet<String>();
+
+        for (String grammar : grammars) {
+
+            File file = new File(grammar);
+
+            if (file.isDirectory()) {
+                List<String> files = walk(file.toPath(), FileSystems.getDefault().getPathMatcher("glob:**.{g4,G4}"));
+
+                if (files.isEmpty()) {
+                    throw new IOException("no grammar in: " + grammar);
+                }
+
+                expanded.addAll(files);
+            }
+            else if (!file.exists() && isGlob(grammar)) {
+
+                PathMatcher matcher;
+
+                try {
+                    matcher = FileSystems.getDefault().getPathMatcher("glob:" + grammar);
+                }
+                catch (PatternSyntaxException e) {
+                    // Not a glob after all, like an inline grammar with an
+                    // unclosed `[` in it.
+                    expanded.add(grammar);
+                    continue;
+                }
+
+                List<String> matches = walk(globBase(grammar), matcher);
+
+                if (matches.isEmpty()) {
+                    throw new IOException("no grammar matches: " + grammar);
+                }
+
+                expanded.addAll(matches);
+            }
+            else {
+                expanded.add(grammar);
+            }
+        }
+
+        return new ArrayList<String>(expanded);
+    }
+
+    // Only a path can be a glob: URLs are not, and neither are inline
+    // grammars, with their `*`, `?`, `[a-z]` and `{...}`. A path has no
+    // white space, `;` or `:` in it, unless it names a grammar file.
+    private static boolean isGlob(String grammar) {
+
+        if (grammar.contains("://")) {
+            return false;
+        }
+
+        boolean path = grammar.toLowerCase().endsWith(".g4") || !grammar.matches("(?s).*[\\s;:].*");
+
+        return path && grammar.matches("(?s).*[*?\\[{].*");
+    }
+
+    // The directory to start walking from: everything in front of the
+    // first path element with a wildcard in it.
+    private static Path globBase(String glob) {
+
+        int wildcard = 0;
+
+        while (wildcard < glob.length() && "*?[{".indexOf(glob.charAt(wildcard)) < 0) {
+            wildcard++;
+        }
+
+        int separator = Math.max(glob.lastIndexOf('/', wildcard), glob.lastIndexOf(File.separatorChar, wildcard));
+
+        if (separator < 0) {
+            return Paths.get("");
+        }
+
+        return Paths.get(separator == 0 ? glob.substring(0, 1) : glob.substring(0, separator));
+    }
+
+    private static List<String> walk(Path directory, final PathMatcher matcher) throws IOException {
+
+        final List<String> files = new ArrayList<String>();
+
+        // An empty directory is the current one: files below it must be
+        // matched as `x.g4`, not as `./x.g4`.
+        final boolean current = directory.toString().isEmpty();
+        final Path start = current ? Paths.get(".") : directory;
+
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+
+                Path path = current ? start.relativize(file) : file;
+
+                if (attributes.isRegularFile() && matcher.matches(path)) {
+                    files.add(path.toString());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(files);
+
+        return files;
+    }
+}
@@ -0,0 +1,300 @@
+package nl.bigo.rrdantlr4;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The diagram models and comments of an imported grammar, parsed and
+ * visited once per run however many grammars import it.
+ *
+ * Imported grammars are looked up relative to the location of the
+ * grammar that imports them, as the ANTLR tool does: `import Common;`
+ * in `dir/Json.g4` is `dir/Common.g4`. The parsed grammars are kept in a
+ * process-wide cache, keyed by their path and modification time, so an
+ * imported grammar that changes is parsed again.
+ */
+public final class GrammarModel {
+
+    // The parsed grammars, by canonical path (or URL).
+    private static final ConcurrentMap<String, Entry> models = new ConcurrentHashMap<String, Entry>();
+
+    private final String fileName;
+    private final Map<String, DiagramNode> rules;
+    private final Map<String, String> comments;
+    private final List<String> imports;
+
+    private GrammarModel(String fileName, Map<String, DiagramNode> rules, Map<String, String> comments,
+                         List<String> imports) {
+        this.fileName = fileName;
+        this.rules = Collections.unmodifiableMap(rules);
+        this.comments = Collections.unmodifiableMap(comments);
+        this.imports = Collections.unmodifiableList(imports);
+    }
+
+    // A parse of a grammar, running or done, and the modification time
+    // of the file it parses.
+    private static final class Entry {
+
+        final long modified;
+        final FutureTask<GrammarModel> parse;
+
+        Entry(long modified, FutureTask<GrammarModel> parse) {
+            this.modified = modified;
+            this.parse = parse;
+        }
+    }
+
+    /**
+     * Adds the rules of the grammars a grammar imports, and of the
+     * grammars those import, to the rules of the grammar. A rule the
+     * grammar (or an earlier import) defines itself is not replaced.
+     * An import that cannot be found or parsed is reported and skipped.
+     *
+     * @param antlr4Grammar
+     *         the grammar that imports: a local file, a URL or the grammar
+     *         itself, whose imports are looked up in the working directory.
+     * @param imports
+     *         the names of the grammars it imports.
+     * @param rules
+     *         the rules of the grammar, to add the imported rules to.
+     * @param comments
+     *         the rule descriptions of the grammar, to add the descriptions
+     *         of the imported rules to.
+     *
+     * @return the locations of all imported grammars, directly or not:
+     * also of those that could not be found or parsed.
+     */
+    static List<String> addImports(String antlr4Grammar, List<String> imports, Map<String, DiagramNode> rules,
+                                   Map<String, String> comments) {
+
+        Set<String> visited = new LinkedHashSet<String>();
+        String location = new File(antlr4Grammar).isFile() ? new File(antlr4Grammar).getAbsolutePath() : antlr4Grammar;
+        visited.add(location);
+
+        addImports(antlr4Grammar, imports, rules, comments, visited);
+
+        visited.remove(location);
+
+        return new ArrayList<String>(visited);
+    }
+
+    private static void addImports(String importer, List<String> imports, Map<String, DiagramNode> rules,
+                                   Map<String, String> comments, Set<String> visited) {
+
+        for (String name : imports) {
+
+            String location = resolve(importer, name);
+
+            // Imports may be cyclic, and diamond-shaped.
+            if (!visited.add(location)) {
+                continue;
+            }
+
+            GrammarModel model;
+
+            try {
+                model = load(location);
+            }
+            catch (IOException e) {
+                System.err.println("could not import " + name + " into " + importer + ": " + e.getMessage());
+                continue;
+            }
+            catch (RuntimeException e) {
+                System.err.println("could not import " + name + " into " + importer + ": " + e);
+                continue;
+            }
+
+            for (Map.Entry<String, DiagramNode> rule : model.rules.entrySet()) {
+                if (!rules.containsKey(rule.getKey())) {
+                    rules.put(rule.getKey(), rule.getValue());
+
+                    if (model.comments.containsKey(rule.getKey())) {
+                        comments.put(rule.getKey(), model.comments.get(rule.getKey()));
+                    }
+                }
+            }
+
+            addImports(location, model.imports, rules, comments, visited);
+        }
+    }
+
+    // The location of the grammar `name` imported by `importer`: next to
+    // it, for files and URLs.
+    private static String resolve(String importer, String name) {
+
+        String fileName = name + ".g4";
+
+        if (importer.startsWith("http://") || importer.startsWith("https://")) {
+            return importer.substring(0, importer.lastIndexOf('/') + 1) + fileName;
+        }
+
+        File file = new File(importer);
+
+        if (file.isFile()) {
+            return new File(file.getAbsoluteFile().getParentFile(), fileName).getPath();
+        }
+
+        return new File(fileName).getAbsolutePath();
+    }
+
+    /**
+     * Returns the parsed grammar at a location, from the cache when it was
+     * parsed before and did not change since. Concurrent loads of the same
+     * grammar parse it once.
+     *
+     * @param location
+     *         the local file or URL of the grammar.
+     *
+     * @return the parsed grammar.
+     *
+     * @throws IOException
+     *         when the grammar could not be read.
+     */
+    static GrammarModel load(final String location) throws IOException {
+
+        File file = new File(location);
+        boolean remote = location.startsWith("http://") || location.startsWith("https://");
+
+        if (!remote && !file.isFile()) {
+            throw new IOException("no such file: " + location);
+        }
+
+        // A remote grammar is downloaded once per run.
+        String key = remote ? location : file.getCanonicalPath();
+        long modified = remote ? 0 : file.lastModified();
+
+        while (true) {
+
+            Entry entry = models.get(key);
+
+            if (entry != null && entry.modified == modified) {
+                return await(entry.parse);
+            }
+
+            Entry created = new Entry(modified, new FutureTask<GrammarModel>(new Callable<GrammarModel>() {
+                @Override
+                public GrammarModel call() throws IOException {
+                    return parse(location);
+                }
+            }));
+
+            boolean added = entry == null ? models.putIfAbsent(key, created) == null : models.replace(key, entry, created);
+
+            if (!added) {
+                // Another thread got there first: use its parse.
+                continue;
+            }
+
+            created.parse.run();
+
+            try {
+                return await(created.parse);
+            }
+            catch (IOException e) {
+                // Not cached: the next import tries again.
+                models.remove(key, created);
+                throw e;
+            }
+            catch (RuntimeException e) {
+                models.remove(key, created);
+                throw e;
+            }
+        }
+    }
+
+    private static GrammarModel await(FutureTask<GrammarModel> parse) throws IOException {
+        try {
+            return parse.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while parsing", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static GrammarModel parse(String location) throws IOException {
+
+        GrammarSource source = GrammarSource.load(location);
+        String fileName = source.getFileName();
+
+        ParseTree tree;
+        Stats.Span span = Stats.begin(Stats.Phase.PARSE, fileName, null);
+
+        try {
+            tree = GrammarParser.parse(source);
+        }
+        finally {
+            span.end(source.getText().length());
+        }
+
+        RuleVisitor visitor = new RuleVisitor();
+        span = Stats.begin(Stats.Phase.VISIT, fileName, null);
+
+        try {
+            visitor.visit(tree);
+        }
+        finally {
+            span.end();
+        }
+
+        Map<String, String> comments;
+        span = Stats.begin(Stats.Phase.COMMENTS, fileName, null);
+
+        try {
+            comments = CommentsParser.commentsMap(source.getText());
+        }
+        finally {
+            span.end();
+        }
+
+        return new GrammarModel(fileName, visitor.getDiagramModels(), comments, visitor.getImports());
+    }
+
+    /**
+     * Forgets all parsed grammars.
+     */
+    public static void clearCache() {
+        models.clear();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Map<String, DiagramNode> getRules() {
+        return rules;
+    }
+
+    public Map<String, String> getComments() {
+        return comments;
+    }
+
+    public List<String> getImports() {
+        return imports;
+    }
+}
@@ -0,0 +1,121 @@
+package nl.bigo.rrdantlr4;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses ANTLR 4 grammars in two stages: first with the fast SLL
+ * prediction mode and an error strategy that bails out at the first
+ * syntax error, and only when that fails again with full LL prediction
+ * and the default error reporting and recovery. SLL parses nearly every
+ * grammar that is correct, and for those the result is the same.
+ *
+ * The lexer and parser are created once per thread and reused for every
+ * grammar that thread parses, by pointing them at the new input. The
+ * token stream in between is created for every parse: it cannot be
+ * reset once it has reached the end of its input. What makes the second
+ * parse fast, the DFA cache of the parser, is shared by all parsers.
+ */
+public final class GrammarParser {
+
+    // The parser of every thread: lexers and parsers are not thread-safe.
+    private static final ThreadLocal<GrammarParser> parsers = new ThreadLocal<GrammarParser>() {
+        @Override
+        protected GrammarParser initialValue() {
+            return new GrammarParser();
+        }
+    };
+
+    // The number of parses that succeeded with SLL, and that needed LL.
+    private static final AtomicLong sllParses = new AtomicLong();
+    private static final AtomicLong llParses = new AtomicLong();
+
+    private final ANTLRv4Lexer lexer;
+    private final ANTLRv4Parser parser;
+
+    private GrammarParser() {
+        this.lexer = new ANTLRv4Lexer(new ANTLRInputStream(""));
+        this.parser = new ANTLRv4Parser(new CommonTokenStream(lexer));
+    }
+
+    /**
+     * Parses a grammar with the lexer and parser of the current thread.
+     *
+     * @param source
+     *         the grammar to parse.
+     *
+     * @return the parse tree of the grammar.
+     */
+    public static ParseTree parse(GrammarSource source) {
+        return parsers.get().grammarSpec(source);
+    }
+
+    private ParseTree grammarSpec(GrammarSource source) {
+
+        lexer.setInputStream(source.newCharStream());
+
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        parser.setInputStream(tokens);
+
+        try {
+            // Stage 1: SLL, giving up at the first syntax error.
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.removeErrorListeners();
+
+            try {
+                ParseTree tree = parser.grammarSpec();
+                sllParses.incrementAndGet();
+                return tree;
+            }
+            catch (ParseCancellationException e) {
+                // The grammar may be correct, but beyond SLL, or it may
+                // have a syntax error: LL tells which, and reports it.
+            }
+
+            // Stage 2: full LL over the same tokens.
+            tokens.seek(0);
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+
+            ParseTree tree = parser.grammarSpec();
+            llParses.incrementAndGet();
+            return tree;
+        }
+        finally {
+            // Do not hold on to the grammar until the next parse.
+            lexer.setInputStream(new ANTLRInputStream(""));
+            parser.setInputStream(new CommonTokenStream(lexer));
+        }
+    }
+
+    /**
+     * Returns the number of grammars that were parsed with SLL prediction
+     * alone.
+     *
+     * @return the number of grammars parsed with SLL.
+     */
+    public static long getSllParses() {
+        return sllParses.get();
+    }
+
+    /**
+     * Returns the number of grammars that needed full LL prediction: the
+     * ones with syntax errors, and the rare ones SLL cannot parse.
+     *
+     * @return the number of grammars parsed with LL.
+     */
+    public static long getLlParses() {
+        return llParses.get();
+    }
+}
@@ -0,0 +1,172 @@
+package nl.bigo.rrdantlr4;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The text of a grammar, read and decoded exactly once. The lexer and the
+ * comment extraction both work on the same characters.
+ *
+ * Local files are memory-mapped and decoded straight from the mapping,
+ * remote files are downloaded, and anything else is taken to be the
+ * grammar itself. All grammars are decoded as UTF-8.
+ */
+public final class GrammarSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // The name of the file the grammar was read from.
+    private final String fileName;
+
+    // The characters of the grammar: the first `length` chars of `data`.
+    private final char[] data;
+    private final int length;
+
+    private GrammarSource(String fileName, CharBuffer text) {
+        this.fileName = fileName;
+        this.data = text.array();
+        this.length = text.remaining();
+    }
+
+    /**
+     * Reads a grammar.
+     *
+     * @param antlr4Grammar
+     *         a local file, a `http://` or `https://` URL, or the grammar itself.
+     *
+     * @return the text of the grammar.
+     *
+     * @throws IOException
+     *         when the grammar could not be read.
+     */
+    public static GrammarSource load(String antlr4Grammar) throws IOException {
+
+        File file = new File(antlr4Grammar);
+        String fileName = fileName(antlr4Grammar);
+
+        // First check if `antlr4Grammar` is a local file.
+        if (file.isFile()) {
+            return new GrammarSource(fileName, map(file));
+        }
+        else if (isUrl(antlr4Grammar)) {
+            return new GrammarSource(fileName, download(new URL(antlr4Grammar)));
+        }
+        else {
+            // We'll assume the the string _is_ the ANTLR 4 grammar...
+            return new GrammarSource(fileName, CharBuffer.wrap(antlr4Grammar.toCharArray()));
+        }
+    }
+
+    /**
+     * Returns the name of the file a grammar is read from, without reading
+     * it: the last path element of a file or URL, or a name derived from
+     * the text of a grammar that is passed as a string. Different texts
+     * get different names, so their outputs do not end up in the same
+     * directory.
+     *
+     * @param antlr4Grammar
+     *         a local file, a `http://` or `https://` URL, or the grammar itself.
+     *
+     * @return the name of the file the grammar is read from.
+     */
+    public static String fileName(String antlr4Grammar) {
+
+        File file = new File(antlr4Grammar);
+
+        if (file.isFile()) {
+            return file.getName();
+        }
+        else if (isUrl(antlr4Grammar)) {
+            return antlr4Grammar.substring(antlr4Grammar.lastIndexOf('/') + 1);
+        }
+        else {
+            return "grammar-" + DiagramCache.key("g4", antlr4Grammar).substring(0, 16);
+        }
+    }
+
+    private static boolean isUrl(String antlr4Grammar) {
+        return antlr4Grammar.startsWith("http://") || antlr4Grammar.startsWith("https://");
+    }
+
+    /**
+     * Returns the name of the file the grammar was read from: the last
+     * path element of a file or URL, or a generated name for a grammar
+     * that was passed as a string, see `fileName(String)`.
+     *
+     * @return the name of the file the grammar was read from.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the text of the grammar, without copying it.
+     *
+     * @return the text of the grammar.
+     */
+    public CharSequence getText() {
+        return CharBuffer.wrap(data, 0, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a new stream over the text of the grammar, for the lexer.
+     * The characters are shared, not copied.
+     *
+     * @return a new stream over the text of the grammar.
+     */
+    public ANTLRInputStream newCharStream() {
+        return new ANTLRInputStream(data, length);
+    }
+
+    private static CharBuffer map(File file) throws IOException {
+
+        FileInputStream input = new FileInputStream(file);
+
+        try {
+            FileChannel channel = input.getChannel();
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static CharBuffer download(URL url) throws IOException {
+
+        InputStream input = url.openConnection().getInputStream();
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+
+            for (int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+                bytes.write(buffer, 0, n);
+            }
+
+            return decode(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    // Decodes the bytes into a buffer that is backed by an array starting
+    // at index 0, as `GrammarSource(String, CharBuffer)` expects.
+    private static CharBuffer decode(ByteBuffer bytes) throws IOException {
+        return UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(bytes);
+    }
+}
@@ -0,0 +1,285 @@
+package nl.bigo.rrdantlr4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a local grammar file, and the local grammars it imports, and,
+ * every time one of them changes, re-parses the grammar and rewrites the
+ * outputs of only those rules that changed. Imported grammars that did
+ * not change are not parsed again, see `GrammarModel`.
+ *
+ * The process stays alive between changes, so the JVM, the renderer and
+ * the html rows of all unchanged rules stay warm: an edit to one rule
+ * re-renders and re-rasterizes one diagram.
+ */
+public final class GrammarWatcher {
+
+    // The time to wait for more changes after a change is seen: editors
+    // often save a file in more than one step.
+    private static final long SETTLE_MILLIS = 50;
+
+    private final File grammar;
+    private final RrdAntlrOptions options;
+
+    // The generator of the last version of the grammar that was parsed.
+    private DiagramGenerator generator;
+
+    // The html rows of the rules of `generator`, reused between updates.
+    private final Map<String, String> rows;
+
+    /**
+     * Creates a watcher of a local grammar file.
+     *
+     * @param generator
+     *         the generator of the current version of the grammar.
+     * @param options
+     *         the options of the outputs to keep up to date.
+     */
+    public GrammarWatcher(DiagramGenerator generator, RrdAntlrOptions options) {
+
+        // The grammar after expanding directories and globs, not the
+        // argument as it was given.
+        File grammar = new File(generator.getGrammar());
+
+        if (!grammar.isFile()) {
+            throw new IllegalArgumentException("only local grammar files can be watched, not: " + grammar);
+        }
+
+        this.grammar = grammar;
+        this.options = options;
+        this.generator = generator;
+        this.rows = new HashMap<String, String>();
+    }
+
+    /**
+     * Creates the html page of the current version of the grammar, and
+     * remembers its rows for the next update.
+     *
+     * @return `true` iff the creation of the html page was successful.
+     */
+    public boolean createHtml() {
+        return generator.createHtml(options.getOutputFileName(), options.wantSimpleHTML, rows, options.wantLazyHTML);
+    }
+
+    /**
+     * Waits for changes to the grammar file and the grammars it imports,
+     * and updates the outputs after every change. Only returns when
+     * interrupted.
+     *
+     * @throws IOException
+     *         when the grammar file cannot be watched.
+     * @throws InterruptedException
+     *         when interrupted while waiting for a change.
+     */
+    public void watch() throws IOException, InterruptedException {
+
+        WatchService service = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new HashSet<Path>();
+
+        try {
+            Set<Path> files = getWatchedFiles();
+            register(service, files, directories);
+
+            System.out.println("watching " + grammar + (files.size() > 1 ? " and " + (files.size() - 1) +
+                    " imported grammar(s)" : "") + " for changes...");
+
+            while (true) {
+
+                boolean changed = isChanged(service.take(), files);
+
+                for (WatchKey key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS); key != null;
+                     key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    changed |= isChanged(key, files);
+                }
+
+                if (changed) {
+                    update();
+
+                    // The grammar may import other grammars now.
+                    files = getWatchedFiles();
+                    register(service, files, directories);
+                }
+            }
+        }
+        finally {
+            service.close();
+        }
+    }
+
+    /**
+     * Returns the files that are watched: the grammar file and the local
+     * grammars it imports, directly or not, as of the last update.
+     *
+     * @return the absolute paths of the watched files.
+     */
+    public Set<Path> getWatchedFiles() {
+
+        Set<Path> files = new LinkedHashSet<Path>();
+        files.add(grammar.toPath().toAbsolutePath().normalize());
+
+        for (String location : generator.getImportedGrammars()) {
+            if (!location.startsWith("http://") && !location.startsWith("https://")) {
+                files.add(new File(location).toPath().toAbsolutePath().normalize());
+            }
+        }
+
+        return files;
+    }
+
+    // Watches the directories of `files` that are not in `directories` yet.
+    private static void register(WatchService service, Set<Path> files, Set<Path> directories) throws IOException {
+        for (Path file : files) {
+            Path directory = file.getParent();
+
+            if (Files.isDirectory(directory) && directories.add(directory)) {
+                // Editors that save by replacing the file create it,
+                // instead of modifying it.
+                directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    /**
+     * Re-parses the grammar and rewrites the outputs of the rules that
+     * changed since the last time it was parsed. A grammar that cannot
+     * be parsed is reported, and leaves all outputs as they are.
+     *
+     * @throws InterruptedException
+     *         when interrupted while creating the PNG images.
+     */
+    public void update() throws InterruptedException {
+
+        long start = System.nanoTime();
+
+        DiagramGenerator next;
+
+        try {
+            next = new DiagramGenerator(grammar.getPath(), options.getRenderer(), options.getRoots());
+        }
+        catch (Exception e) {
+            System.err.println("could not parse " + grammar + ": " + e);
+            return;
+        }
+
+        options.configure(next, generator.getCache());
+        next.setOutputDir(generator.getOutputDir());
+
+        Set<String> changed = changedRules(generator, next);
+        Set<String> removed = new LinkedHashSet<String>(generator.getRuleNames());
+        removed.removeAll(next.getRuleNames());
+
+        boolean renamed = !removed.isEmpty() || !generator.getRuleNames().containsAll(next.getRuleNames());
+
+        if (changed.isEmpty() && !renamed) {
+            this.generator = next;
+            return;
+        }
+
+        if (renamed) {
+            // Other rules may now link to a rule that was added, or no
+            // longer link to one that was removed.
+            rows.clear();
+        }
+        else {
+            rows.keySet().removeAll(changed);
+        }
+
+        if (options.wantPNG) {
+
+            Map<String, Throwable> failures = next.createDiagrams(changed, options.getThreads());
+
+            for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+                System.err.println("could not create png image of rule " + failure.getKey() + ": " + failure.getValue());
+            }
+
+            for (String ruleName : removed) {
+                new File(next.getOutputDir(), ruleName + ".png").delete();
+            }
+        }
+
+        if (options.wantPDF) {
+
+            // The PNG images of all rules are up to date: the raster pdf
+            // embeds them instead of rasterizing every rule again.
+            boolean pdfCreated = options.wantPNG && options.getPdfMode() == PdfMode.RASTER ?
+                    next.createPdf(next.getRules()) : next.createPdf(options.getPdfMode());
+
+            if (!pdfCreated) {
+                System.err.println("creating pdf failed...");
+            }
+        }
+
+        this.generator = next;
+        this.createHtml();
+
+        System.out.printf("updated %d of %d rules in %d ms%n", changed.size() + removed.size(),
+                next.getRuleNames().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Returns the rules of `next` that are new, or of which the diagram
+     * or description differs from the one in `previous`.
+     *
+     * @param previous
+     *         the generator of the previous version of a grammar.
+     * @param next
+     *         the generator of the next version of the same grammar.
+     *
+     * @return the rules of `next` whose outputs need to be rewritten.
+     */
+    public static Set<String> changedRules(DiagramGenerator previous, DiagramGenerator next) {
+
+        Set<String> changed = new LinkedHashSet<String>();
+
+        for (String ruleName : next.getRuleNames()) {
+
+            DiagramNode model = previous.getDiagramModel(ruleName);
+            String comment = previous.getComment(ruleName);
+
+            if (model == null || !model.equals(next.getDiagramModel(ruleName))) {
+                changed.add(ruleName);
+            }
+            else if (comment == null ? next.getComment(ruleName) != null : !comment.equals(next.getComment(ruleName))) {
+                changed.add(ruleName);
+            }
+        }
+
+        return changed;
+    }
+
+    // Consumes the events of a key, and returns `true` if one of them
+    // concerns one of `files`.
+    private static boolean isChanged(WatchKey key, Set<Path> files) {
+
+        Path directory = (Path) key.watchable();
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost: assume the worst.
+                changed = true;
+            }
+            else {
+                changed |= files.contains(directory.resolve((Path) event.context()));
+            }
+        }
+
+        key.reset();
+
+        return changed;
+    }
+}
@@ -3,7 +3,13 @@ package nl.bigo.rrdantlr4;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A class containing a main method used in the packaged JAR file to
@@ -15,7 +21,8 @@ public class Main {
      * The entry point for the command line.
      *
      * @param args
-     *         the command line parameters, expected is one parameter.
+     *         the command line parameters, expected are one or more
+     *         grammar files, directories or globs.
      *
      * @throws Exception
      *         when the grammar is invalid, inaccessible, or if I goofed
@@ -39,23 +46,130 @@ public class Main {
             System.exit(0);
         }
 
-        String fileName = rrdAntlrOptions.getInputFileName();
+        Stats.setEnabled(rrdAntlrOptions.wantStats);
+
+        if (rrdAntlrOptions.getJsContexts() > 0) {
+            ScriptContextPool.setSharedSize(rrdAntlrOptions.getJsContexts());
+        }
+
+        List<String> fileNames = GrammarFiles.expand(rrdAntlrOptions.getInputFileNames());
+
+        DiagramCache cache = null;
+
+        if (rrdAntlrOptions.getCacheDir() != null) {
+            cache = new DiagramCache(new File(rrdAntlrOptions.getCacheDir()), rrdAntlrOptions.getCacheSize() * 1024 * 1024);
+        }
+
+        if (rrdAntlrOptions.isServing()) {
+
+            if (rrdAntlrOptions.wantWatch) {
+                System.err.println("--watch cannot be used with --serve");
+                System.exit(1);
+            }
+
+            List<DiagramGenerator> generators = new ArrayList<DiagramGenerator>();
+
+            for (String fileName : fileNames) {
+                System.out.println("parsing: " + fileName + " ...");
+                DiagramGenerator generator = new DiagramGenerator(fileName, rrdAntlrOptions.getRenderer(),
+                        rrdAntlrOptions.getRoots());
+                rrdAntlrOptions.configure(generator, cache);
+                generators.add(generator);
+            }
+
+            DiagramServer server = new DiagramServer(generators, rrdAntlrOptions.getServeCacheSize() * 1024 * 1024,
+                    rrdAntlrOptions.getThreads());
+
+            int port = server.start(rrdAntlrOptions.getServePort());
+
+            System.out.println("serving " + generators.size() + " grammar(s) at http://localhost:" + port + "/");
+
+            // The server's threads keep running until the process is stopped.
+            return;
+        }
+
+        if (fileNames.size() > 1) {
+
+            if (rrdAntlrOptions.wantWatch) {
+                System.err.println("--watch can only be used with a single grammar file");
+                System.exit(1);
+            }
+
+            System.out.println("processing " + fileNames.size() + " grammars...");
+
+            List<GrammarBatch.Result> results = new GrammarBatch(rrdAntlrOptions, cache).run(fileNames);
+
+            GrammarBatch.printSummary(results, System.out);
+
+            if (cache != null) {
+                System.out.println("cache: " + cache);
+            }
+
+            printStats();
+
+            for (GrammarBatch.Result result : results) {
+                if (result.isFailed()) {
+                    System.exit(1);
+                }
+            }
+
+            return;
+        }
+
+        String fileName = fileNames.get(0);
 
         System.out.println("parsing: " + fileName + " ...");
 
-        DiagramGenerator generator = new DiagramGenerator(fileName);
+        DiagramGenerator generator = new DiagramGenerator(fileName, rrdAntlrOptions.getRenderer(),
+                rrdAntlrOptions.getRoots());
+        rrdAntlrOptions.configure(generator, cache);
+
+        if (!rrdAntlrOptions.getRoots().isEmpty()) {
+            System.out.println("rendering " + generator.getRuleNames().size() + " of " + generator.getRuleGraph().size() +
+                    " rules, reachable from " + rrdAntlrOptions.getRoots());
+        }
+
+        // Validate the watch mode before doing any work.
+        GrammarWatcher watcher = rrdAntlrOptions.wantWatch ? new GrammarWatcher(generator, rrdAntlrOptions) : null;
+
+        boolean failed = false;
+
+        // When both are wanted, the images are embedded in the pdf while
+        // they are being created, instead of being read back afterwards.
+        boolean pdfFromImages = rrdAntlrOptions.wantPNG && rrdAntlrOptions.wantPDF
+                && rrdAntlrOptions.getPdfMode() == PdfMode.RASTER;
 
         if(rrdAntlrOptions.wantPNG) {
             System.out.println("creating png images from all grammar rules...");
 
-            for (String rule : generator.getRules().keySet()) {
-                generator.createDiagram(rule);
+            Map<String, Throwable> failures = Collections.emptyMap();
+
+            if (pdfFromImages) {
+                System.out.println("creating pdf pages for the grammar...");
+
+                try {
+                    failures = generator.createDiagramsAndPdf(generator.getRuleNames(), rrdAntlrOptions.getThreads());
+                    System.out.println("created pdf pages of the grammar...");
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println("creating pdf failed...");
+                }
+            }
+            else {
+                failures = generator.createDiagrams(generator.getRuleNames(), rrdAntlrOptions.getThreads());
             }
+
+            for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+                System.err.println("could not create png image of rule " + failure.getKey() + ": " + failure.getValue());
+            }
+
+            failed = !failures.isEmpty();
         }
 
-        if(rrdAntlrOptions.wantPDF) {
+        if(rrdAntlrOptions.wantPDF && !pdfFromImages) {
             System.out.println("creating pdf pages for the grammar...");
-            boolean pdfCreated = generator.createPdf(generator.getRules());
+            boolean pdfCreated = generator.createPdf(rrdAntlrOptions.getPdfMode());
             if (pdfCreated) {
                 System.out.println("created pdf pages of the grammar...");
             } else {
@@ -65,13 +179,48 @@ public class Main {
 
         System.out.println("creating an html page of the grammar...");
 
-        generator.createHtml(rrdAntlrOptions.getOutputFileName(), rrdAntlrOptions.wantSimpleHTML);
+        if (watcher != null) {
+            watcher.createHtml();
+        }
+        else {
+            generator.createHtml(rrdAntlrOptions.getOutputFileName(), rrdAntlrOptions.wantSimpleHTML, null,
+                    rrdAntlrOptions.wantLazyHTML);
+        }
+
+        if (generator.getCache() != null) {
+            System.out.println("cache: " + generator.getCache());
+        }
+
+        printStats();
 
         System.out.println("finished");
+
+        if (watcher != null) {
+            // Only returns when interrupted.
+            watcher.watch();
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    // The number of slowest rules named by `--stats`.
+    private static final int SLOWEST_RULES = 10;
+
+    private static void printStats() {
+        if (Stats.isEnabled()) {
+            System.out.println();
+            Stats.printSummary(System.out, SLOWEST_RULES);
+            System.out.println();
+            System.out.printf("grammars parsed with SLL: %d, with LL: %d%n", GrammarParser.getSllParses(),
+                    GrammarParser.getLlParses());
+            System.out.println();
+        }
     }
 
     private static void printUsage(CmdLineParser cmdLineParser, PrintStream out) {
-        out.println("usage: java -jar rrd-antlr4-0.1.0.jar [options] GRAMMAR_FILE");
+        out.println("usage: java -jar rrd-antlr4-0.1.0.jar [options] GRAMMAR_FILE...");
         cmdLineParser.printUsage(out);
     }
 }
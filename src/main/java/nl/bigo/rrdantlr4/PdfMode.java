@@ -0,0 +1,20 @@
+package nl.bigo.rrdantlr4;
+
+/**
+ * The ways the railroad diagrams can be put in a pdf.
+ */
+public enum PdfMode {
+
+    /**
+     * Draws the SVG of every rule as vector graphics. Text stays sharp at
+     * any zoom level, and the size of the pdf follows the size of the
+     * diagrams, not their pixel count.
+     */
+    VECTOR,
+
+    /**
+     * Embeds the PNG image of every rule. The images are created for the
+     * pdf when they are not created anyway.
+     */
+    RASTER
+}
@@ -0,0 +1,231 @@
+package nl.bigo.rrdantlr4;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image (8-bit RGBA) one band of rows at a time, so the
+ * image never has to be in memory as a whole: only the band that is
+ * written and a single row are.
+ *
+ * Rows are written with the `Sub` filter, which turns the long straight
+ * lines of a diagram into runs of zeros, and the image is marked as sRGB,
+ * like Batik's `PNGTranscoder` does. Its resolution is stated as well.
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = { (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' };
+
+    // The size of the IDAT chunks the compressed rows are split in.
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream data;
+
+    // A single row: its pixels, and its filtered bytes.
+    private final int[] pixels;
+    private final byte[] row;
+
+    private int rows;
+
+    /**
+     * Writes the header of an image.
+     *
+     * @param out
+     *         the stream to write the image to. It is not closed.
+     * @param width
+     *         the width of the image, in pixels.
+     * @param height
+     *         the height of the image, in pixels.
+     * @param compression
+     *         the compression level, from `0` (none, and fastest) to `9`
+     *         (smallest).
+     * @param dpi
+     *         the resolution of the image, in pixels per inch.
+     *
+     * @throws IOException
+     *         when the header could not be written.
+     */
+    PngEncoder(OutputStream out, int width, int height, int compression, float dpi) throws IOException {
+
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("no such image size: " + width + "x" + height);
+        }
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.deflater = new Deflater(compression);
+        this.data = new DeflaterOutputStream(new ChunkOutputStream("IDAT"), deflater, CHUNK_SIZE);
+        this.pixels = new int[width];
+        this.row = new byte[1 + width * 4];
+        this.rows = 0;
+
+        out.write(SIGNATURE);
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bits per sample
+        header[9] = 6;  // RGBA
+        writeChunk("IHDR", header, header.length);
+
+        // Perceptual rendering intent, and the gamma that goes with sRGB.
+        writeChunk("sRGB", new byte[] { 0 }, 1);
+        byte[] gamma = new byte[4];
+        putInt(gamma, 0, 45455);
+        writeChunk("gAMA", gamma, gamma.length);
+
+        // Pixels per meter, in both directions.
+        byte[] resolution = new byte[9];
+        putInt(resolution, 0, Math.round(dpi / 0.0254f));
+        putInt(resolution, 4, Math.round(dpi / 0.0254f));
+        resolution[8] = 1;
+        writeChunk("pHYs", resolution, resolution.length);
+    }
+
+    /**
+     * Writes the next rows of the image: all rows of a band.
+     *
+     * @param band
+     *         the next rows of the image, as wide as the image.
+     *
+     * @throws IOException
+     *         when the rows could not be written.
+     */
+    void writeRows(BufferedImage band) throws IOException {
+
+        if (band.getWidth() != width) {
+            throw new IllegalArgumentException("band is " + band.getWidth() + " pixels wide, not " + width);
+        }
+
+        if (rows + band.getHeight() > height) {
+            throw new IllegalStateException("the image has only " + height + " rows");
+        }
+
+        for (int y = 0; y < band.getHeight(); y++) {
+
+            band.getRGB(0, y, width, 1, pixels, 0, width);
+
+            // Sub: every byte minus the same byte of the pixel to its left.
+            row[0] = 1;
+            int previous = 0;
+
+            for (int x = 0, i = 1; x < width; x++, i += 4) {
+
+                int pixel = pixels[x];
+
+                row[i] = (byte) ((pixel >> 16) - (previous >> 16));
+                row[i + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+                row[i + 2] = (byte) (pixel - previous);
+                row[i + 3] = (byte) ((pixel >>> 24) - (previous >>> 24));
+
+                previous = pixel;
+            }
+
+            data.write(row);
+        }
+
+        rows += band.getHeight();
+    }
+
+    /**
+     * Writes the end of the image, once all rows are written.
+     *
+     * @throws IOException
+     *         when the end could not be written.
+     */
+    void finish() throws IOException {
+
+        if (rows != height) {
+            throw new IllegalStateException("only " + rows + " of the " + height + " rows are written");
+        }
+
+        try {
+            data.finish();
+            data.flush();
+        }
+        finally {
+            deflater.end();
+        }
+
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    private void writeChunk(String type, byte[] bytes, int length) throws IOException {
+
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        byte[] number = new byte[4];
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(bytes, 0, length);
+
+        putInt(number, 0, length);
+        out.write(number);
+        out.write(typeBytes);
+        out.write(bytes, 0, length);
+        putInt(number, 0, (int) crc.getValue());
+        out.write(number);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    // Collects the compressed rows, and writes them as chunks of at most
+    // `CHUNK_SIZE` bytes.
+    private final class ChunkOutputStream extends OutputStream {
+
+        private final String type;
+        private final byte[] buffer;
+        private int count;
+
+        ChunkOutputStream(String type) {
+            this.type = type;
+            this.buffer = new byte[CHUNK_SIZE];
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+
+                int n = Math.min(length, buffer.length - count);
+
+                System.arraycopy(bytes, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+
+                if (count == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk(type, buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
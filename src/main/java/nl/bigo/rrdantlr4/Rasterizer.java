@@ -0,0 +1,194 @@
+package nl.bigo.rrdantlr4;
+
+import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
+import org.apache.batik.transcoder.SVGAbstractTranscoder;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.Element;
+import org.w3c.dom.svg.SVGDocument;
+
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+/**
+ * Rasterizes SVG diagrams to PNG images. A rasterizer is meant to be
+ * reused for many diagrams, but by a single thread at a time: it keeps
+ * its XML parser and Batik transcoder.
+ *
+ * The SVG of a diagram is parsed into a DOM once, and that DOM is handed
+ * to the transcoder, which does not parse it again. The transcoder only
+ * draws the image: it is encoded by a `PngEncoder`, whose compression
+ * level can be chosen, unlike that of Batik's `PNGTranscoder`.
+ *
+ * A diagram that does not fit in the pixel budget is rasterized in bands
+ * of full width and as many rows as fit, using the area of interest of
+ * the transcoder, and every band is encoded before the next one is
+ * rasterized. The memory taken does not depend on the size of the
+ * diagram, and is about 8 bytes per pixel of the budget: Batik draws on
+ * an image of its own, and then copies it.
+ */
+final class Rasterizer {
+
+    /**
+     * The number of pixels that is rasterized at once by default: 16
+     * million, about 128 MB while a band is rasterized.
+     */
+    static final long DEFAULT_MAX_PIXELS = 16L * 1024 * 1024;
+
+    /**
+     * The default compression level: that of `java.util.zip.Deflater`.
+     */
+    static final int DEFAULT_COMPRESSION = 6;
+
+    /**
+     * The resolution of an image at scale `1`: a pixel per CSS pixel.
+     */
+    static final float DPI = 96;
+
+    // The base URI of the parsed diagrams: they do not refer to anything.
+    private static final String DOCUMENT_URI = "file:/diagram.svg";
+
+    private final SAXSVGDocumentFactory factory;
+    private final BandTranscoder transcoder;
+
+    Rasterizer() {
+        this.factory = new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName());
+        this.transcoder = new BandTranscoder();
+    }
+
+    /**
+     * Returns the number of rows of the bands an image is rasterized in.
+     *
+     * @param width
+     *         the width of the image, in pixels.
+     * @param height
+     *         the height of the image, in pixels.
+     * @param maxPixels
+     *         the number of pixels that may be rasterized at once, or `0`
+     *         for no limit.
+     *
+     * @return the number of rows per band: `height` when the image fits
+     * the budget, and at least `1`.
+     */
+    static int bandHeight(int width, int height, long maxPixels) {
+
+        if (maxPixels <= 0 || width <= 0 || (long) width * height <= maxPixels) {
+            return height;
+        }
+
+        return (int) Math.max(1, Math.min(height, maxPixels / width));
+    }
+
+    /**
+     * Rasterizes a SVG diagram to a PNG image.
+     *
+     * @param svg
+     *         the SVG document of the diagram, with its size in the
+     *         `width` and `height` attributes of the `<svg>` element.
+     * @param scale
+     *         the number of pixels per pixel of the diagram. The image
+     *         states a resolution of `DPI * scale`, so it is printed at the
+     *         same size at every scale.
+     * @param maxPixels
+     *         the number of pixels that may be rasterized at once, or `0`
+     *         for no limit.
+     * @param compression
+     *         the compression level of the image, from `0` (none, and
+     *         fastest) to `9` (smallest).
+     * @param out
+     *         the stream to write the image to. It is not closed.
+     *
+     * @throws TranscoderException
+     *         when the diagram could not be rasterized.
+     * @throws IOException
+     *         when the SVG could not be parsed, or the image could not be
+     *         written.
+     */
+    void rasterize(String svg, float scale, long maxPixels, int compression, OutputStream out)
+            throws TranscoderException, IOException {
+
+        SVGDocument document = factory.createSVGDocument(DOCUMENT_URI, new StringReader(svg));
+        Element root = document.getDocumentElement();
+
+        float documentWidth = length(root.getAttribute("width"));
+        float documentHeight = length(root.getAttribute("height"));
+
+        if (documentWidth <= 0 || documentHeight <= 0) {
+            throw new TranscoderException("the diagram has no size: " + root.getAttribute("width") + "x" +
+                    root.getAttribute("height"));
+        }
+
+        // The image size Batik rounds the size of the diagram to.
+        int width = (int) (documentWidth * scale + 0.5);
+        int height = (int) (documentHeight * scale + 0.5);
+        int bandHeight = bandHeight(width, height, maxPixels);
+
+        TranscoderInput input = new TranscoderInput(document);
+        input.setURI(DOCUMENT_URI);
+
+        PngEncoder png = new PngEncoder(out, width, height, compression, DPI * scale);
+
+        try {
+            transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_WIDTH, documentWidth * scale);
+
+            for (int y = 0; y < height; y += bandHeight) {
+
+                int rows = Math.min(bandHeight, height - y);
+
+                if (rows == height) {
+                    transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_HEIGHT, documentHeight * scale);
+                    transcoder.removeTranscodingHint(SVGAbstractTranscoder.KEY_AOI);
+                }
+                else {
+                    transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_HEIGHT, (float) rows);
+                    transcoder.addTranscodingHint(SVGAbstractTranscoder.KEY_AOI,
+                            new Rectangle2D.Float(0, y / scale, documentWidth, rows / scale));
+                }
+
+                transcoder.transcode(input, new TranscoderOutput());
+
+                png.writeRows(transcoder.band);
+
+                // Let the band go before the next one is rasterized.
+                transcoder.band = null;
+            }
+
+            png.finish();
+        }
+        finally {
+            transcoder.band = null;
+        }
+    }
+
+    // A length of the SVG in pixels, or `0` when it is not a number.
+    private static float length(String length) {
+        try {
+            return Float.parseFloat(length);
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Keeps the image it rasterized, instead of encoding it.
+    private static final class BandTranscoder extends ImageTranscoder {
+
+        private BufferedImage band;
+
+        @Override
+        public BufferedImage createImage(int width, int height) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @Override
+        public void writeImage(BufferedImage image, TranscoderOutput output) {
+            this.band = image;
+        }
+    }
+}
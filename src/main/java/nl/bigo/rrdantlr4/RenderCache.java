@@ -0,0 +1,180 @@
+package nl.bigo.rrdantlr4;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache of rendered diagrams that holds at most a given
+ * number of bytes, evicting the least recently used diagrams first.
+ *
+ * Concurrent requests for the same diagram that is not in the cache are
+ * coalesced: the first one renders it, the others wait for that render
+ * instead of rendering it again.
+ */
+final class RenderCache {
+
+    private final long maxBytes;
+
+    // The cached diagrams, least recently used first. Guarded by `this`.
+    private final LinkedHashMap<String, byte[]> entries;
+    private long size;
+
+    // The renders that are running, by key.
+    private final ConcurrentMap<String, FutureTask<byte[]>> renders;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private final AtomicLong coalesced;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxBytes
+     *         the number of bytes the cached diagrams may take at most.
+     */
+    RenderCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+        this.size = 0;
+        this.renders = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.coalesced = new AtomicLong();
+    }
+
+    /**
+     * Returns a cached diagram, rendering (and caching) it when it is not
+     * in the cache. A failed render is not cached: the next request will
+     * try again.
+     *
+     * @param key
+     *         the key of the diagram.
+     * @param render
+     *         renders the diagram.
+     *
+     * @return the diagram.
+     *
+     * @throws Exception
+     *         when the diagram could not be rendered.
+     */
+    byte[] get(final String key, final Callable<byte[]> render) throws Exception {
+
+        byte[] cached = peek(key);
+
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                // Another render of the diagram may have finished since it
+                // was looked up.
+                byte[] cached = peek(key);
+                return cached != null ? cached : render.call();
+            }
+        });
+        FutureTask<byte[]> running = renders.putIfAbsent(key, task);
+
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+
+        try {
+            task.run();
+            byte[] value = await(task);
+            put(key, value);
+            return value;
+        }
+        finally {
+            // Only after the diagram is cached: a request that comes in
+            // between finds either the render or the cached diagram.
+            renders.remove(key, task);
+        }
+    }
+
+    private synchronized byte[] peek(String key) {
+        return entries.get(key);
+    }
+
+    private static byte[] await(FutureTask<byte[]> task) throws Exception {
+        try {
+            return task.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void put(String key, byte[] value) {
+
+        if (value.length > maxBytes) {
+            return;
+        }
+
+        byte[] previous = entries.put(key, value);
+        size += value.length - (previous == null ? 0 : previous.length);
+
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            size -= eldest.getValue().length;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    // The number of requests that waited for the render of another request.
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    // The number of renders that are running.
+    int getRendering() {
+        return renders.size();
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized int getCount() {
+        return entries.size();
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+}
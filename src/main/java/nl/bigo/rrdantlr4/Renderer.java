@@ -0,0 +1,331 @@
+package nl.bigo.rrdantlr4;
+
+import nl.bigo.rrdantlr4.railroad.Linker;
+import nl.bigo.rrdantlr4.railroad.Railroad;
+import nl.bigo.rrdantlr4.railroad.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The ways the diagram model produced by `RuleVisitor` can be
+ * translated into a SVG railroad diagram.
+ */
+public enum Renderer {
+
+    /**
+     * Lays out and emits the SVG with `nl.bigo.rrdantlr4.railroad`, a
+     * Java port of `railroad-diagram.js`. No script engine is involved.
+     * Links are written together with the terminals and non-terminals.
+     *
+     * Identical parts of diagrams are laid out once per `Layouts`, and
+     * can be written once for all diagrams of a page, see
+     * `newSymbolTable(...)`.
+     */
+    JAVA {
+        @Override
+        String render(DiagramNode model, Linker linker, String styleSheet, boolean minified) {
+            return render(model, linker, styleSheet, minified, new Layouts(), null);
+        }
+
+        @Override
+        String render(DiagramNode model, Linker linker, String styleSheet, boolean minified, Layouts layouts,
+                      SymbolTable symbols) {
+            return layouts.layout(model).toSvg(linker, styleSheet, minified, symbols);
+        }
+
+        @Override
+        SymbolTable newSymbolTable(String prefix, Iterable<DiagramNode> models, Layouts layouts) {
+
+            SymbolTable symbols = new SymbolTable(prefix);
+
+            for (DiagramNode model : models) {
+                symbols.add(layouts.layout(model));
+            }
+
+            return symbols;
+        }
+    },
+
+    /**
+     * Serializes the diagram model to its DSL and evaluates that with
+     * `railroad-diagram.js` on a context of the shared
+     * `ScriptContextPool`. The script knows nothing about links, so
+     * they are inserted in a single pass over the resulting SVG, as are
+     * the namespaces and style sheet.
+     *
+     * Minifying only leaves out the new lines: the numbers and path data
+     * are the ones the script wrote.
+     */
+    JAVASCRIPT {
+        @Override
+        String render(DiagramNode model, Linker linker, String styleSheet, boolean minified) {
+
+            String svg = ScriptContextPool.shared().render(model.toDiagramDsl());
+
+            svg = document(svg, styleSheet, minified);
+
+            return linker == Linker.NONE ? svg : link(svg, linker);
+        }
+    };
+
+    /**
+     * Translates the diagram model of a single grammar rule into a SVG
+     * railroad diagram, with the SVG and XLink namespaces declared.
+     *
+     * @param model
+     *         the diagram model of a grammar rule, as created by `RuleVisitor`.
+     * @param linker
+     *         decides which terminals and non-terminals are links.
+     * @param styleSheet
+     *         the CSS put in the diagram, or `null` when the diagram is
+     *         styled by the page it is embedded in.
+     * @param minified
+     *         `true` to write the diagram as small as possible.
+     *
+     * @return the SVG railroad diagram.
+     */
+    abstract String render(DiagramNode model, Linker linker, String styleSheet, boolean minified);
+
+    /**
+     * Translates the diagram model of a grammar rule into a SVG railroad
+     * diagram that uses the symbols of a page for the parts it shares
+     * with the other diagrams of that page. Renderers that cannot use
+     * symbols write the complete diagram.
+     *
+     * @param model
+     *         the diagram model of a grammar rule, as created by `RuleVisitor`.
+     * @param linker
+     *         decides which terminals and non-terminals are links.
+     * @param styleSheet
+     *         the CSS put in the diagram, or `null` when the diagram is
+     *         styled by the page it is embedded in.
+     * @param minified
+     *         `true` to write the diagram as small as possible.
+     * @param layouts
+     *         the parts laid out before, shared with the other diagrams
+     *         of the same grammar.
+     * @param symbols
+     *         the symbols of the page, as created by `newSymbolTable(...)`
+     *         with the same `layouts`, or `null`.
+     *
+     * @return the SVG railroad diagram.
+     */
+    String render(DiagramNode model, Linker linker, String styleSheet, boolean minified, Layouts layouts,
+                  SymbolTable symbols) {
+        return render(model, linker, styleSheet, minified);
+    }
+
+    /**
+     * Creates the symbol table of a page of diagrams: the parts of the
+     * diagrams that occur more than once.
+     *
+     * @param prefix
+     *         the prefix of the ids of the symbols in the page.
+     * @param models
+     *         the diagram models of all rules on the page.
+     * @param layouts
+     *         the parts laid out before, shared with the diagrams that
+     *         are written with the table.
+     *
+     * @return the symbol table of the page, or `null` when this renderer
+     * cannot use symbols.
+     */
+    SymbolTable newSymbolTable(String prefix, Iterable<DiagramNode> models, Layouts layouts) {
+        return null;
+    }
+
+    /**
+     * The laid out items of the Java port, by diagram model. Models are
+     * compared by their structure, so a part that occurs in many rules is
+     * laid out once, and all diagrams containing it share the same
+     * (immutable) item.
+     *
+     * A `DiagramGenerator` has one for the rules of its grammar, so it
+     * is bounded by the size of that grammar. It can be used by many
+     * threads at the same time, without a lock when a part was laid out
+     * before.
+     */
+    static final class Layouts {
+
+        private final ConcurrentMap<DiagramNode, Railroad.Item> items =
+                new ConcurrentHashMap<DiagramNode, Railroad.Item>();
+
+        // Lays out the diagram of a rule.
+        Railroad.Diagram layout(DiagramNode model) {
+            return Railroad.diagram(item(model));
+        }
+
+        // The shared item of a model, laid out when it is seen first. When
+        // two threads lay out the same model at once, both use the item
+        // of the thread that was first to store it.
+        private Railroad.Item item(DiagramNode model) {
+
+            Railroad.Item item = items.get(model);
+
+            if (item != null) {
+                return item;
+            }
+
+            item = model.accept(toItem);
+
+            Railroad.Item previous = items.putIfAbsent(model, item);
+
+            return previous == null ? item : previous;
+        }
+
+        // Translates the diagram model into the items of the Java port of
+        // the railroad library, the same way `railroad-diagram.js` would
+        // evaluate the DSL of the model.
+        private final DiagramNode.Visitor<Railroad.Item> toItem = new DiagramNode.Visitor<Railroad.Item>() {
+
+            private List<Railroad.Item> items(List<DiagramNode> nodes) {
+
+                List<Railroad.Item> items = new ArrayList<Railroad.Item>(nodes.size());
+
+                for (DiagramNode node : nodes) {
+                    items.add(item(node));
+                }
+
+                return items;
+            }
+
+            @Override
+            public Railroad.Item visitSequence(DiagramNode.Sequence sequence) {
+                return Railroad.sequence(items(sequence.getItems()));
+            }
+
+            @Override
+            public Railroad.Item visitChoice(DiagramNode.Choice choice) {
+                return Railroad.choice(0, items(choice.getAlternatives()));
+            }
+
+            @Override
+            public Railroad.Item visitRepetition(DiagramNode.Repetition repetition) {
+
+                Railroad.Item item = item(repetition.getItem());
+
+                switch (repetition.getKind()) {
+                    case OPTIONAL:
+                        return Railroad.optional(item);
+                    case ZERO_OR_MORE:
+                        return Railroad.zeroOrMore(item);
+                    default:
+                        return Railroad.oneOrMore(item);
+                }
+            }
+
+            @Override
+            public Railroad.Item visitTerminal(DiagramNode.Terminal terminal) {
+                return Railroad.terminal(terminal.getText());
+            }
+
+            @Override
+            public Railroad.Item visitNonTerminal(DiagramNode.NonTerminal nonTerminal) {
+                return Railroad.nonTerminal(nonTerminal.getText());
+            }
+
+            @Override
+            public Railroad.Item visitComment(DiagramNode.Comment comment) {
+                return Railroad.comment(comment.getText());
+            }
+        };
+    }
+
+    // Turns a SVG created by `railroad-diagram.js` into the document the
+    // `JAVA` renderer writes: the namespaces are added to the `<svg>`
+    // element and the style sheet is put right after it. The SVG is
+    // copied once, leaving out all new lines when minifying: the script
+    // escapes the new lines in texts, so all of them are formatting.
+    private static String document(String svg, String styleSheet, boolean minified) {
+
+        int start = svg.indexOf("<svg ");
+        int end = start < 0 ? -1 : svg.indexOf('>', start);
+
+        if (end < 0) {
+            throw new IllegalArgumentException("no <svg> element in: " + svg);
+        }
+
+        StringBuilder builder = new StringBuilder(svg.length() + 128 + (styleSheet == null ? 0 : styleSheet.length()));
+
+        builder.append(svg, 0, start)
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" ")
+                .append(svg, start + "<svg ".length(), end + 1);
+
+        int rest = end + 1;
+
+        if (!minified && rest < svg.length() && svg.charAt(rest) == '\n') {
+            builder.append('\n');
+            rest++;
+        }
+
+        if (styleSheet != null) {
+            builder.append("<style type=\"text/css\">").append(styleSheet).append("</style>");
+            if (!minified) {
+                builder.append('\n');
+            }
+        }
+
+        if (!minified) {
+            return builder.append(svg, rest, svg.length()).toString();
+        }
+
+        for (int i = rest; i < svg.length(); i++) {
+            if (svg.charAt(i) != '\n') {
+                builder.append(svg.charAt(i));
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Wraps the `<text>` elements of the terminals and non-terminals in a
+     * SVG in the same `<a xlink:href="...">` elements the `JAVA` renderer
+     * writes. The SVG is scanned once, from left to right.
+     *
+     * @param svg
+     *         a SVG created by `railroad-diagram.js`.
+     * @param linker
+     *         decides which terminals and non-terminals are links.
+     *
+     * @return the SVG with links.
+     */
+    static String link(String svg, Linker linker) {
+
+        StringBuilder builder = new StringBuilder(svg.length() + 256);
+        String target = linker.target() == null ? "" : "\" target=\"" + linker.target();
+        int done = 0;
+
+        for (int start = svg.indexOf("<text ", done); start >= 0; start = svg.indexOf("<text ", done)) {
+
+            int open = svg.indexOf('>', start);
+            int close = open < 0 ? -1 : svg.indexOf("</text>", open);
+
+            if (close < 0) {
+                break;
+            }
+
+            int end = close + "</text>".length();
+
+            // Comments are text elements too, but never links.
+            boolean comment = svg.lastIndexOf("class=\"comment\"", open) > start;
+            String href = comment ? null : linker.href(svg.substring(open + 1, close).trim());
+
+            builder.append(svg, done, start);
+
+            if (href == null) {
+                builder.append(svg, start, end);
+            }
+            else {
+                builder.append("<a xlink:href=\"").append(href).append(target).append("\">").append(svg, start, end).append("</a>");
+            }
+
+            done = end;
+        }
+
+        return builder.append(svg, done, svg.length()).toString();
+    }
+}
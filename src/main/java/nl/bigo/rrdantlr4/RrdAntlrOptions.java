@@ -3,41 +3,180 @@ package nl.bigo.rrdantlr4;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Declares the command line options accepted by the main application.
  */
 public class RrdAntlrOptions {
-    @Argument(required = true, metaVar = "GRAMMAR_FILE", usage = "An ANTLR4 grammar file to process")
-    private String inputFileName;
+    @Argument(required = true, multiValued = true, metaVar = "GRAMMAR_FILE", usage = "ANTLR4 grammar files, directories or globs to process")
+    private List<String> inputFileNames = new ArrayList<String>();
 
     @Option(name="--out", metaVar = "HTML_FILE", usage = "The HTML file where the resulting diagrams are generated." +
             "\nDefault is index.html")
     private String outputFileName = "index.html";
 
+    @Option(name="--root", metaVar = "RULE", usage = "Only generate the diagrams of RULE and of the rules it refers to, directly or not. Can be given more than once." +
+            "\nDefault is all rules")
+    private List<String> roots = new ArrayList<String>();
+
     @Option(name="--simple", help = false, usage = "Generate simple HTML output, suitable for embedding in existing page.")
     public boolean wantSimpleHTML;
 
+    @Option(name="--lazy", help = false, usage = "Write the diagram of every rule to an SVG file of its own, and only load it once it scrolls into view in the HTML page.")
+    public boolean wantLazyHTML;
+
+    @Option(name="--minify-svg", help = false, usage = "Write the SVG diagrams as small as possible: without new lines, with rounded numbers and shortened paths.")
+    public boolean wantMinifiedSVG;
+
+    @Option(name="--share-symbols", help = false, usage = "Write the parts that occur in more than one diagram to the HTML page once, and refer to them from the diagrams. The diagrams of the page are then not taken from the --cache.")
+    public boolean wantSharedSymbols;
+
 
     @Option(name="--pdf", help = false, usage = "Generate PDF output.")
     public boolean wantPDF;
 
+    @Option(name="--pdf-mode", metaVar = "MODE", usage = "How diagrams are put in the PDF: VECTOR, or RASTER to embed PNG images of them." +
+            "\nDefault is VECTOR")
+    private PdfMode pdfMode = PdfMode.VECTOR;
+
     @Option(name="--png", help = false, usage = "Generate PNG images.")
     public boolean wantPNG;
 
+    @Option(name="--max-pixels", metaVar = "COUNT", usage = "The number of pixels a PNG image is rasterized in at once. Larger images are rasterized in bands, so the memory taken stays bounded. 0 means no limit." +
+            "\nDefault is 16777216")
+    private long maxPixels = Rasterizer.DEFAULT_MAX_PIXELS;
+
+    @Option(name="--png-scale", metaVar = "FACTOR", usage = "The number of pixels per pixel of a diagram in the PNG images: 2 doubles their width, height and stated resolution." +
+            "\nDefault is 1")
+    private float pngScale = 1;
+
+    @Option(name="--png-compression", metaVar = "LEVEL", usage = "The compression level of the PNG images, from 0 (none, and fastest) to 9 (smallest)." +
+            "\nDefault is 6")
+    private int pngCompression = Rasterizer.DEFAULT_COMPRESSION;
+
+    @Option(name="--watch", help = false, usage = "Keep running, and update the outputs of the changed rules every time the grammar file changes.")
+    public boolean wantWatch;
+
+    @Option(name="--stats", help = false, usage = "Print how much time and memory every phase took, and name the slowest rules.")
+    public boolean wantStats;
+
+    @Option(name="--serve", metaVar = "PORT", usage = "Serve the diagrams over HTTP on PORT, rendering them on demand, instead of writing files.")
+    private int servePort = -1;
+
+    @Option(name="--serve-cache-size", metaVar = "MB", usage = "The maximum size of the in-memory cache of the served diagrams, in megabytes." +
+            "\nDefault is 64")
+    private long serveCacheSize = 64;
+
+    @Option(name="--threads", metaVar = "COUNT", usage = "The number of threads used to process grammars and to create the PNG images." +
+            "\nDefault is the number of processors")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name="--cache", metaVar = "DIR", usage = "A directory in which rendered diagrams are cached between runs." +
+            "\nDefault is no cache")
+    private String cacheDir = null;
+
+    @Option(name="--cache-size", metaVar = "MB", usage = "The maximum size of the cache, in megabytes." +
+            "\nDefault is 256")
+    private long cacheSize = 256;
+
+    @Option(name="--renderer", metaVar = "RENDERER", usage = "The renderer used to create the SVG diagrams: JAVA or JAVASCRIPT." +
+            "\nDefault is JAVA")
+    private Renderer renderer = Renderer.JAVA;
+
+    @Option(name="--js-contexts", metaVar = "COUNT", usage = "The number of JavaScript contexts the JAVASCRIPT renderer uses at most." +
+            "\nDefault is the number of processors")
+    private int jsContexts = 0;
 
 
     @Option(name="--help", aliases = {"-?","-h"}, help = true, usage = "Show the command line usage and exit")
     private boolean requestingHelp;
 
     public String getInputFileName() {
-        return inputFileName;
+        return inputFileNames.get(0);
+    }
+
+    public List<String> getInputFileNames() {
+        return inputFileNames;
     }
 
     public String getOutputFileName() {
         return outputFileName;
     }
 
+    public List<String> getRoots() {
+        return roots;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    public boolean isServing() {
+        return servePort >= 0;
+    }
+
+    public int getServePort() {
+        return servePort;
+    }
+
+    public long getServeCacheSize() {
+        return serveCacheSize;
+    }
+
+    public PdfMode getPdfMode() {
+        return pdfMode;
+    }
+
+    public long getMaxPixels() {
+        return maxPixels;
+    }
+
+    public float getPngScale() {
+        return pngScale;
+    }
+
+    public int getPngCompression() {
+        return pngCompression;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public int getJsContexts() {
+        return jsContexts;
+    }
+
     public boolean isRequestingHelp() {
         return requestingHelp;
     }
+
+    /**
+     * Applies the options about how diagrams are written to a generator:
+     * every part of the tool that creates a generator calls this, so they
+     * all write the same diagrams.
+     *
+     * @param generator
+     *         the generator to configure.
+     * @param cache
+     *         the cache of rendered diagrams, or `null` to always render.
+     */
+    public void configure(DiagramGenerator generator, DiagramCache cache) {
+        generator.setCache(cache);
+        generator.setMinifiedSVG(wantMinifiedSVG);
+        generator.setSharedSymbols(wantSharedSymbols);
+        generator.setMaxPixels(maxPixels);
+        generator.setPngScale(pngScale);
+        generator.setPngCompression(pngCompression);
+    }
 }
@@ -0,0 +1,373 @@
+package nl.bigo.rrdantlr4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which rules of a grammar refer to which. A rule refers to every rule
+ * whose name is a terminal or non-terminal of its diagram: the ones the
+ * html page links to.
+ *
+ * Rules are numbered in grammar order, from `0`. The references of all
+ * rules are kept in a single array, in both directions, so the rules a
+ * rule refers to, and the rules that refer to it, are a slice of an array.
+ */
+public final class RuleGraph {
+
+    // The rule names, by id.
+    private final String[] names;
+
+    // The rule ids, by name.
+    private final Map<String, Integer> ids;
+
+    // The ids of the rules that rule `i` refers to are `references[j]` for
+    // `referenceOffsets[i] <= j < referenceOffsets[i + 1]`, in ascending
+    // order. The same holds for the rules that refer to rule `i`, in
+    // `users`.
+    private final int[] referenceOffsets;
+    private final int[] references;
+    private final int[] userOffsets;
+    private final int[] users;
+
+    private RuleGraph(String[] names, Map<String, Integer> ids, int[] referenceOffsets, int[] references) {
+
+        this.names = names;
+        this.ids = ids;
+        this.referenceOffsets = referenceOffsets;
+        this.references = references;
+
+        // Invert the references: count the users of every rule, and then
+        // fill in their slices, which come out in ascending order.
+        this.userOffsets = new int[names.length + 1];
+        this.users = new int[references.length];
+
+        for (int reference : references) {
+            userOffsets[reference + 1]++;
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            userOffsets[i + 1] += userOffsets[i];
+        }
+
+        int[] next = Arrays.copyOf(userOffsets, names.length);
+
+        for (int user = 0; user < names.length; user++) {
+            for (int j = referenceOffsets[user]; j < referenceOffsets[user + 1]; j++) {
+                users[next[references[j]]++] = user;
+            }
+        }
+    }
+
+    /**
+     * Creates the graph of the rules of a grammar.
+     *
+     * @param rules
+     *         the rules of a grammar, in grammar order, mapped to their
+     *         diagram model.
+     *
+     * @return the graph of the rules.
+     */
+    public static RuleGraph of(Map<String, DiagramNode> rules) {
+
+        String[] names = rules.keySet().toArray(new String[rules.size()]);
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+
+        int[] offsets = new int[names.length + 1];
+        int[] references = new int[16];
+        int count = 0;
+
+        BitSet referred = new BitSet(names.length);
+        ReferenceCollector collector = new ReferenceCollector(ids, referred);
+
+        for (int i = 0; i < names.length; i++) {
+
+            referred.clear();
+            rules.get(names[i]).accept(collector);
+
+            for (int id = referred.nextSetBit(0); id >= 0; id = referred.nextSetBit(id + 1)) {
+
+                if (count == references.length) {
+                    references = Arrays.copyOf(references, count * 2);
+                }
+
+                references[count++] = id;
+            }
+
+            offsets[i + 1] = count;
+        }
+
+        return new RuleGraph(names, ids, offsets, Arrays.copyOf(references, count));
+    }
+
+    // Collects the ids of the rules a diagram refers to.
+    private static final class ReferenceCollector implements DiagramNode.Visitor<Void> {
+
+        private final Map<String, Integer> ids;
+        private final BitSet referred;
+
+        ReferenceCollector(Map<String, Integer> ids, BitSet referred) {
+            this.ids = ids;
+            this.referred = referred;
+        }
+
+        private Void visitAll(List<DiagramNode> nodes) {
+            for (DiagramNode node : nodes) {
+                node.accept(this);
+            }
+            return null;
+        }
+
+        private Void refer(String text) {
+            Integer id = ids.get(text);
+            if (id != null) {
+                referred.set(id);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitSequence(DiagramNode.Sequence sequence) {
+            return visitAll(sequence.getItems());
+        }
+
+        @Override
+        public Void visitChoice(DiagramNode.Choice choice) {
+            return visitAll(choice.getAlternatives());
+        }
+
+        @Override
+        public Void visitRepetition(DiagramNode.Repetition repetition) {
+            return repetition.getItem().accept(this);
+        }
+
+        @Override
+        public Void visitTerminal(DiagramNode.Terminal terminal) {
+            return refer(terminal.getText());
+        }
+
+        @Override
+        public Void visitNonTerminal(DiagramNode.NonTerminal nonTerminal) {
+            return refer(nonTerminal.getText());
+        }
+
+        @Override
+        public Void visitComment(DiagramNode.Comment comment) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of rules.
+     *
+     * @return the number of rules.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the id of a rule.
+     *
+     * @param ruleName
+     *         the name of the rule.
+     *
+     * @return the id of the rule, or `-1` if there is no such rule.
+     */
+    public int getId(String ruleName) {
+        Integer id = ids.get(ruleName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the name of a rule.
+     *
+     * @param id
+     *         the id of the rule.
+     *
+     * @return the name of the rule.
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the ids of the rules a rule refers to.
+     *
+     * @param id
+     *         the id of the rule.
+     *
+     * @return the ids of the rules it refers to, in ascending order.
+     */
+    public int[] getReferences(int id) {
+        return Arrays.copyOfRange(references, referenceOffsets[id], referenceOffsets[id + 1]);
+    }
+
+    /**
+     * Returns the ids of the rules that refer to a rule.
+     *
+     * @param id
+     *         the id of the rule.
+     *
+     * @return the ids of the rules that refer to it, in ascending order.
+     */
+    public int[] getUsedBy(int id) {
+        return Arrays.copyOfRange(users, userOffsets[id], userOffsets[id + 1]);
+    }
+
+    /**
+     * Returns the rules a rule refers to.
+     *
+     * @param ruleName
+     *         the name of the rule.
+     *
+     * @return the rules it refers to, in grammar order.
+     */
+    public List<String> getReferences(String ruleName) {
+        return names(references, referenceOffsets, id(ruleName));
+    }
+
+    /**
+     * Returns the rules that refer to a rule.
+     *
+     * @param ruleName
+     *         the name of the rule.
+     *
+     * @return the rules that refer to it, in grammar order.
+     */
+    public List<String> getUsedBy(String ruleName) {
+        return names(users, userOffsets, id(ruleName));
+    }
+
+    private List<String> names(int[] targets, int[] offsets, int id) {
+
+        List<String> names = new ArrayList<String>(offsets[id + 1] - offsets[id]);
+
+        for (int j = offsets[id]; j < offsets[id + 1]; j++) {
+            names.add(this.names[targets[j]]);
+        }
+
+        return names;
+    }
+
+    private int id(String ruleName) {
+
+        Integer id = ids.get(ruleName);
+
+        if (id == null) {
+            throw new IllegalArgumentException("no such rule: " + ruleName);
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the ids of the rules that can be reached from the provided
+     * rules, including those rules themselves.
+     *
+     * @param roots
+     *         the ids of the rules to start from.
+     *
+     * @return the ids of the reachable rules.
+     */
+    public BitSet getReachable(int... roots) {
+
+        BitSet reachable = new BitSet(names.length);
+
+        // Every rule is pushed at most once.
+        int[] stack = new int[names.length];
+        int size = 0;
+
+        for (int root : roots) {
+            if (!reachable.get(root)) {
+                reachable.set(root);
+                stack[size++] = root;
+            }
+        }
+
+        while (size > 0) {
+
+            int id = stack[--size];
+
+            for (int j = referenceOffsets[id]; j < referenceOffsets[id + 1]; j++) {
+                if (!reachable.get(references[j])) {
+                    reachable.set(references[j]);
+                    stack[size++] = references[j];
+                }
+            }
+        }
+
+        return reachable;
+    }
+
+    /**
+     * Returns the rules that can be reached from the provided rules,
+     * including those rules themselves.
+     *
+     * @param roots
+     *         the rules to start from, like the start rule of a grammar.
+     *
+     * @return the reachable rules, in grammar order.
+     *
+     * @throws IllegalArgumentException
+     *         when one of the roots is not a rule.
+     */
+    public Set<String> getReachable(Collection<String> roots) {
+
+        BitSet reachable = getReachable(ids(roots));
+        Set<String> names = new LinkedHashSet<String>();
+
+        for (int id = reachable.nextSetBit(0); id >= 0; id = reachable.nextSetBit(id + 1)) {
+            names.add(this.names[id]);
+        }
+
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Returns the rules that cannot be reached from the provided rules:
+     * the ones that are dead when parsing starts at one of them.
+     *
+     * @param roots
+     *         the rules to start from, like the start rule of a grammar.
+     *
+     * @return the unreachable rules, in grammar order.
+     *
+     * @throws IllegalArgumentException
+     *         when one of the roots is not a rule.
+     */
+    public List<String> getUnreachable(Collection<String> roots) {
+
+        BitSet reachable = getReachable(ids(roots));
+        List<String> names = new ArrayList<String>();
+
+        for (int id = reachable.nextClearBit(0); id < this.names.length; id = reachable.nextClearBit(id + 1)) {
+            names.add(this.names[id]);
+        }
+
+        return names;
+    }
+
+    private int[] ids(Collection<String> ruleNames) {
+
+        int[] ids = new int[ruleNames.size()];
+        int i = 0;
+
+        for (String ruleName : ruleNames) {
+            ids[i++] = id(ruleName);
+        }
+
+        return ids;
+    }
+}
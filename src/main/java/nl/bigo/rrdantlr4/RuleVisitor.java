@@ -1,5 +1,6 @@
 package nl.bigo.rrdantlr4;
 
+import nl.bigo.rrdantlr4.railroad.DslParser;
 import org.antlr.v4.runtime.misc.NotNull;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
@@ -9,20 +10,24 @@ import static nl.bigo.rrdantlr4.ANTLRv4Parser.*;
 
 /**
  * A visitor used to collect all rules from an ANTLR 4 grammar and
- * translate the parse tree into a DSL that the JavaScript library
- * uses to create the SVG for each grammar rule.
+ * translate the parse tree into a tree of `DiagramNode`s from which
+ * the SVG for each grammar rule is created. The DSL that the
+ * JavaScript library [1] uses is a serialization of those trees.
  *
  * [1] https://github.com/tabatkins/railroad-diagrams
  */
-public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
+public class RuleVisitor extends ANTLRv4ParserBaseVisitor<DiagramNode> {
 
     // A linked hash-map will guarantee the order of the grammar rules
     // to be the same as they occur inside the grammar.
     //
     // The collection maps all grammar rules from the ANTLR 4 grammar to
-    // a DSL that the JavaScript library, `railroad-diagram.js`, uses to
-    // translate to SVG-railroad diagrams.
-    private final LinkedHashMap<String, String> rules;
+    // the diagram model of their right hand side.
+    private final LinkedHashMap<String, DiagramNode> rules;
+
+    // The names of the grammars imported by the grammar, in the order in
+    // which they are imported.
+    private final List<String> imports;
 
     /**
      * Creates a new instance of this visitor. Note that many of the
@@ -30,7 +35,8 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
      * and parser-rules (and their contents).
      */
     public RuleVisitor() {
-        this.rules = new LinkedHashMap<String, String>();
+        this.rules = new LinkedHashMap<String, DiagramNode>();
+        this.imports = new ArrayList<String>();
     }
 
     //    grammarSpec
@@ -42,7 +48,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       EOF
     //     ;
     @Override
-    public String visitGrammarSpec(@NotNull GrammarSpecContext ctx) {
+    public DiagramNode visitGrammarSpec(@NotNull GrammarSpecContext ctx) {
         return super.visitGrammarSpec(ctx);
     }
 
@@ -53,7 +59,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       )
     //     ;
     @Override
-    public String visitGrammarType(@NotNull GrammarTypeContext ctx) {
+    public DiagramNode visitGrammarType(@NotNull GrammarTypeContext ctx) {
         return super.visitGrammarType(ctx);
     }
 
@@ -64,7 +70,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | action
     //     ;
     @Override
-    public String visitPrequelConstruct(@NotNull PrequelConstructContext ctx) {
+    public DiagramNode visitPrequelConstruct(@NotNull PrequelConstructContext ctx) {
         return super.visitPrequelConstruct(ctx);
     }
 
@@ -72,7 +78,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : OPTIONS (option SEMI)* RBRACE
     //     ;
     @Override
-    public String visitOptionsSpec(@NotNull OptionsSpecContext ctx) {
+    public DiagramNode visitOptionsSpec(@NotNull OptionsSpecContext ctx) {
         return super.visitOptionsSpec(ctx);
     }
 
@@ -80,7 +86,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : id ASSIGN optionValue
     //     ;
     @Override
-    public String visitOption(@NotNull OptionContext ctx) {
+    public DiagramNode visitOption(@NotNull OptionContext ctx) {
         return super.visitOption(ctx);
     }
 
@@ -91,7 +97,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | INT
     //     ;
     @Override
-    public String visitOptionValue(@NotNull OptionValueContext ctx) {
+    public DiagramNode visitOptionValue(@NotNull OptionValueContext ctx) {
         return super.visitOptionValue(ctx);
     }
 
@@ -99,7 +105,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : IMPORT delegateGrammar (COMMA delegateGrammar)* SEMI
     //     ;
     @Override
-    public String visitDelegateGrammars(@NotNull DelegateGrammarsContext ctx) {
+    public DiagramNode visitDelegateGrammars(@NotNull DelegateGrammarsContext ctx) {
         return super.visitDelegateGrammars(ctx);
     }
 
@@ -108,15 +114,18 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | id
     //     ;
     @Override
-    public String visitDelegateGrammar(@NotNull DelegateGrammarContext ctx) {
-        return super.visitDelegateGrammar(ctx);
+    public DiagramNode visitDelegateGrammar(@NotNull DelegateGrammarContext ctx) {
+        // The grammar is the last id: the first one of `id ASSIGN id` is
+        // only the label of the import.
+        this.imports.add(ctx.id(ctx.id().size() - 1).getText());
+        return null;
     }
 
     //    tokensSpec
     //     : TOKENS id (COMMA id)* COMMA? RBRACE
     //     ;
     @Override
-    public String visitTokensSpec(@NotNull TokensSpecContext ctx) {
+    public DiagramNode visitTokensSpec(@NotNull TokensSpecContext ctx) {
         return super.visitTokensSpec(ctx);
     }
 
@@ -124,7 +133,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : AT (actionScopeName COLONCOLON)? id ACTION
     //     ;
     @Override
-    public String visitAction(@NotNull ActionContext ctx) {
+    public DiagramNode visitAction(@NotNull ActionContext ctx) {
         return super.visitAction(ctx);
     }
 
@@ -134,7 +143,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | PARSER
     //     ;
     @Override
-    public String visitActionScopeName(@NotNull ActionScopeNameContext ctx) {
+    public DiagramNode visitActionScopeName(@NotNull ActionScopeNameContext ctx) {
         return super.visitActionScopeName(ctx);
     }
 
@@ -142,7 +151,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : MODE id SEMI ruleSpec+
     //     ;
     @Override
-    public String visitModeSpec(@NotNull ModeSpecContext ctx) {
+    public DiagramNode visitModeSpec(@NotNull ModeSpecContext ctx) {
         return super.visitModeSpec(ctx);
     }
 
@@ -150,7 +159,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : ruleSpec*
     //     ;
     @Override
-    public String visitRules(@NotNull RulesContext ctx) {
+    public DiagramNode visitRules(@NotNull RulesContext ctx) {
         return super.visitRules(ctx);
     }
 
@@ -159,7 +168,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | lexerRule
     //     ;
     @Override
-    public String visitRuleSpec(@NotNull RuleSpecContext ctx) {
+    public DiagramNode visitRuleSpec(@NotNull RuleSpecContext ctx) {
         return super.visitRuleSpec(ctx);
     }
 
@@ -174,11 +183,11 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       exceptionGroup
     //     ;
     @Override
-    public String visitParserRuleSpec(@NotNull ParserRuleSpecContext ctx) {
+    public DiagramNode visitParserRuleSpec(@NotNull ParserRuleSpecContext ctx) {
 
         String ruleName = ctx.RULE_REF().getText();
 
-        String diagram = "Diagram(" + this.visitRuleBlock(ctx.ruleBlock()) + ").toString()";
+        DiagramNode diagram = this.visitRuleBlock(ctx.ruleBlock());
 
         this.rules.put(ruleName, diagram);
 
@@ -189,7 +198,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : exceptionHandler* finallyClause?
     //     ;
     @Override
-    public String visitExceptionGroup(@NotNull ExceptionGroupContext ctx) {
+    public DiagramNode visitExceptionGroup(@NotNull ExceptionGroupContext ctx) {
         return super.visitExceptionGroup(ctx);
     }
 
@@ -197,7 +206,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : CATCH ARG_ACTION ACTION
     //     ;
     @Override
-    public String visitExceptionHandler(@NotNull ExceptionHandlerContext ctx) {
+    public DiagramNode visitExceptionHandler(@NotNull ExceptionHandlerContext ctx) {
         return super.visitExceptionHandler(ctx);
     }
 
@@ -205,7 +214,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : FINALLY ACTION
     //     ;
     @Override
-    public String visitFinallyClause(@NotNull FinallyClauseContext ctx) {
+    public DiagramNode visitFinallyClause(@NotNull FinallyClauseContext ctx) {
         return super.visitFinallyClause(ctx);
     }
 
@@ -214,7 +223,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | ruleAction
     //     ;
     @Override
-    public String visitRulePrequel(@NotNull RulePrequelContext ctx) {
+    public DiagramNode visitRulePrequel(@NotNull RulePrequelContext ctx) {
         return super.visitRulePrequel(ctx);
     }
 
@@ -222,7 +231,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : RETURNS ARG_ACTION
     //     ;
     @Override
-    public String visitRuleReturns(@NotNull RuleReturnsContext ctx) {
+    public DiagramNode visitRuleReturns(@NotNull RuleReturnsContext ctx) {
         return super.visitRuleReturns(ctx);
     }
 
@@ -230,7 +239,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : THROWS id (COMMA id)*
     //     ;
     @Override
-    public String visitThrowsSpec(@NotNull ThrowsSpecContext ctx) {
+    public DiagramNode visitThrowsSpec(@NotNull ThrowsSpecContext ctx) {
         return super.visitThrowsSpec(ctx);
     }
 
@@ -238,7 +247,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : LOCALS ARG_ACTION
     //     ;
     @Override
-    public String visitLocalsSpec(@NotNull LocalsSpecContext ctx) {
+    public DiagramNode visitLocalsSpec(@NotNull LocalsSpecContext ctx) {
         return super.visitLocalsSpec(ctx);
     }
 
@@ -246,7 +255,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : AT id ACTION
     //     ;
     @Override
-    public String visitRuleAction(@NotNull RuleActionContext ctx) {
+    public DiagramNode visitRuleAction(@NotNull RuleActionContext ctx) {
         return super.visitRuleAction(ctx);
     }
 
@@ -254,7 +263,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : ruleModifier+
     //     ;
     @Override
-    public String visitRuleModifiers(@NotNull RuleModifiersContext ctx) {
+    public DiagramNode visitRuleModifiers(@NotNull RuleModifiersContext ctx) {
         return super.visitRuleModifiers(ctx);
     }
 
@@ -265,7 +274,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | FRAGMENT
     //     ;
     @Override
-    public String visitRuleModifier(@NotNull RuleModifierContext ctx) {
+    public DiagramNode visitRuleModifier(@NotNull RuleModifierContext ctx) {
         return super.visitRuleModifier(ctx);
     }
 
@@ -273,7 +282,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : ruleAltList
     //     ;
     @Override
-    public String visitRuleBlock(@NotNull RuleBlockContext ctx) {
+    public DiagramNode visitRuleBlock(@NotNull RuleBlockContext ctx) {
         return this.visitRuleAltList(ctx.ruleAltList());
     }
 
@@ -281,27 +290,22 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : labeledAlt (OR labeledAlt)*
     //     ;
     @Override
-    public String visitRuleAltList(@NotNull RuleAltListContext ctx) {
-
-        StringBuilder builder = new StringBuilder("Choice(0, ");
-        List<LabeledAltContext> alternatives = ctx.labeledAlt();
-
-        for (int i = 0; i < alternatives.size(); i++) {
+    public DiagramNode visitRuleAltList(@NotNull RuleAltListContext ctx) {
 
-            LabeledAltContext alternative = alternatives.get(i);
+        List<DiagramNode> alternatives = new ArrayList<DiagramNode>();
 
-            builder.append(this.visitLabeledAlt(alternative))
-                    .append(comma(alternatives, i));
+        for (LabeledAltContext alternative : ctx.labeledAlt()) {
+            alternatives.add(this.visitLabeledAlt(alternative));
         }
 
-        return builder.append(")").toString();
+        return new DiagramNode.Choice(alternatives);
     }
 
     //    labeledAlt
     //     : alternative (POUND id)?
     //     ;
     @Override
-    public String visitLabeledAlt(@NotNull LabeledAltContext ctx) {
+    public DiagramNode visitLabeledAlt(@NotNull LabeledAltContext ctx) {
         return this.visitAlternative(ctx.alternative());
     }
 
@@ -310,11 +314,11 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       TOKEN_REF COLON lexerRuleBlock SEMI
     //     ;
     @Override
-    public String visitLexerRule(@NotNull LexerRuleContext ctx) {
+    public DiagramNode visitLexerRule(@NotNull LexerRuleContext ctx) {
 
         String ruleName = ctx.TOKEN_REF().getText();
 
-        String diagram = "Diagram(" + this.visitLexerRuleBlock(ctx.lexerRuleBlock()) + ").toString()";
+        DiagramNode diagram = this.visitLexerRuleBlock(ctx.lexerRuleBlock());
 
         this.rules.put(ruleName, diagram);
 
@@ -325,7 +329,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : lexerAltList
     //     ;
     @Override
-    public String visitLexerRuleBlock(@NotNull LexerRuleBlockContext ctx) {
+    public DiagramNode visitLexerRuleBlock(@NotNull LexerRuleBlockContext ctx) {
         return this.visitLexerAltList(ctx.lexerAltList());
     }
 
@@ -333,33 +337,27 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : lexerAlt (OR lexerAlt)*
     //     ;
     @Override
-    public String visitLexerAltList(@NotNull LexerAltListContext ctx) {
-
-        StringBuilder builder = new StringBuilder("Choice(0, ");
-
-        List<LexerAltContext> alts = ctx.lexerAlt();
+    public DiagramNode visitLexerAltList(@NotNull LexerAltListContext ctx) {
 
-        for (int i = 0; i < alts.size(); i++) {
+        List<DiagramNode> alts = new ArrayList<DiagramNode>();
 
-            LexerAltContext alt = alts.get(i);
-
-            builder.append(this.visitLexerAlt(alt))
-                    .append(this.comma(alts, i));
+        for (LexerAltContext alt : ctx.lexerAlt()) {
+            alts.add(this.visitLexerAlt(alt));
         }
 
-        return builder.append(")").toString();
+        return new DiagramNode.Choice(alts);
     }
 
     //    lexerAlt
     //     : lexerElements? lexerCommands?
     //     ;
     @Override
-    public String visitLexerAlt(@NotNull LexerAltContext ctx) {
+    public DiagramNode visitLexerAlt(@NotNull LexerAltContext ctx) {
         if (ctx.lexerElements() != null) {
             return this.visitLexerElements(ctx.lexerElements());
         }
         else {
-            return "Comment('&#949;')";
+            return epsilon();
         }
     }
 
@@ -367,21 +365,15 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : lexerElement+
     //     ;
     @Override
-    public String visitLexerElements(@NotNull LexerElementsContext ctx) {
-
-        StringBuilder builder = new StringBuilder("Sequence(");
-
-        List<LexerElementContext> elements = ctx.lexerElement();
-
-        for (int i = 0; i < elements.size(); i++) {
+    public DiagramNode visitLexerElements(@NotNull LexerElementsContext ctx) {
 
-            LexerElementContext element = elements.get(i);
+        List<DiagramNode> elements = new ArrayList<DiagramNode>();
 
-            builder.append(this.visitLexerElement(element))
-                    .append(comma(elements, i));
+        for (LexerElementContext element : ctx.lexerElement()) {
+            elements.add(this.visitLexerElement(element));
         }
 
-        return builder.append(")").toString();
+        return new DiagramNode.Sequence(elements);
     }
 
     //    lexerElement
@@ -391,49 +383,24 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | ACTION QUESTION?
     //     ;
     @Override
-    public String visitLexerElement(@NotNull LexerElementContext ctx) {
+    public DiagramNode visitLexerElement(@NotNull LexerElementContext ctx) {
 
-        StringBuilder builder = new StringBuilder();
-        boolean hasEbnfSuffix = (ctx.ebnfSuffix() != null);
+        DiagramNode element;
 
         if (ctx.labeledLexerElement() != null) {
-            if (hasEbnfSuffix) {
-                builder.append(this.visitEbnfSuffix(ctx.ebnfSuffix()))
-                        .append("(")
-                        .append(this.visitLabeledLexerElement(ctx.labeledLexerElement()))
-                        .append(")");
-            }
-            else {
-                builder.append(this.visitLabeledLexerElement(ctx.labeledLexerElement()));
-            }
+            element = this.visitLabeledLexerElement(ctx.labeledLexerElement());
         }
         else if (ctx.lexerAtom() != null) {
-            if (hasEbnfSuffix) {
-                builder.append(this.visitEbnfSuffix(ctx.ebnfSuffix()))
-                        .append("(")
-                        .append(this.visitLexerAtom(ctx.lexerAtom()))
-                        .append(")");
-            }
-            else {
-                builder.append(this.visitLexerAtom(ctx.lexerAtom()));
-            }
+            element = this.visitLexerAtom(ctx.lexerAtom());
         }
         else if (ctx.lexerBlock() != null) {
-            if (hasEbnfSuffix) {
-                builder.append(this.visitEbnfSuffix(ctx.ebnfSuffix()))
-                        .append("(")
-                        .append(this.visitLexerBlock(ctx.lexerBlock()))
-                        .append(")");
-            }
-            else {
-                builder.append(this.visitLexerBlock(ctx.lexerBlock()));
-            }
+            element = this.visitLexerBlock(ctx.lexerBlock());
         }
         else {
-            return "Comment('&#949;')";
+            return epsilon();
         }
 
-        return builder.toString();
+        return this.repeat(ctx.ebnfSuffix(), element);
     }
 
     //    labeledLexerElement
@@ -443,7 +410,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       )
     //     ;
     @Override
-    public String visitLabeledLexerElement(@NotNull LabeledLexerElementContext ctx) {
+    public DiagramNode visitLabeledLexerElement(@NotNull LabeledLexerElementContext ctx) {
 
         if (ctx.lexerAtom() != null) {
             return this.visitLexerAtom(ctx.lexerAtom());
@@ -457,7 +424,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : LPAREN lexerAltList RPAREN
     //     ;
     @Override
-    public String visitLexerBlock(@NotNull LexerBlockContext ctx) {
+    public DiagramNode visitLexerBlock(@NotNull LexerBlockContext ctx) {
         return this.visitLexerAltList(ctx.lexerAltList());
     }
 
@@ -465,7 +432,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : RARROW lexerCommand (COMMA lexerCommand)*
     //     ;
     @Override
-    public String visitLexerCommands(@NotNull LexerCommandsContext ctx) {
+    public DiagramNode visitLexerCommands(@NotNull LexerCommandsContext ctx) {
         return super.visitLexerCommands(ctx);
     }
 
@@ -474,7 +441,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | lexerCommandName
     //     ;
     @Override
-    public String visitLexerCommand(@NotNull LexerCommandContext ctx) {
+    public DiagramNode visitLexerCommand(@NotNull LexerCommandContext ctx) {
         return super.visitLexerCommand(ctx);
     }
 
@@ -483,7 +450,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | MODE
     //     ;
     @Override
-    public String visitLexerCommandName(@NotNull LexerCommandNameContext ctx) {
+    public DiagramNode visitLexerCommandName(@NotNull LexerCommandNameContext ctx) {
         return super.visitLexerCommandName(ctx);
     }
 
@@ -492,7 +459,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | INT
     //     ;
     @Override
-    public String visitLexerCommandExpr(@NotNull LexerCommandExprContext ctx) {
+    public DiagramNode visitLexerCommandExpr(@NotNull LexerCommandExprContext ctx) {
         return super.visitLexerCommandExpr(ctx);
     }
 
@@ -500,20 +467,15 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : alternative (OR alternative)*
     //     ;
     @Override
-    public String visitAltList(@NotNull AltListContext ctx) {
+    public DiagramNode visitAltList(@NotNull AltListContext ctx) {
 
-        StringBuilder builder = new StringBuilder("Choice(0, ");
-        List<AlternativeContext> alternatives = ctx.alternative();
+        List<DiagramNode> alternatives = new ArrayList<DiagramNode>();
 
-        for (int i = 0; i < alternatives.size(); i++) {
-
-            AlternativeContext alternative = alternatives.get(i);
-
-            builder.append(this.visitAlternative(alternative))
-                    .append(comma(alternatives, i));
+        for (AlternativeContext alternative : ctx.alternative()) {
+            alternatives.add(this.visitAlternative(alternative));
         }
 
-        return builder.append(")").toString();
+        return new DiagramNode.Choice(alternatives);
     }
 
     //    alternative
@@ -521,12 +483,12 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | // empty alt
     //     ;
     @Override
-    public String visitAlternative(@NotNull AlternativeContext ctx) {
+    public DiagramNode visitAlternative(@NotNull AlternativeContext ctx) {
         if (ctx.elements() != null) {
             return this.visitElements(ctx.elements());
         }
         else {
-            return "Comment('&#949;')";
+            return epsilon();
         }
     }
 
@@ -534,20 +496,15 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : element+
     //     ;
     @Override
-    public String visitElements(@NotNull ElementsContext ctx) {
-
-        StringBuilder builder = new StringBuilder("Sequence(");
-        List<ElementContext> elements = ctx.element();
+    public DiagramNode visitElements(@NotNull ElementsContext ctx) {
 
-        for (int i = 0; i < elements.size(); i++) {
+        List<DiagramNode> elements = new ArrayList<DiagramNode>();
 
-            ElementContext element = elements.get(i);
-
-            builder.append(this.visitElement(element))
-                    .append(comma(elements, i));
+        for (ElementContext element : ctx.element()) {
+            elements.add(this.visitElement(element));
         }
 
-        return builder.append(")").toString();
+        return new DiagramNode.Sequence(elements);
     }
 
     //    element
@@ -563,36 +520,22 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | ACTION QUESTION?
     //     ;
     @Override
-    public String visitElement(@NotNull ElementContext ctx) {
-
-        boolean hasEbnfSuffix = (ctx.ebnfSuffix() != null);
+    public DiagramNode visitElement(@NotNull ElementContext ctx) {
 
         if (ctx.labeledElement() != null) {
-            if (hasEbnfSuffix) {
-                return this.visitEbnfSuffix(ctx.ebnfSuffix()) +
-                        "("  + this.visitLabeledElement(ctx.labeledElement()) + ")";
-            }
-            else {
-                return this.visitLabeledElement(ctx.labeledElement());
-            }
+            return this.repeat(ctx.ebnfSuffix(), this.visitLabeledElement(ctx.labeledElement()));
         }
         else if (ctx.atom() != null) {
-            if (hasEbnfSuffix) {
-                return this.visitEbnfSuffix(ctx.ebnfSuffix()) +
-                        "("  + this.visitAtom(ctx.atom()) + ")";
-            }
-            else {
-                return this.visitAtom(ctx.atom());
-            }
+            return this.repeat(ctx.ebnfSuffix(), this.visitAtom(ctx.atom()));
         }
         else if (ctx.ebnf() != null) {
              return this.visitEbnf(ctx.ebnf());
         }
         else if (ctx.QUESTION() != null) {
-            return "Comment('predicate')";
+            return new DiagramNode.Comment("predicate");
         }
         else {
-            return "Comment('&#949;')";
+            return epsilon();
         }
     }
 
@@ -603,7 +546,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       )
     //     ;
     @Override
-    public String visitLabeledElement(@NotNull LabeledElementContext ctx) {
+    public DiagramNode visitLabeledElement(@NotNull LabeledElementContext ctx) {
         if (ctx.atom() != null) {
             return this.visitAtom(ctx.atom());
         }
@@ -616,10 +559,9 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : block blockSuffix?
     //     ;
     @Override
-    public String visitEbnf(@NotNull EbnfContext ctx) {
+    public DiagramNode visitEbnf(@NotNull EbnfContext ctx) {
         if (ctx.blockSuffix() != null) {
-            return this.visitBlockSuffix(ctx.blockSuffix()) +
-                    "(" + this.visitBlock(ctx.block()) + ")";
+            return this.repeat(ctx.blockSuffix().ebnfSuffix(), this.visitBlock(ctx.block()));
         }
         else {
             return this.visitBlock(ctx.block());
@@ -630,8 +572,8 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : ebnfSuffix // Standard EBNF
     //     ;
     @Override
-    public String visitBlockSuffix(@NotNull BlockSuffixContext ctx) {
-        return this.visitEbnfSuffix(ctx.ebnfSuffix());
+    public DiagramNode visitBlockSuffix(@NotNull BlockSuffixContext ctx) {
+        return super.visitBlockSuffix(ctx);
     }
 
     //    ebnfSuffix
@@ -640,19 +582,8 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | PLUS QUESTION?
     //     ;
     @Override
-    public String visitEbnfSuffix(@NotNull EbnfSuffixContext ctx) {
-
-        String text = ctx.getText();
-
-        if (text.equals("?")) {
-            return "Optional";
-        }
-        else if (text.equals("*")) {
-            return "ZeroOrMore";
-        }
-        else {
-            return "OneOrMore";
-        }
+    public DiagramNode visitEbnfSuffix(@NotNull EbnfSuffixContext ctx) {
+        return super.visitEbnfSuffix(ctx);
     }
 
     //    lexerAtom
@@ -664,7 +595,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | DOT elementOptions?
     //     ;
     @Override
-    public String visitLexerAtom(@NotNull LexerAtomContext ctx) {
+    public DiagramNode visitLexerAtom(@NotNull LexerAtomContext ctx) {
 
         if (ctx.range() != null) {
             return this.visitRange(ctx.range());
@@ -682,7 +613,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
             return this.visitTerminal(ctx.LEXER_CHAR_SET());
         }
         else {
-            return "Terminal('any char')";
+            return new DiagramNode.Terminal("any char");
         }
     }
 
@@ -694,7 +625,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | DOT elementOptions?
     //     ;
     @Override
-    public String visitAtom(@NotNull AtomContext ctx) {
+    public DiagramNode visitAtom(@NotNull AtomContext ctx) {
 
         if (ctx.range() != null) {
             return this.visitRange(ctx.range());
@@ -709,7 +640,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
             return this.visitNotSet(ctx.notSet());
         }
         else {
-            return "NonTerminal('any token')";
+            return new DiagramNode.NonTerminal("any token");
         }
     }
 
@@ -718,12 +649,14 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | NOT blockSet
     //     ;
     @Override
-    public String visitNotSet(@NotNull NotSetContext ctx) {
+    public DiagramNode visitNotSet(@NotNull NotSetContext ctx) {
+        DiagramNode not = new DiagramNode.Comment("not");
+
         if (ctx.setElement() != null) {
-            return "Sequence(Comment('not'), " + this.visitSetElement(ctx.setElement()) + ")";
+            return new DiagramNode.Sequence(Arrays.asList(not, this.visitSetElement(ctx.setElement())));
         }
         else {
-            return "Sequence(Comment('not'), " + this.visitBlockSet(ctx.blockSet()) + ")";
+            return new DiagramNode.Sequence(Arrays.asList(not, this.visitBlockSet(ctx.blockSet())));
         }
     }
 
@@ -731,20 +664,15 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : LPAREN setElement (OR setElement)* RPAREN
     //     ;
     @Override
-    public String visitBlockSet(@NotNull BlockSetContext ctx) {
+    public DiagramNode visitBlockSet(@NotNull BlockSetContext ctx) {
 
-        StringBuilder builder = new StringBuilder("Choice(0, ");
-        List<SetElementContext> elements = ctx.setElement();
+        List<DiagramNode> elements = new ArrayList<DiagramNode>();
 
-        for (int i = 0; i < elements.size(); i++) {
-
-            SetElementContext element = elements.get(i);
-
-            builder.append(this.visitSetElement(element))
-                    .append(comma(elements, i));
+        for (SetElementContext element : ctx.setElement()) {
+            elements.add(this.visitSetElement(element));
         }
 
-        return builder.append(")").toString();
+        return new DiagramNode.Choice(elements);
     }
 
     //    setElement
@@ -754,7 +682,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | LEXER_CHAR_SET
     //     ;
     @Override
-    public String visitSetElement(@NotNull SetElementContext ctx) {
+    public DiagramNode visitSetElement(@NotNull SetElementContext ctx) {
         return super.visitSetElement(ctx);
     }
 
@@ -765,7 +693,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       RPAREN
     //     ;
     @Override
-    public String visitBlock(@NotNull BlockContext ctx) {
+    public DiagramNode visitBlock(@NotNull BlockContext ctx) {
         return this.visitAltList(ctx.altList());
     }
 
@@ -773,7 +701,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : RULE_REF ARG_ACTION?
     //     ;
     @Override
-    public String visitRuleref(@NotNull RulerefContext ctx) {
+    public DiagramNode visitRuleref(@NotNull RulerefContext ctx) {
         return this.visitTerminal(ctx.RULE_REF());
     }
 
@@ -781,12 +709,12 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : STRING_LITERAL RANGE STRING_LITERAL
     //     ;
     @Override
-    public String visitRange(@NotNull RangeContext ctx) {
+    public DiagramNode visitRange(@NotNull RangeContext ctx) {
 
-        return String.format("'%s .. %s'",
-                this.escapeTerminal(ctx.STRING_LITERAL(0)),
-                this.escapeTerminal(ctx.STRING_LITERAL(1))
-        );
+        return new DiagramNode.Terminal(String.format("%s .. %s",
+                this.text(ctx.STRING_LITERAL(0)),
+                this.text(ctx.STRING_LITERAL(1))
+        ));
     }
 
     //    terminal
@@ -794,7 +722,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | STRING_LITERAL elementOptions?
     //     ;
     @Override
-    public String visitTerminal(@NotNull TerminalContext ctx) {
+    public DiagramNode visitTerminal(@NotNull TerminalContext ctx) {
         if (ctx.TOKEN_REF() != null) {
             return this.visitTerminal(ctx.TOKEN_REF());
         }
@@ -807,7 +735,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     : LT elementOption (COMMA elementOption)* GT
     //     ;
     @Override
-    public String visitElementOptions(@NotNull ElementOptionsContext ctx) {
+    public DiagramNode visitElementOptions(@NotNull ElementOptionsContext ctx) {
         return super.visitElementOptions(ctx);
     }
 
@@ -818,7 +746,7 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //       id ASSIGN (id | STRING_LITERAL)
     //     ;
     @Override
-    public String visitElementOption(@NotNull ElementOptionContext ctx) {
+    public DiagramNode visitElementOption(@NotNull ElementOptionContext ctx) {
         return super.visitElementOption(ctx);
     }
 
@@ -827,16 +755,121 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
     //     | TOKEN_REF
     //     ;
     @Override
-    public String visitId(@NotNull IdContext ctx) {
+    public DiagramNode visitId(@NotNull IdContext ctx) {
         return super.visitId(ctx);
     }
 
+    /**
+     * Returns the DSL of the diagram of a rule, as evaluated by the
+     * JavaScript library.
+     *
+     * @param ruleName
+     *         the name of the grammar rule.
+     *
+     * @return the DSL of the diagram of the rule, or `null` if there
+     * is no such rule.
+     */
     public String getDiagram(String ruleName) {
+        DiagramNode model = this.rules.get(ruleName);
+        return model == null ? null : model.toDiagramDsl();
+    }
+
+    /**
+     * Returns the diagram model of a rule.
+     *
+     * @param ruleName
+     *         the name of the grammar rule.
+     *
+     * @return the diagram model of the rule, or `null` if there is no
+     * such rule.
+     */
+    public DiagramNode getDiagramModel(String ruleName) {
         return this.rules.get(ruleName);
     }
 
+    /**
+     * Returns all rules, in grammar order, mapped to their diagram model.
+     *
+     * @return all rules mapped to their diagram model.
+     */
+    public Map<String, DiagramNode> getDiagramModels() {
+        return new LinkedHashMap<String, DiagramNode>(this.rules);
+    }
+
+    /**
+     * Returns which rules refer to which, for the rules of the visited
+     * grammar only: not those of the grammars it imports.
+     *
+     * @return the graph of the rules.
+     */
+    public RuleGraph getRuleGraph() {
+        return RuleGraph.of(this.rules);
+    }
+
+    /**
+     * Returns the names of the grammars the visited grammar imports.
+     *
+     * @return the names of the imported grammars, in the order in which
+     * they are imported.
+     */
+    public List<String> getImports() {
+        return new ArrayList<String>(this.imports);
+    }
+
+    /**
+     * Returns all rules, in grammar order, mapped to the DSL of their
+     * diagram.
+     *
+     * @return all rules mapped to the DSL of their diagram.
+     */
     public Map<String, String> getRules() {
-        return new LinkedHashMap<String, String>(this.rules);
+
+        LinkedHashMap<String, String> dsl = new LinkedHashMap<String, String>();
+
+        for (Map.Entry<String, DiagramNode> entry : this.rules.entrySet()) {
+            dsl.put(entry.getKey(), entry.getValue().toDiagramDsl());
+        }
+
+        return dsl;
+    }
+
+    // The node used for empty alternatives.
+    private static DiagramNode epsilon() {
+        return new DiagramNode.Comment("&#949;");
+    }
+
+    // Wraps `node` in the repetition denoted by `suffix`, if any.
+    private DiagramNode repeat(EbnfSuffixContext suffix, DiagramNode node) {
+
+        if (suffix == null) {
+            return node;
+        }
+
+        String text = suffix.getText();
+
+        if (text.equals("?")) {
+            return new DiagramNode.Repetition(DiagramNode.Repetition.Kind.OPTIONAL, node);
+        }
+        else if (text.equals("*")) {
+            return new DiagramNode.Repetition(DiagramNode.Repetition.Kind.ZERO_OR_MORE, node);
+        }
+        else {
+            return new DiagramNode.Repetition(DiagramNode.Repetition.Kind.ONE_OR_MORE, node);
+        }
+    }
+
+    // The text of a literal as it is displayed in the diagram. Escape
+    // sequences are interpreted like the JavaScript library always did
+    // (except Unicode escapes, which are displayed as they are written).
+    // A literal with an escape that cannot be interpreted, like `'\x'`,
+    // is displayed as it is written: it does not fail the whole grammar.
+    private String text(TerminalNode node) {
+        try {
+            return DslParser.unescape(this.escapeTerminal(node));
+        }
+        catch (IllegalArgumentException e) {
+            return node.getText();
+        }
     }
 
     private String escapeTerminal(TerminalNode node) {
@@ -853,24 +886,20 @@ public class RuleVisitor extends ANTLRv4ParserBaseVisitor<String> {
         }
     }
 
-    private String comma(Collection<?> collection, int index) {
-        return index < collection.size() - 1 ? ", " : "";
-    }
-
     @Override
-    public String visitTerminal(@NotNull TerminalNode node) {
+    public DiagramNode visitTerminal(@NotNull TerminalNode node) {
 
         switch (node.getSymbol().getType()) {
 
             case ANTLRv4Lexer.STRING_LITERAL:
             case ANTLRv4Lexer.LEXER_CHAR_SET:
-                return "Terminal('" + this.escapeTerminal(node) + "')";
+                return new DiagramNode.Terminal(this.text(node));
 
             case ANTLRv4Lexer.TOKEN_REF:
-                return "Terminal('" + node.getText() + "')";
+                return new DiagramNode.Terminal(node.getText());
 
             default:
-                return "NonTerminal('" + node.getText() + "')";
+                return new DiagramNode.NonTerminal(node.getText());
         }
     }
 }
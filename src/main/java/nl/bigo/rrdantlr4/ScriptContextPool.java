@@ -0,0 +1,337 @@
+package nl.bigo.rrdantlr4;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pool of GraalVM polyglot contexts that have `railroad-diagram.js`
+ * loaded. All contexts share a single `Engine`, so the script is parsed
+ * and compiled once and its compiled code is reused by every context.
+ *
+ * A polyglot context can only be used by one thread at a time: a thread
+ * borrows a context, evaluates its DSL and returns it. Contexts are
+ * created lazily, up to the size of the pool. When all of them are in
+ * use, `borrow()` blocks until one is returned, or discarded, which
+ * makes room for a new one.
+ */
+public final class ScriptContextPool implements Closeable {
+
+    // The library used to convert grammar rules to SVG.
+    private static final String RAILROAD_SCRIPT = DiagramGenerator.slurp(ScriptContextPool.class.getResourceAsStream("/railroad-diagram.js"));
+
+    // The size of the pool used by the JAVASCRIPT renderer.
+    private static int sharedSize = Runtime.getRuntime().availableProcessors();
+
+    // The pool used by the JAVASCRIPT renderer, created on first use.
+    private static ScriptContextPool shared = null;
+
+    private final int size;
+    private final Engine engine;
+    private final Source railroadScript;
+
+    // Guards the idle contexts, the number of contexts and whether the
+    // pool is closed. `changed` is signalled whenever a waiting borrower
+    // may be able to continue: a context became idle, a context is gone
+    // (so a new one can be created) or the pool closed.
+    private final Lock lock;
+    private final Condition changed;
+    private final Deque<Context> idle;
+    private int created;
+    private boolean closed;
+
+    private boolean engineClosed;
+
+    /**
+     * Creates a pool of at most `size` contexts.
+     *
+     * @param size
+     *         the maximum number of contexts in this pool.
+     */
+    public ScriptContextPool(int size) {
+
+        if (size < 1) {
+            throw new IllegalArgumentException("the size of the pool must be at least 1, not: " + size);
+        }
+
+        this.size = size;
+        this.engine = Engine.create();
+        this.railroadScript = Source.newBuilder("js", RAILROAD_SCRIPT, "railroad-diagram.js").cached(true).buildLiteral();
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
+        this.idle = new ArrayDeque<Context>();
+        this.created = 0;
+        this.closed = false;
+        this.engineClosed = false;
+    }
+
+    /**
+     * Returns the pool used by the `Renderer.JAVASCRIPT` renderer.
+     *
+     * @return the pool used by the `Renderer.JAVASCRIPT` renderer.
+     */
+    public static synchronized ScriptContextPool shared() {
+
+        if (shared == null) {
+            shared = new ScriptContextPool(sharedSize);
+        }
+
+        return shared;
+    }
+
+    /**
+     * Sets the size of the pool used by the `Renderer.JAVASCRIPT`
+     * renderer. Defaults to the number of available processors.
+     *
+     * @param size
+     *         the maximum number of contexts in the shared pool.
+     *
+     * @throws IllegalStateException
+     *         when the shared pool is already in use.
+     */
+    public static synchronized void setSharedSize(int size) {
+
+        if (size < 1) {
+            throw new IllegalArgumentException("the size of the pool must be at least 1, not: " + size);
+        }
+
+        if (shared != null) {
+            throw new IllegalStateException("the shared pool is already in use");
+        }
+
+        sharedSize = size;
+    }
+
+    /**
+     * Returns the maximum number of contexts in this pool.
+     *
+     * @return the maximum number of contexts in this pool.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Takes a context from this pool, creating one if none is idle and
+     * the pool is not full yet. Every borrowed context must be handed
+     * back with `release(Context)`.
+     *
+     * @return a context that has `railroad-diagram.js` loaded.
+     *
+     * @throws InterruptedException
+     *         when interrupted while waiting for a context.
+     * @throws IllegalStateException
+     *         when the pool is closed, also while waiting for a context.
+     */
+    public Context borrow() throws InterruptedException {
+
+        lock.lock();
+
+        try {
+            while (true) {
+
+                if (closed) {
+                    throw new IllegalStateException("the pool is closed");
+                }
+
+                Context context = idle.poll();
+
+                if (context != null) {
+                    return context;
+                }
+
+                if (created < size) {
+                    // Claim the room for a new context, and create it
+                    // without holding the lock.
+                    created++;
+                    break;
+                }
+
+                changed.await();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        try {
+            return newContext();
+        }
+        catch (RuntimeException e) {
+            forget();
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a borrowed context back to this pool.
+     *
+     * @param context
+     *         the context to return.
+     */
+    public void release(Context context) {
+
+        lock.lock();
+
+        try {
+            if (!closed) {
+                idle.add(context);
+                changed.signal();
+                return;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        discard(context);
+    }
+
+    /**
+     * Closes a borrowed context instead of handing it back, when it can
+     * no longer be used. A thread waiting for a context gets a new one.
+     *
+     * @param context
+     *         the borrowed context to close.
+     */
+    public void discard(Context context) {
+
+        try {
+            context.close();
+        }
+        finally {
+            forget();
+        }
+    }
+
+    /**
+     * Evaluates the DSL of a diagram on one of the contexts of this pool.
+     * This method can be called from many threads at once.
+     *
+     * @param dsl
+     *         the DSL of a diagram, as created by `DiagramNode.toDiagramDsl()`.
+     *
+     * @return the SVG the DSL evaluates to.
+     */
+    public String render(String dsl) {
+
+        Context context;
+
+        try {
+            context = borrow();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for a script context", e);
+        }
+
+        boolean usable = true;
+
+        try {
+            return context.eval("js", dsl).asString();
+        }
+        catch (PolyglotException e) {
+            // Ordinary script errors leave the context usable, but a
+            // cancelled or exited context cannot be used again.
+            usable = !(e.isCancelled() || e.isExit() || e.isInternalError());
+            throw new RuntimeException("could not evaluate: " + dsl, e);
+        }
+        finally {
+            if (usable) {
+                release(context);
+            }
+            else {
+                discard(context);
+            }
+        }
+    }
+
+    /**
+     * Closes all idle contexts. Contexts that are borrowed at this moment
+     * are closed when they are released. The shared engine is closed
+     * together with the last context.
+     */
+    @Override
+    public void close() {
+
+        List<Context> contexts = new ArrayList<Context>();
+        boolean empty;
+
+        lock.lock();
+
+        try {
+            closed = true;
+            contexts.addAll(idle);
+            idle.clear();
+            empty = created == 0;
+
+            // Waiting borrowers give up.
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+
+        for (Context context : contexts) {
+            discard(context);
+        }
+
+        if (empty) {
+            closeEngine();
+        }
+    }
+
+    // Counts a context that is gone, or that could not be created, and
+    // closes the engine together with the last context of a closed pool.
+    private void forget() {
+
+        boolean last;
+
+        lock.lock();
+
+        try {
+            created--;
+            last = created == 0 && closed;
+            changed.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if (last) {
+            closeEngine();
+        }
+    }
+
+    private synchronized void closeEngine() {
+        if (!engineClosed) {
+            engineClosed = true;
+            engine.close();
+        }
+    }
+
+    private Context newContext() {
+
+        Context context = Context.newBuilder("js").engine(engine).build();
+
+        try {
+            context.eval(railroadScript);
+        }
+        catch (PolyglotException e) {
+            context.close();
+            throw new RuntimeException("could not evaluate script:\n" + RAILROAD_SCRIPT, e);
+        }
+
+        return context;
+    }
+}
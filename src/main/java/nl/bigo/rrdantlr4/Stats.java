@@ -0,0 +1,371 @@
+package nl.bigo.rrdantlr4;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records where the time goes: how long every phase of creating the
+ * outputs of a grammar takes, per phase and per rule, how many bytes it
+ * produces and how many bytes it allocates.
+ *
+ * Every recorded span is emitted as a JFR event (`nl.bigo.rrdantlr4.Phase`)
+ * when a flight recording is running, and is added to the summary that
+ * `printSummary` prints once the statistics are enabled.
+ *
+ * Spans can be nested: a phase is only charged for its own time and
+ * allocations, not for those of the phases it contains. Rendering the
+ * SVG of a rule while creating its PNG image, for example, counts as
+ * rendering, not as transcoding.
+ */
+public final class Stats {
+
+    /**
+     * The phases of creating the outputs of a grammar.
+     */
+    public enum Phase {
+
+        PARSE("parse"),
+        VISIT("visit"),
+        COMMENTS("comments"),
+        RENDER("render svg"),
+        LINK("link"),
+        PNG("transcode png"),
+        PDF("pdf"),
+        HTML("html");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // The number of values recorded per phase: calls, nanos, bytes and
+    // allocated bytes.
+    private static final int CALLS = 0;
+    private static final int NANOS = 1;
+    private static final int BYTES = 2;
+    private static final int ALLOCATED = 3;
+    private static final int VALUES = 4;
+
+    // Whether spans are added to the summary.
+    private static volatile boolean enabled = false;
+
+    // The totals of every phase, `VALUES` per phase.
+    private static final AtomicLongArray phases = new AtomicLongArray(Phase.values().length * VALUES);
+
+    // The time spent on every rule, per phase, keyed by grammar and rule.
+    private static final ConcurrentMap<List<String>, AtomicLongArray> rules = new ConcurrentHashMap<List<String>, AtomicLongArray>();
+
+    // The span that is running on the current thread: the parent of the
+    // next span that begins on it.
+    private static final ThreadLocal<Span> current = new ThreadLocal<Span>();
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // Whether the JVM can tell the number of bytes a thread allocated.
+    private static final boolean allocationsMeasurable = allocationsMeasurable();
+
+    // Whether the JFR API is present: it is not in every Java 8 runtime.
+    private static final boolean jfrAvailable = jfrAvailable();
+
+    // A span that records nothing, used when nobody is interested.
+    private static final Span NONE = new Span(null, null, null, null);
+
+    private Stats() {
+    }
+
+    /**
+     * A phase that is running: it must be ended, in a `finally` block, on
+     * the thread that began it.
+     */
+    public static final class Span {
+
+        private final Phase phase;
+        private final String grammar;
+        private final String rule;
+        private final Object event;
+        private final Span parent;
+        private final long startNanos;
+        private final long startAllocated;
+        private long childNanos;
+        private long childAllocated;
+
+        private Span(Phase phase, String grammar, String rule, Object event) {
+            this.phase = phase;
+            this.grammar = grammar;
+            this.rule = rule;
+            this.event = event;
+            this.parent = phase == null ? null : current.get();
+            this.startAllocated = phase == null ? 0 : allocatedBytes();
+            this.startNanos = phase == null ? 0 : System.nanoTime();
+        }
+
+        /**
+         * Ends this span, without a byte count.
+         */
+        public void end() {
+            end(0);
+        }
+
+        /**
+         * Ends this span.
+         *
+         * @param bytes
+         *         the number of bytes (or chars) the phase produced.
+         */
+        public void end(long bytes) {
+
+            if (phase == null) {
+                return;
+            }
+
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = allocatedBytes() - startAllocated;
+
+            current.set(parent);
+
+            if (parent != null) {
+                parent.childNanos += nanos;
+                parent.childAllocated += allocated;
+            }
+
+            long selfNanos = nanos - childNanos;
+            long selfAllocated = allocated - childAllocated;
+
+            if (event != null) {
+                StatsEvent.finish(event, phase, grammar, rule, bytes, selfAllocated);
+            }
+
+            if (enabled) {
+                add(phases, phase.ordinal() * VALUES, 1, selfNanos, bytes, selfAllocated);
+
+                if (rule != null) {
+                    List<String> key = Arrays.asList(grammar, rule);
+                    AtomicLongArray times = rules.get(key);
+
+                    if (times == null) {
+                        AtomicLongArray created = new AtomicLongArray(Phase.values().length);
+                        times = rules.putIfAbsent(key, created);
+                        times = times == null ? created : times;
+                    }
+
+                    times.addAndGet(phase.ordinal(), selfNanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enables, or disables, adding spans to the summary.
+     *
+     * @param enabled
+     *         whether spans are added to the summary.
+     */
+    public static void setEnabled(boolean enabled) {
+        Stats.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Forgets everything that was added to the summary.
+     */
+    public static void reset() {
+
+        for (int i = 0; i < phases.length(); i++) {
+            phases.set(i, 0);
+        }
+
+        rules.clear();
+    }
+
+    /**
+     * Begins a span of a phase.
+     *
+     * @param phase
+     *         the phase that begins.
+     * @param grammar
+     *         the file name of the grammar the phase works on.
+     * @param rule
+     *         the rule the phase works on, or `null` when it works on the
+     *         grammar as a whole.
+     *
+     * @return the span, which must be ended.
+     */
+    public static Span begin(Phase phase, String grammar, String rule) {
+
+        Object event = jfrAvailable ? StatsEvent.start() : null;
+
+        if (!enabled && event == null) {
+            return NONE;
+        }
+
+        Span span = new Span(phase, grammar, rule, event);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Prints the time, bytes and allocations of every phase, slowest
+     * phase first, followed by the `slowest` rules that took the most
+     * time.
+     *
+     * @param out
+     *         the stream to print to.
+     * @param slowest
+     *         the number of rules to name.
+     */
+    public static void printSummary(PrintStream out, int slowest) {
+
+        final long[][] totals = new long[Phase.values().length][VALUES];
+        long totalNanos = 0;
+
+        for (Phase phase : Phase.values()) {
+            for (int value = 0; value < VALUES; value++) {
+                totals[phase.ordinal()][value] = phases.get(phase.ordinal() * VALUES + value);
+            }
+            totalNanos += totals[phase.ordinal()][NANOS];
+        }
+
+        List<Phase> sorted = new ArrayList<Phase>();
+
+        for (Phase phase : Phase.values()) {
+            if (totals[phase.ordinal()][CALLS] > 0) {
+                sorted.add(phase);
+            }
+        }
+
+        Collections.sort(sorted, new Comparator<Phase>() {
+            @Override
+            public int compare(Phase a, Phase b) {
+                return Long.compare(totals[b.ordinal()][NANOS], totals[a.ordinal()][NANOS]);
+            }
+        });
+
+        String row = "%-14s %8s %10s %6s %12s %12s%n";
+
+        out.printf(row, "phase", "calls", "time", "share", "bytes", allocationsMeasurable ? "allocated" : "");
+
+        for (Phase phase : sorted) {
+
+            long[] total = totals[phase.ordinal()];
+
+            out.printf(row, phase.getLabel(), total[CALLS], millis(total[NANOS]),
+                    totalNanos == 0 ? "" : (100 * total[NANOS] / totalNanos) + "%",
+                    total[BYTES], allocationsMeasurable ? megabytes(total[ALLOCATED]) : "");
+        }
+
+        List<Map.Entry<List<String>, AtomicLongArray>> ruleTimes =
+                new ArrayList<Map.Entry<List<String>, AtomicLongArray>>(rules.entrySet());
+
+        if (ruleTimes.isEmpty() || slowest <= 0) {
+            return;
+        }
+
+        Collections.sort(ruleTimes, new Comparator<Map.Entry<List<String>, AtomicLongArray>>() {
+            @Override
+            public int compare(Map.Entry<List<String>, AtomicLongArray> a, Map.Entry<List<String>, AtomicLongArray> b) {
+                return Long.compare(sum(b.getValue()), sum(a.getValue()));
+            }
+        });
+
+        boolean manyGrammars = false;
+
+        for (Map.Entry<List<String>, AtomicLongArray> entry : ruleTimes) {
+            manyGrammars |= !entry.getKey().get(0).equals(ruleTimes.get(0).getKey().get(0));
+        }
+
+        out.println();
+        out.printf("%d slowest rule(s):%n", Math.min(slowest, ruleTimes.size()));
+
+        String ruleRow = "%-32s %10s %12s %10s %14s %10s %10s%n";
+
+        out.printf(ruleRow, "rule", "time", Phase.RENDER.getLabel(), Phase.LINK.getLabel(), Phase.PNG.getLabel(),
+                Phase.PDF.getLabel(), Phase.HTML.getLabel());
+
+        for (Map.Entry<List<String>, AtomicLongArray> entry : ruleTimes.subList(0, Math.min(slowest, ruleTimes.size()))) {
+
+            AtomicLongArray times = entry.getValue();
+            String name = manyGrammars ? entry.getKey().get(0) + ":" + entry.getKey().get(1) : entry.getKey().get(1);
+
+            out.printf(ruleRow, name, millis(sum(times)), millis(times.get(Phase.RENDER.ordinal())),
+                    millis(times.get(Phase.LINK.ordinal())), millis(times.get(Phase.PNG.ordinal())),
+                    millis(times.get(Phase.PDF.ordinal())), millis(times.get(Phase.HTML.ordinal())));
+        }
+    }
+
+    private static void add(AtomicLongArray array, int offset, long... values) {
+        for (int i = 0; i < values.length; i++) {
+            array.addAndGet(offset + i, values[i]);
+        }
+    }
+
+    private static long sum(AtomicLongArray array) {
+
+        long sum = 0;
+
+        for (int i = 0; i < array.length(); i++) {
+            sum += array.get(i);
+        }
+
+        return sum;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+
+    // The number of bytes the current thread allocated so far, or 0 when
+    // that cannot be measured.
+    private static long allocatedBytes() {
+
+        if (!allocationsMeasurable) {
+            return 0;
+        }
+
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean allocationsMeasurable() {
+        try {
+            return threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package nl.bigo.rrdantlr4;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JFR event of a `Stats.Span`. Only `Stats` uses this class, and only
+ * when the JFR API is present, so the rest of the library still runs on
+ * Java 8 runtimes without it.
+ */
+@Name("nl.bigo.rrdantlr4.Phase")
+@Label("Railroad Diagram Phase")
+@Category("rrd-antlr4")
+@Description("A phase of creating the outputs of an ANTLR 4 grammar")
+final class StatsEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Grammar")
+    String grammar;
+
+    @Label("Rule")
+    String rule;
+
+    @Label("Bytes")
+    @Description("The number of bytes (or chars) the phase produced")
+    @DataAmount
+    long bytes;
+
+    @Label("Allocated")
+    @Description("The number of bytes the phase allocated, without the phases it contains")
+    @DataAmount
+    long allocated;
+
+    /**
+     * Begins an event, if a recording is interested in it.
+     *
+     * @return the event, or `null` when no recording is interested in it.
+     */
+    static Object start() {
+
+        StatsEvent event = new StatsEvent();
+
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object begun, Stats.Phase phase, String grammar, String rule, long bytes, long allocated) {
+
+        StatsEvent event = (StatsEvent) begun;
+
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.phase = phase.getLabel();
+            event.grammar = grammar;
+            event.rule = rule;
+            event.bytes = bytes;
+            event.allocated = allocated;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package nl.bigo.rrdantlr4;
+
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.DocumentLoader;
+import org.apache.batik.bridge.GVTBuilder;
+import org.apache.batik.bridge.UserAgent;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.dom.svg.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.w3c.dom.svg.SVGDocument;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Dimension2D;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * A SVG diagram turned into a Batik graphics tree, which can be painted
+ * on any `Graphics2D`: as vectors on a PDF page, for example. It must be
+ * closed once it has been painted.
+ */
+final class SvgGraphics implements Closeable {
+
+    private final BridgeContext context;
+    private final DocumentLoader loader;
+    private final GraphicsNode node;
+    private final float width;
+    private final float height;
+
+    private SvgGraphics(BridgeContext context, DocumentLoader loader, GraphicsNode node, Dimension2D size) {
+        this.context = context;
+        this.loader = loader;
+        this.node = node;
+        this.width = (float) size.getWidth();
+        this.height = (float) size.getHeight();
+    }
+
+    /**
+     * Parses a SVG diagram into a DOM.
+     *
+     * @param svg
+     *         the SVG diagram, as created by `DiagramGenerator.getSVG(String)`.
+     * @param name
+     *         the name of the diagram, used in error messages.
+     *
+     * @return the DOM of the diagram.
+     *
+     * @throws IOException
+     *         when the SVG is not well-formed.
+     */
+    static SVGDocument parse(String svg, String name) throws IOException {
+        // A factory is cheap, but cannot be used by more than one thread.
+        SAXSVGDocumentFactory factory = new SAXSVGDocumentFactory(XMLResourceDescriptor.getXMLParserClassName());
+        return factory.createSVGDocument("file:/" + name + ".svg", new StringReader(svg));
+    }
+
+    /**
+     * Builds the graphics tree of a SVG diagram.
+     *
+     * @param document
+     *         the DOM of the diagram.
+     *
+     * @return the graphics tree of the diagram, and its size.
+     */
+    static SvgGraphics build(SVGDocument document) {
+
+        UserAgent userAgent = new UserAgentAdapter();
+        DocumentLoader loader = new DocumentLoader(userAgent);
+        BridgeContext context = new BridgeContext(userAgent, loader);
+
+        // The diagrams have no scripts or animations: there is no need to
+        // keep the DOM and the graphics tree in sync.
+        context.setDynamicState(BridgeContext.STATIC);
+
+        try {
+            return new SvgGraphics(context, loader, new GVTBuilder().build(context, document), context.getDocumentSize());
+        }
+        catch (RuntimeException e) {
+            context.dispose();
+            loader.dispose();
+            throw e;
+        }
+    }
+
+    float getWidth() {
+        return width;
+    }
+
+    float getHeight() {
+        return height;
+    }
+
+    /**
+     * Paints the diagram, with its top left corner at the origin.
+     *
+     * @param graphics
+     *         the graphics to paint the diagram on.
+     */
+    void paint(Graphics2D graphics) {
+        node.paint(graphics);
+    }
+
+    @Override
+    public void close() {
+        context.dispose();
+        loader.dispose();
+    }
+}
@@ -0,0 +1,433 @@
+package nl.bigo.rrdantlr4.railroad;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the JavaScript DSL that `RuleVisitor` produces, for example
+ * `Diagram(Choice(0, Sequence(Terminal('\'a\''), NonTerminal('b')))).toString()`,
+ * and creates the corresponding diagram without evaluating any script.
+ *
+ * Only the subset of JavaScript the DSL consists of is supported: calls
+ * to the functions exported by `railroad-diagram.js`, single quoted
+ * string literals (with all escape sequences JavaScript supports) and
+ * integers.
+ */
+public final class DslParser {
+
+    private final String dsl;
+    private int index;
+
+    private DslParser(String dsl) {
+        this.dsl = dsl;
+        this.index = 0;
+    }
+
+    /**
+     * Parses the provided DSL into a diagram.
+     *
+     * @param dsl
+     *         the DSL to parse.
+     *
+     * @return the diagram described by the DSL.
+     *
+     * @throws IllegalArgumentException
+     *         when the DSL is not valid.
+     */
+    public static Railroad.Diagram parse(String dsl) {
+
+        DslParser parser = new DslParser(dsl);
+
+        parser.skipSpaces();
+        parser.expectWord("Diagram");
+        Railroad.Diagram diagram = Railroad.diagram(parser.arguments());
+        parser.skipSpaces();
+
+        // The DSL ends with a call to `toString()` on the diagram.
+        if (parser.peek() == '.') {
+            parser.index++;
+            parser.skipSpaces();
+            parser.expectWord("toString");
+            parser.skipSpaces();
+            parser.expect('(');
+            parser.skipSpaces();
+            parser.expect(')');
+            parser.skipSpaces();
+        }
+
+        if (parser.peek() == ';') {
+            parser.index++;
+            parser.skipSpaces();
+        }
+
+        if (parser.index < dsl.length()) {
+            throw parser.error("unexpected input");
+        }
+
+        return diagram;
+    }
+
+    private Railroad.Item item() {
+
+        skipSpaces();
+
+        if (peek() == '\'' || peek() == '"') {
+            // Strings are implicitly wrapped in a Terminal.
+            return Railroad.terminal(string());
+        }
+
+        int start = index;
+        String name = word();
+        List<Object> arguments = argumentValues();
+
+        if (name.equals("Sequence")) {
+            return Railroad.sequence(items(arguments, 0, name));
+        }
+        else if (name.equals("Choice")) {
+            return Railroad.choice(integer(arguments, name), items(arguments, 1, name));
+        }
+        else if (name.equals("Optional")) {
+            return Railroad.optional(single(arguments, name), skip(arguments, 1, name));
+        }
+        else if (name.equals("OneOrMore")) {
+            return arguments.size() > 1 ?
+                    Railroad.oneOrMore(itemAt(arguments, 0, name), itemAt(arguments, 1, name)) :
+                    Railroad.oneOrMore(single(arguments, name));
+        }
+        else if (name.equals("ZeroOrMore")) {
+            Railroad.Item rep = arguments.size() > 1 ? itemAt(arguments, 1, name) : Railroad.skip();
+            return Railroad.zeroOrMore(itemAt(arguments, 0, name), rep, skip(arguments, 2, name));
+        }
+        else if (name.equals("Terminal")) {
+            return Railroad.terminal(text(arguments, name));
+        }
+        else if (name.equals("NonTerminal")) {
+            return Railroad.nonTerminal(text(arguments, name));
+        }
+        else if (name.equals("Comment")) {
+            return Railroad.comment(text(arguments, name));
+        }
+        else if (name.equals("Skip")) {
+            return Railroad.skip();
+        }
+
+        index = start;
+        throw error("unknown function: " + name);
+    }
+
+    private List<Railroad.Item> arguments() {
+        return items(argumentValues(), 0, "Diagram");
+    }
+
+    // Parses `( arg (, arg)* )` where each arg is a call, a string or an integer.
+    private List<Object> argumentValues() {
+
+        List<Object> values = new ArrayList<Object>();
+
+        skipSpaces();
+        expect('(');
+        skipSpaces();
+
+        if (peek() == ')') {
+            index++;
+            return values;
+        }
+
+        while (true) {
+
+            skipSpaces();
+
+            char ch = peek();
+
+            if (ch == '\'' || ch == '"') {
+                values.add(string());
+            }
+            else if (ch >= '0' && ch <= '9') {
+                int start = index;
+                while (peek() >= '0' && peek() <= '9') {
+                    index++;
+                }
+                values.add(Integer.valueOf(dsl.substring(start, index)));
+            }
+            else {
+                values.add(item());
+            }
+
+            skipSpaces();
+
+            if (peek() == ',') {
+                index++;
+            }
+            else {
+                expect(')');
+                return values;
+            }
+        }
+    }
+
+    private List<Railroad.Item> items(List<Object> arguments, int from, String function) {
+
+        List<Railroad.Item> items = new ArrayList<Railroad.Item>(Math.max(arguments.size() - from, 0));
+
+        for (int i = from; i < arguments.size(); i++) {
+            items.add(itemAt(arguments, i, function));
+        }
+
+        return items;
+    }
+
+    private Railroad.Item itemAt(List<Object> arguments, int i, String function) {
+
+        if (i >= arguments.size()) {
+            throw error(function + "() expects an item as argument " + (i + 1));
+        }
+
+        Object argument = arguments.get(i);
+
+        if (argument instanceof String) {
+            return Railroad.terminal((String) argument);
+        }
+        else if (argument instanceof Railroad.Item) {
+            return (Railroad.Item) argument;
+        }
+
+        throw error(function + "() expects an item as argument " + (i + 1) + ", found: " + argument);
+    }
+
+    private Railroad.Item single(List<Object> arguments, String function) {
+        return itemAt(arguments, 0, function);
+    }
+
+    private int integer(List<Object> arguments, String function) {
+
+        if (arguments.isEmpty() || !(arguments.get(0) instanceof Integer)) {
+            throw error(function + "() expects an integer as first argument");
+        }
+
+        return (Integer) arguments.get(0);
+    }
+
+    private boolean skip(List<Object> arguments, int i, String function) {
+
+        if (i >= arguments.size()) {
+            return false;
+        }
+
+        if ("skip".equals(arguments.get(i))) {
+            return true;
+        }
+
+        throw error("Unknown value for " + function + "()'s 'skip' argument.");
+    }
+
+    private String text(List<Object> arguments, String function) {
+
+        if (arguments.size() != 1 || !(arguments.get(0) instanceof String)) {
+            throw error(function + "() expects a single string argument");
+        }
+
+        return (String) arguments.get(0);
+    }
+
+    /**
+     * Interprets the escape sequences in `text` the way JavaScript does
+     * for the contents of a string literal.
+     *
+     * @param text
+     *         the contents of a JavaScript string literal, without quotes.
+     *
+     * @return the value of the string literal.
+     *
+     * @throws IllegalArgumentException
+     *         when `text` contains an invalid escape sequence.
+     */
+    public static String unescape(String text) {
+
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+
+        return new DslParser(text).characters(-1);
+    }
+
+    // Parses a JavaScript string literal and returns its value.
+    private String string() {
+        char quote = dsl.charAt(index++);
+        return characters(quote);
+    }
+
+    // Reads characters up to the (unescaped) `terminator`, or up to the
+    // end of the input when `terminator` is -1, and returns their value.
+    private String characters(int terminator) {
+
+        StringBuilder builder = new StringBuilder();
+
+        while (true) {
+
+            if (index >= dsl.length()) {
+                if (terminator < 0) {
+                    return builder.toString();
+                }
+                throw error("unterminated string");
+            }
+
+            char ch = dsl.charAt(index++);
+
+            if (ch == terminator) {
+                return builder.toString();
+            }
+
+            if (terminator >= 0 && (ch == '\n' || ch == '\r')) {
+                throw error("unterminated string");
+            }
+
+            if (ch != '\\') {
+                builder.append(ch);
+                continue;
+            }
+
+            if (index >= dsl.length()) {
+                throw error("unterminated string");
+            }
+
+            char escaped = dsl.charAt(index++);
+
+            switch (escaped) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'v':
+                    builder.append('\u000B');
+                    break;
+                case 'x':
+                    builder.append((char) hex(2));
+                    break;
+                case 'u':
+                    if (peek() == '{') {
+                        index++;
+                        int end = dsl.indexOf('}', index);
+                        if (end < 0) {
+                            throw error("invalid Unicode escape sequence");
+                        }
+                        int codePoint = hex(end - index);
+                        index++;
+                        builder.appendCodePoint(codePoint);
+                    }
+                    else {
+                        builder.append((char) hex(4));
+                    }
+                    break;
+                case '\r':
+                    // A line continuation.
+                    if (peek() == '\n') {
+                        index++;
+                    }
+                    break;
+                case '\n':
+                case '\u2028':
+                case '\u2029':
+                    break;
+                default:
+                    if (escaped >= '0' && escaped <= '7') {
+                        builder.append((char) octal(escaped));
+                    }
+                    else {
+                        // Any other escaped character stands for itself.
+                        builder.append(escaped);
+                    }
+            }
+        }
+    }
+
+    private int hex(int digits) {
+
+        if (digits <= 0 || index + digits > dsl.length()) {
+            throw error("invalid hexadecimal escape sequence");
+        }
+
+        int value = 0;
+
+        for (int i = 0; i < digits; i++) {
+            int digit = Character.digit(dsl.charAt(index++), 16);
+            if (digit < 0) {
+                throw error("invalid hexadecimal escape sequence");
+            }
+            value = value * 16 + digit;
+        }
+
+        return value;
+    }
+
+    // Legacy octal escapes: `\0` up to `\377`.
+    private int octal(char first) {
+
+        int value = first - '0';
+        int maxDigits = first <= '3' ? 2 : 1;
+
+        for (int i = 0; i < maxDigits && peek() >= '0' && peek() <= '7'; i++) {
+            value = value * 8 + (dsl.charAt(index++) - '0');
+        }
+
+        return value;
+    }
+
+    private String word() {
+
+        int start = index;
+
+        while (index < dsl.length() && Character.isJavaIdentifierPart(dsl.charAt(index))) {
+            index++;
+        }
+
+        if (start == index) {
+            throw error("expected a function name");
+        }
+
+        return dsl.substring(start, index);
+    }
+
+    private void expectWord(String expected) {
+
+        int start = index;
+
+        if (!word().equals(expected)) {
+            index = start;
+            throw error("expected: " + expected);
+        }
+    }
+
+    private void expect(char expected) {
+
+        if (peek() != expected) {
+            throw error("expected: '" + expected + "'");
+        }
+
+        index++;
+    }
+
+    private char peek() {
+        return index < dsl.length() ? dsl.charAt(index) : '\0';
+    }
+
+    private void skipSpaces() {
+        while (index < dsl.length() && Character.isWhitespace(dsl.charAt(index))) {
+            index++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at index " + index + " of: " + dsl);
+    }
+}
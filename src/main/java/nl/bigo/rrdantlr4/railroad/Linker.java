@@ -0,0 +1,46 @@
+package nl.bigo.rrdantlr4.railroad;
+
+/**
+ * Decides which terminals and non-terminals of a diagram are links.
+ * When a `Linker` returns a reference for a text, its `<text>` element
+ * is wrapped in an `<a xlink:href="...">` element while the diagram is
+ * written, so no pass over the finished SVG is needed.
+ */
+public interface Linker {
+
+    /**
+     * A linker that does not link anything.
+     */
+    Linker NONE = new Linker() {
+        @Override
+        public String href(String text) {
+            return null;
+        }
+
+        @Override
+        public String target() {
+            return null;
+        }
+    };
+
+    /**
+     * Returns the reference the text of a terminal or non-terminal links
+     * to, or `null` when it is not a link.
+     *
+     * @param text
+     *         the text of a terminal or non-terminal, as it is displayed.
+     *
+     * @return the reference to link to, or `null` when the text is not
+     * a link.
+     */
+    String href(String text);
+
+    /**
+     * Returns the browsing context the links open in, like `_top` for
+     * a diagram that is embedded in a page as a separate document.
+     *
+     * @return the target of all links, or `null` to open them in the
+     * context that shows the diagram.
+     */
+    String target();
+}
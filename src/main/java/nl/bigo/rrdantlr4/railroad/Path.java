@@ -0,0 +1,186 @@
+package nl.bigo.rrdantlr4.railroad;
+
+/**
+ * The Java counterpart of `Path` from `railroad-diagram.js`: collects
+ * the `d` attribute of an SVG path.
+ *
+ * The commands are kept, not their text, so a minifying `SvgWriter` can
+ * merge and drop segments when the path is written.
+ */
+final class Path {
+
+    // The commands of the path, one char per command, and the numbers
+    // they take: two for `M` and `m`, one for `h` and `v`, seven for `a`.
+    private final StringBuilder commands;
+    private double[] values;
+    private int count;
+
+    Path(double x, double y) {
+        this.commands = new StringBuilder(8);
+        this.values = new double[16];
+        this.count = 0;
+        command('M', x, y);
+    }
+
+    Path h(double value) {
+        return command('h', value);
+    }
+
+    Path right(double value) {
+        return h(value);
+    }
+
+    Path left(double value) {
+        return h(-value);
+    }
+
+    Path v(double value) {
+        return command('v', value);
+    }
+
+    Path down(double value) {
+        return v(value);
+    }
+
+    Path up(double value) {
+        return v(-value);
+    }
+
+    Path m(double x, double y) {
+        return command('m', x, y);
+    }
+
+    Path arc(String sweep) {
+
+        int x = Railroad.ARC_RADIUS;
+        int y = Railroad.ARC_RADIUS;
+
+        if (sweep.charAt(0) == 'e' || sweep.charAt(1) == 'w') {
+            x *= -1;
+        }
+
+        if (sweep.charAt(0) == 's' || sweep.charAt(1) == 'n') {
+            y *= -1;
+        }
+
+        int cw = (sweep.equals("ne") || sweep.equals("es") || sweep.equals("sw") || sweep.equals("wn")) ? 1 : 0;
+
+        return command('a', Railroad.ARC_RADIUS, Railroad.ARC_RADIUS, 0, 0, cw, x, y);
+    }
+
+    private Path command(char command, double... arguments) {
+
+        if (count + arguments.length > values.length) {
+            double[] grown = new double[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, count);
+            values = grown;
+        }
+
+        commands.append(command);
+        System.arraycopy(arguments, 0, values, count, arguments.length);
+        count += arguments.length;
+
+        return this;
+    }
+
+    private static int arguments(char command) {
+        switch (command) {
+            case 'M':
+            case 'm':
+                return 2;
+            case 'a':
+                return 7;
+            default:
+                return 1;
+        }
+    }
+
+    void addTo(SvgWriter out) {
+
+        String d = out.isMinified() ? minified(out) : toString();
+
+        // A minified path without any segments draws nothing.
+        if (d != null) {
+            out.startTag("path").attribute("d", d).endStartTag().closeTag("path");
+        }
+    }
+
+    // The `d` attribute as `railroad-diagram.js` writes it: the numbers
+    // of a command separated by spaces, commands directly after them.
+    @Override
+    public String toString() {
+
+        StringBuilder d = new StringBuilder(48);
+        int value = 0;
+
+        for (int i = 0; i < commands.length(); i++) {
+
+            char command = commands.charAt(i);
+            d.append(command);
+
+            for (int n = arguments(command); n > 0; n--) {
+                d.append(SvgWriter.format(values[value++]));
+                if (n > 1) {
+                    d.append(' ');
+                }
+            }
+        }
+
+        return d.toString();
+    }
+
+    // The shortest `d` attribute drawing the same: consecutive horizontal
+    // (or vertical) lines in the same direction are merged, empty lines
+    // dropped, and a number is only separated from the previous one when
+    // it is not negative. Returns `null` when nothing is left to draw.
+    private String minified(SvgWriter out) {
+
+        StringBuilder d = new StringBuilder(48);
+        boolean draws = false;
+        int value = 0;
+
+        for (int i = 0; i < commands.length(); i++) {
+
+            char command = commands.charAt(i);
+            int n = arguments(command);
+
+            if (command == 'h' || command == 'v') {
+
+                double length = values[value++];
+
+                // Only lines in the same direction: a line that goes back
+                // over another one is drawn too.
+                while (i + 1 < commands.length() && commands.charAt(i + 1) == command
+                        && (values[value] < 0) == (length < 0)) {
+                    length += values[value++];
+                    i++;
+                }
+
+                String number = out.formatNumber(length);
+
+                if (!number.equals("0")) {
+                    d.append(command).append(number);
+                    draws = true;
+                }
+
+                continue;
+            }
+
+            d.append(command);
+            draws |= command == 'a';
+
+            for (int first = value; value < first + n; value++) {
+
+                String number = out.formatNumber(values[value]);
+
+                if (value > first && number.charAt(0) != '-') {
+                    d.append(' ');
+                }
+
+                d.append(number);
+            }
+        }
+
+        return draws ? d.toString() : null;
+    }
+}
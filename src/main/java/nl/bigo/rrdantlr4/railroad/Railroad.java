@@ -0,0 +1,703 @@
+package nl.bigo.rrdantlr4.railroad;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Java port of the layout and SVG emission of `railroad-diagram.js`
+ * [1]. Given the same input, the diagrams created by this class are
+ * byte-for-byte the same as the ones created by the JavaScript library,
+ * without the need of a script engine.
+ *
+ * The factory methods of this class mirror the functions exported by
+ * the JavaScript library.
+ *
+ * [1] https://github.com/tabatkins/railroad-diagrams
+ */
+public final class Railroad {
+
+    // The configuration constants passed into the JavaScript module.
+    static final int VERTICAL_SEPARATION = 8;
+    static final int ARC_RADIUS = 10;
+    static final String DIAGRAM_CLASS = "railroad-diagram";
+    static final boolean STROKE_ODD_PIXEL_LENGTH = true;
+
+    static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+    static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+
+    private Railroad() {
+    }
+
+    public static Diagram diagram(Item... items) {
+        return new Diagram(Arrays.asList(items));
+    }
+
+    public static Diagram diagram(List<Item> items) {
+        return new Diagram(items);
+    }
+
+    public static Item sequence(Item... items) {
+        return new Sequence(Arrays.asList(items));
+    }
+
+    public static Item sequence(List<Item> items) {
+        return new Sequence(items);
+    }
+
+    public static Item choice(int normal, Item... items) {
+        return new Choice(normal, Arrays.asList(items));
+    }
+
+    public static Item choice(int normal, List<Item> items) {
+        return new Choice(normal, items);
+    }
+
+    public static Item optional(Item item) {
+        return optional(item, false);
+    }
+
+    public static Item optional(Item item, boolean skip) {
+        return new Choice(skip ? 0 : 1, Arrays.asList(skip(), item));
+    }
+
+    public static Item oneOrMore(Item item) {
+        return new OneOrMore(item, skip());
+    }
+
+    public static Item oneOrMore(Item item, Item rep) {
+        return new OneOrMore(item, rep);
+    }
+
+    public static Item zeroOrMore(Item item) {
+        return optional(oneOrMore(item));
+    }
+
+    public static Item zeroOrMore(Item item, Item rep, boolean skip) {
+        return optional(oneOrMore(item, rep), skip);
+    }
+
+    public static Item terminal(String text) {
+        return new Terminal(text);
+    }
+
+    public static Item nonTerminal(String text) {
+        return new NonTerminal(text);
+    }
+
+    public static Item comment(String text) {
+        return new Comment(text);
+    }
+
+    public static Item skip() {
+        return new Skip();
+    }
+
+    // Diagram.INTERNAL_ALIGNMENT is 'center': divide the gap equally
+    // over both sides.
+    private static double gap(double outer, double inner) {
+        return (outer - inner) / 2;
+    }
+
+    /**
+     * The base of all elements that can be placed inside a diagram.
+     * Items are immutable once created: formatting one only writes its
+     * SVG to the provided writer, so an item can be formatted any
+     * number of times.
+     */
+    public static abstract class Item {
+
+        private static final Item[] NO_ITEMS = new Item[0];
+
+        final double width;
+        final double up;
+        final double down;
+
+        Item(double width, double up, double down) {
+            this.width = width;
+            this.up = up;
+            this.down = down;
+        }
+
+        boolean needsSpace() {
+            return false;
+        }
+
+        // The horizontal space this item takes up in a sequence.
+        final double spacedWidth() {
+            return width + (needsSpace() ? 20 : 0);
+        }
+
+        abstract void format(double x, double y, double width, SvgWriter out);
+
+        // The items this item is made of.
+        Item[] children() {
+            return NO_ITEMS;
+        }
+
+        // Formats this item or, when the writer has a symbol for it, a
+        // `<use>` of that symbol. A symbol holds the item at its own
+        // width, so the gaps of a wider item are drawn around the `<use>`.
+        final void draw(double x, double y, double width, SvgWriter out) {
+
+            String symbol = out.symbol(this);
+
+            if (symbol == null) {
+                format(x, y, width, out);
+                return;
+            }
+
+            if (width > this.width) {
+                x = formatGaps(x, y, width, out);
+            }
+
+            out.startTag("use").attribute("xlink:href", "#" + symbol).attribute("x", x).attribute("y", y)
+                    .endStartTag().closeTag("use");
+        }
+
+        // Formats this item and the 10px connectors surrounding items
+        // that need space, and returns the x position after them.
+        final double formatSpaced(double x, double y, SvgWriter out) {
+
+            if (needsSpace()) {
+                new Path(x, y).h(10).addTo(out);
+                x += 10;
+            }
+
+            draw(x, y, width, out);
+            x += width;
+
+            if (needsSpace()) {
+                new Path(x, y).h(10).addTo(out);
+                x += 10;
+            }
+
+            return x;
+        }
+
+        // Hooks up the two sides if an item is narrower than its stated
+        // width, and returns the x position the item itself starts at.
+        final double formatGaps(double x, double y, double width, SvgWriter out) {
+
+            double gap = gap(width, this.width);
+
+            new Path(x, y).h(gap).addTo(out);
+            new Path(x + gap + this.width, y).h(gap).addTo(out);
+
+            return x + gap;
+        }
+    }
+
+    /**
+     * The root of a railroad diagram. Its `toString()` returns the SVG
+     * of the diagram, `toSvg(Linker)` the SVG with links.
+     */
+    public static final class Diagram {
+
+        private final Item[] items;
+        private final double width;
+        private final double up;
+        private final double down;
+
+        Diagram(List<Item> items) {
+
+            this.items = new Item[items.size() + 2];
+            this.items[0] = new Start();
+            this.items[this.items.length - 1] = new End();
+
+            for (int i = 0; i < items.size(); i++) {
+                this.items[i + 1] = items.get(i);
+            }
+
+            double width = 0;
+            double up = Double.NEGATIVE_INFINITY;
+            double down = Double.NEGATIVE_INFINITY;
+
+            for (Item item : this.items) {
+                width += item.spacedWidth();
+                up = Math.max(up, item.up);
+                down = Math.max(down, item.down);
+            }
+
+            this.width = width + 1;
+            this.up = up;
+            this.down = down;
+        }
+
+        private void format(SvgWriter out, boolean document, String styleSheet) {
+
+            final int padding = 20;
+
+            double width = this.width + padding + padding;
+            double height = this.up + this.down + padding + padding;
+
+            out.startTag("svg");
+
+            if (document) {
+                out.attribute("xmlns", SVG_NAMESPACE).attribute("xmlns:xlink", XLINK_NAMESPACE);
+            }
+
+            out.attribute("class", DIAGRAM_CLASS)
+                    .attribute("width", width)
+                    .attribute("height", height)
+                    .attribute("viewBox", "0 0 " + out.formatNumber(width) + " " + out.formatNumber(height))
+                    .endStartTag();
+
+            if (styleSheet != null) {
+                out.startTag("style").attribute("type", "text/css").raw(">").raw(styleSheet).closeTag("style");
+            }
+
+            if (STROKE_ODD_PIXEL_LENGTH) {
+                out.startTag("g").attribute("transform", "translate(.5 .5)").endStartTag();
+            }
+            else {
+                out.openTag("g");
+            }
+
+            double x = padding;
+            double y = padding + this.up;
+
+            for (Item item : this.items) {
+                x = item.formatSpaced(x, y, out);
+            }
+
+            out.closeTag("g").closeTag("svg");
+        }
+
+        /**
+         * Returns the SVG of this diagram, in which the terminals and
+         * non-terminals `linker` has a reference for are links.
+         *
+         * @param linker
+         *         decides which terminals and non-terminals are links.
+         *
+         * @return the SVG of this diagram.
+         */
+        public String toSvg(Linker linker) {
+            SvgWriter out = new SvgWriter(linker);
+            format(out, false, null);
+            return out.toString();
+        }
+
+        /**
+         * Returns the SVG of this diagram as a document of its own: with
+         * the SVG and XLink namespaces declared, and optionally with a
+         * style sheet.
+         *
+         * @param linker
+         *         decides which terminals and non-terminals are links.
+         * @param styleSheet
+         *         the CSS put in a `<style>` element in front of the
+         *         diagram, or `null` when the diagram is styled by the page
+         *         it is embedded in.
+         * @param minified
+         *         `true` to leave out the new lines, round all numbers to
+         *         a fixed precision and shorten the path data.
+         *
+         * @return the SVG document of this diagram.
+         */
+        public String toSvg(Linker linker, String styleSheet, boolean minified) {
+            return toSvg(linker, styleSheet, minified, null);
+        }
+
+        /**
+         * Returns the SVG of this diagram as a document of its own, in
+         * which the items `symbols` has a symbol for are a `<use>` of that
+         * symbol. The symbols themselves are not part of the SVG, see
+         * `SymbolTable.toSvg()`.
+         *
+         * @param linker
+         *         decides which terminals and non-terminals are links.
+         * @param styleSheet
+         *         the CSS put in a `<style>` element in front of the
+         *         diagram, or `null` when the diagram is styled by the page
+         *         it is embedded in.
+         * @param minified
+         *         `true` to leave out the new lines, round all numbers to
+         *         a fixed precision and shorten the path data.
+         * @param symbols
+         *         the items shared with the other diagrams of a page, or
+         *         `null` to draw every item.
+         *
+         * @return the SVG document of this diagram.
+         */
+        public String toSvg(Linker linker, String styleSheet, boolean minified, SymbolTable symbols) {
+            SvgWriter out = new SvgWriter(linker, minified, symbols);
+            format(out, true, styleSheet);
+            return out.toString();
+        }
+
+        // The items of this diagram, including its start and end.
+        Item[] items() {
+            return items;
+        }
+
+        @Override
+        public String toString() {
+            return toSvg(Linker.NONE);
+        }
+    }
+
+    static final class Sequence extends Item {
+
+        private final Item[] items;
+
+        Sequence(List<Item> items) {
+            this(items.toArray(new Item[items.size()]));
+        }
+
+        private Sequence(Item[] items) {
+            super(width(items), up(items), down(items));
+            this.items = items;
+        }
+
+        private static double width(Item[] items) {
+            double width = 0;
+            for (Item item : items) {
+                width += item.spacedWidth();
+            }
+            return width;
+        }
+
+        private static double up(Item[] items) {
+            double up = 0;
+            for (Item item : items) {
+                up = Math.max(up, item.up);
+            }
+            return up;
+        }
+
+        private static double down(Item[] items) {
+            double down = 0;
+            for (Item item : items) {
+                down = Math.max(down, item.down);
+            }
+            return down;
+        }
+
+        @Override
+        Item[] children() {
+            return items;
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            out.openTag("g");
+
+            x = formatGaps(x, y, width, out);
+
+            for (Item item : this.items) {
+                x = item.formatSpaced(x, y, out);
+            }
+
+            out.closeTag("g");
+        }
+    }
+
+    static final class Choice extends Item {
+
+        private final int normal;
+        private final Item[] items;
+
+        Choice(int normal, List<Item> items) {
+            this(normal, items.toArray(new Item[items.size()]));
+        }
+
+        private Choice(int normal, Item[] items) {
+            super(width(items), up(normal, items), down(normal, items));
+            this.normal = normal;
+            this.items = items;
+        }
+
+        private static double width(Item[] items) {
+            double width = 0;
+            for (Item item : items) {
+                width = Math.max(width, item.width);
+            }
+            return width + ARC_RADIUS * 4;
+        }
+
+        private static double up(int normal, Item[] items) {
+            double up = 0;
+            for (int i = 0; i < items.length && i <= normal; i++) {
+                Item item = items[i];
+                if (i < normal) {
+                    up += Math.max(ARC_RADIUS, item.up + item.down + VERTICAL_SEPARATION);
+                }
+                else {
+                    up += Math.max(ARC_RADIUS, item.up);
+                }
+            }
+            return up;
+        }
+
+        private static double down(int normal, Item[] items) {
+            double down = 0;
+            for (int i = Math.max(normal, 0); i < items.length; i++) {
+                Item item = items[i];
+                if (i == normal) {
+                    down += Math.max(ARC_RADIUS, item.down);
+                }
+                else {
+                    down += Math.max(ARC_RADIUS, VERTICAL_SEPARATION + item.up + item.down);
+                }
+            }
+            return down;
+        }
+
+        @Override
+        Item[] children() {
+            return items;
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            out.openTag("g");
+
+            x = formatGaps(x, y, width, out);
+
+            int last = this.items.length - 1;
+            double innerWidth = this.width - ARC_RADIUS * 4;
+            double distanceFromY = 0;
+
+            // Do the elements that curve above
+            for (int i = this.normal - 1; i >= 0; i--) {
+                Item item = this.items[i];
+                if (i == this.normal - 1) {
+                    distanceFromY = Math.max(ARC_RADIUS * 2, this.items[i + 1].up + VERTICAL_SEPARATION + item.down);
+                }
+                new Path(x, y).arc("se").up(distanceFromY - ARC_RADIUS * 2).arc("wn").addTo(out);
+                item.draw(x + ARC_RADIUS * 2, y - distanceFromY, innerWidth, out);
+                new Path(x + ARC_RADIUS * 2 + innerWidth, y - distanceFromY).arc("ne").down(distanceFromY - ARC_RADIUS * 2).arc("ws").addTo(out);
+                distanceFromY += Math.max(ARC_RADIUS, item.up + VERTICAL_SEPARATION + (i == 0 ? 0 : this.items[i - 1].down));
+            }
+
+            // Do the straight-line path.
+            new Path(x, y).right(ARC_RADIUS * 2).addTo(out);
+            this.items[this.normal].draw(x + ARC_RADIUS * 2, y, innerWidth, out);
+            new Path(x + ARC_RADIUS * 2 + innerWidth, y).right(ARC_RADIUS * 2).addTo(out);
+
+            // Do the elements that curve below
+            for (int i = this.normal + 1; i <= last; i++) {
+                Item item = this.items[i];
+                if (i == this.normal + 1) {
+                    distanceFromY = Math.max(ARC_RADIUS * 2, this.items[i - 1].down + VERTICAL_SEPARATION + item.up);
+                }
+                new Path(x, y).arc("ne").down(distanceFromY - ARC_RADIUS * 2).arc("ws").addTo(out);
+                item.draw(x + ARC_RADIUS * 2, y + distanceFromY, innerWidth, out);
+                new Path(x + ARC_RADIUS * 2 + innerWidth, y + distanceFromY).arc("se").up(distanceFromY - ARC_RADIUS * 2).arc("wn").addTo(out);
+                distanceFromY += Math.max(ARC_RADIUS, item.down + VERTICAL_SEPARATION + (i == last ? 0 : this.items[i + 1].up));
+            }
+
+            out.closeTag("g");
+        }
+    }
+
+    static final class OneOrMore extends Item {
+
+        private final Item item;
+        private final Item rep;
+
+        OneOrMore(Item item, Item rep) {
+            super(Math.max(item.width, rep.width) + ARC_RADIUS * 2,
+                    item.up,
+                    Math.max(ARC_RADIUS * 2, item.down + VERTICAL_SEPARATION + rep.up + rep.down));
+            this.item = item;
+            this.rep = rep;
+        }
+
+        @Override
+        boolean needsSpace() {
+            return true;
+        }
+
+        @Override
+        Item[] children() {
+            return new Item[] { item, rep };
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            out.openTag("g");
+
+            x = formatGaps(x, y, width, out);
+
+            // Draw item
+            new Path(x, y).right(ARC_RADIUS).addTo(out);
+            this.item.draw(x + ARC_RADIUS, y, this.width - ARC_RADIUS * 2, out);
+            new Path(x + this.width - ARC_RADIUS, y).right(ARC_RADIUS).addTo(out);
+
+            // Draw repeat arc
+            double distanceFromY = Math.max(ARC_RADIUS * 2, this.item.down + VERTICAL_SEPARATION + this.rep.up);
+            new Path(x + ARC_RADIUS, y).arc("nw").down(distanceFromY - ARC_RADIUS * 2).arc("ws").addTo(out);
+            this.rep.draw(x + ARC_RADIUS, y + distanceFromY, this.width - ARC_RADIUS * 2, out);
+            new Path(x + this.width - ARC_RADIUS, y + distanceFromY).arc("se").up(distanceFromY - ARC_RADIUS * 2).arc("en").addTo(out);
+
+            out.closeTag("g");
+        }
+    }
+
+    static final class Start extends Item {
+
+        Start() {
+            super(20, 10, 10);
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            if (out.isMinified()) {
+                new Path(x, y - 10).v(20).m(10, -20).v(20).m(-10, -10).h(20.5).addTo(out);
+                return;
+            }
+
+            out.startTag("path")
+                    .attribute("d", "M " + SvgWriter.format(x) + " " + SvgWriter.format(y - 10) + " v 20 m 10 -20 v 20 m -10 -10 h 20.5")
+                    .endStartTag()
+                    .closeTag("path");
+        }
+    }
+
+    static final class End extends Item {
+
+        End() {
+            super(20, 10, 10);
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            if (out.isMinified()) {
+                new Path(x, y).h(20).m(-10, -10).v(20).m(10, -20).v(20).addTo(out);
+                return;
+            }
+
+            out.startTag("path")
+                    .attribute("d", "M " + SvgWriter.format(x) + " " + SvgWriter.format(y) + " h 20 m -10 -10 v 20 m 10 -20 v 20")
+                    .endStartTag()
+                    .closeTag("path");
+        }
+    }
+
+    static final class Terminal extends Item {
+
+        private final String text;
+
+        Terminal(String text) {
+            // Assume that each char is .5em, and that the em is 16px
+            super(text.length() * 8 + 20, 11, 11);
+            this.text = text;
+        }
+
+        @Override
+        boolean needsSpace() {
+            return true;
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            out.openTag("g");
+
+            x = formatGaps(x, y, width, out);
+
+            out.startTag("rect")
+                    .attribute("x", x)
+                    .attribute("y", y - 11)
+                    .attribute("width", this.width)
+                    .attribute("height", this.up + this.down)
+                    .attribute("rx", 10)
+                    .attribute("ry", 10)
+                    .endStartTag()
+                    .closeTag("rect");
+
+            out.linkableText(x + this.width / 2, y + 4, this.text);
+
+            out.closeTag("g");
+        }
+    }
+
+    static final class NonTerminal extends Item {
+
+        private final String text;
+
+        NonTerminal(String text) {
+            super(text.length() * 8 + 20, 11, 11);
+            this.text = text;
+        }
+
+        @Override
+        boolean needsSpace() {
+            return true;
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            out.openTag("g");
+
+            x = formatGaps(x, y, width, out);
+
+            out.startTag("rect")
+                    .attribute("x", x)
+                    .attribute("y", y - 11)
+                    .attribute("width", this.width)
+                    .attribute("height", this.up + this.down)
+                    .endStartTag()
+                    .closeTag("rect");
+
+            out.linkableText(x + this.width / 2, y + 4, this.text);
+
+            out.closeTag("g");
+        }
+    }
+
+    static final class Comment extends Item {
+
+        private final String text;
+
+        Comment(String text) {
+            super(text.length() * 7 + 10, 11, 11);
+            this.text = text;
+        }
+
+        @Override
+        boolean needsSpace() {
+            return true;
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+
+            out.openTag("g");
+
+            x = formatGaps(x, y, width, out);
+
+            out.startTag("text")
+                    .attribute("x", x + this.width / 2)
+                    .attribute("y", y + 5)
+                    .attribute("class", "comment")
+                    .endStartTag()
+                    .text(this.text)
+                    .closeTag("text");
+
+            out.closeTag("g");
+        }
+    }
+
+    static final class Skip extends Item {
+
+        Skip() {
+            super(0, 0, 0);
+        }
+
+        @Override
+        void format(double x, double y, double width, SvgWriter out) {
+            out.openTag("g");
+            new Path(x, y).right(width).addTo(out);
+            out.closeTag("g");
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package nl.bigo.rrdantlr4.railroad;
+
+import java.math.BigDecimal;
+
+/**
+ * Accumulates SVG markup in the exact format `FakeSVG.toString()` from
+ * `railroad-diagram.js` produces it: every opening tag is followed by a
+ * new line, as is every closing tag.
+ *
+ * A minifying writer leaves out those new lines, and writes numbers
+ * rounded to `PRECISION` decimals, without a leading zero.
+ *
+ * A writer with a `SymbolTable` writes a `<use>` of a symbol instead of
+ * the items the table has a symbol for.
+ */
+final class SvgWriter {
+
+    // The number of decimals a minifying writer rounds numbers to.
+    static final int PRECISION = 2;
+
+    private static final double SCALE = Math.pow(10, PRECISION);
+
+    private final StringBuilder builder;
+    private final Linker linker;
+    private final boolean minified;
+    private final SymbolTable symbols;
+
+    SvgWriter(Linker linker) {
+        this(linker, false);
+    }
+
+    SvgWriter(Linker linker, boolean minified) {
+        this(linker, minified, null);
+    }
+
+    SvgWriter(Linker linker, boolean minified, SymbolTable symbols) {
+        this.builder = new StringBuilder(1024);
+        this.linker = linker;
+        this.minified = minified;
+        this.symbols = symbols;
+    }
+
+    Linker getLinker() {
+        return linker;
+    }
+
+    boolean isMinified() {
+        return minified;
+    }
+
+    // The id of the symbol to use instead of formatting `item`, or `null`
+    // when it has to be formatted.
+    String symbol(Railroad.Item item) {
+        return symbols == null ? null : symbols.use(item, this);
+    }
+
+    SvgWriter openTag(String tagName) {
+        builder.append('<').append(tagName).append('>');
+        return newLine();
+    }
+
+    SvgWriter startTag(String tagName) {
+        builder.append('<').append(tagName);
+        return this;
+    }
+
+    SvgWriter attribute(String name, double value) {
+        builder.append(' ').append(name).append("=\"");
+        number(value);
+        builder.append('"');
+        return this;
+    }
+
+    SvgWriter attribute(String name, String value) {
+        builder.append(' ').append(name).append("=\"");
+        escape(value, true);
+        builder.append('"');
+        return this;
+    }
+
+    SvgWriter endStartTag() {
+        builder.append('>');
+        return newLine();
+    }
+
+    SvgWriter text(String text) {
+        escape(text, false);
+        return this;
+    }
+
+    SvgWriter closeTag(String tagName) {
+        builder.append("</").append(tagName).append('>');
+        return newLine();
+    }
+
+    private SvgWriter newLine() {
+        if (!minified) {
+            builder.append('\n');
+        }
+        return this;
+    }
+
+    // Writes the `<text>` element of a terminal or non-terminal, wrapped
+    // in a link when the linker has a reference for its text.
+    SvgWriter linkableText(double x, double y, String text) {
+
+        String href = linker.href(text);
+
+        if (href == null) {
+            return startTag("text").attribute("x", x).attribute("y", y).endStartTag().text(text).closeTag("text");
+        }
+
+        builder.append("<a xlink:href=\"");
+        escape(href, true);
+
+        if (linker.target() != null) {
+            builder.append("\" target=\"");
+            escape(linker.target(), true);
+        }
+
+        builder.append("\">");
+
+        startTag("text").attribute("x", x).attribute("y", y).endStartTag().text(text);
+
+        builder.append("</text></a>");
+        return newLine();
+    }
+
+    SvgWriter raw(String markup) {
+        builder.append(markup);
+        return this;
+    }
+
+    SvgWriter number(double value) {
+        builder.append(formatNumber(value));
+        return this;
+    }
+
+    /**
+     * Formats a number the way this writer writes it: as `format(double)`
+     * does, or rounded and without a leading zero when minifying.
+     *
+     * @param value
+     *         the number to format.
+     *
+     * @return the formatted number.
+     */
+    String formatNumber(double value) {
+
+        if (!minified) {
+            return format(value);
+        }
+
+        String number = format(Math.round(value * SCALE) / SCALE);
+
+        if (number.startsWith("0.")) {
+            return number.substring(1);
+        }
+
+        if (number.startsWith("-0.")) {
+            return "-" + number.substring(2);
+        }
+
+        return number;
+    }
+
+    /**
+     * Formats a number the way JavaScript's `Number.prototype.toString()`
+     * does for the values this library produces: integers without a
+     * fraction and all other values in their shortest plain notation.
+     *
+     * @param value
+     *         the number to format.
+     *
+     * @return the number formatted as JavaScript would.
+     */
+    static String format(double value) {
+
+        if (value == (long) value) {
+            // Also turns -0.0 into "0", like JavaScript does.
+            return Long.toString((long) value);
+        }
+
+        return new BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+    }
+
+    // Mirrors the replace-chains in `FakeSVG.toString()`: ampersands that
+    // do not start a character reference are escaped, quotes only inside
+    // attributes, `<` only inside text, and control characters are written
+    // as their JavaScript escape sequences.
+    private void escape(String text, boolean attribute) {
+
+        for (int i = 0; i < text.length(); i++) {
+
+            char ch = text.charAt(i);
+
+            switch (ch) {
+                case '&':
+                    if (i + 1 < text.length() && text.charAt(i + 1) == '#') {
+                        builder.append(ch);
+                    }
+                    else {
+                        builder.append("&amp;");
+                    }
+                    break;
+                case '"':
+                    builder.append(attribute ? "&quot;" : "\"");
+                    break;
+                case '<':
+                    builder.append(attribute ? "<" : "&lt;");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    builder.append(ch);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package nl.bigo.rrdantlr4.railroad;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The sub-diagrams that occur more than once in a set of diagrams, like
+ * the diagrams of all rules on a html page. Each of them is written once,
+ * as a `<symbol>`, and every diagram that contains it refers to that
+ * symbol with a `<use>`.
+ *
+ * Sub-diagrams are the same when they are the same `Item`: the renderer
+ * lays out identical parts of a grammar once and shares the result. Only
+ * items made of other items become symbols: a `<use>` is about as large
+ * as a single terminal.
+ *
+ * A table is not thread-safe, and belongs to the page it is written to:
+ * the ids of its symbols are unique within that page only.
+ */
+public final class SymbolTable {
+
+    private final String prefix;
+
+    // The number of times every item occurs, counting the items inside a
+    // repeated item only once: they end up in its symbol once.
+    private final Map<Railroad.Item, Integer> counts;
+
+    // The ids of the symbols that were written, by item.
+    private final Map<Railroad.Item, String> ids;
+
+    private final StringBuilder symbols;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param prefix
+     *         the prefix of the ids of the symbols, followed by `-` and a
+     *         number. It must not be the prefix of other ids in the page.
+     */
+    public SymbolTable(String prefix) {
+        this.prefix = prefix;
+        this.counts = new IdentityHashMap<Railroad.Item, Integer>();
+        this.ids = new IdentityHashMap<Railroad.Item, String>();
+        this.symbols = new StringBuilder();
+    }
+
+    /**
+     * Counts the items of a diagram. All diagrams have to be added before
+     * the first of them is written.
+     *
+     * @param diagram
+     *         a diagram that is written with this table.
+     */
+    public void add(Railroad.Diagram diagram) {
+        for (Railroad.Item item : diagram.items()) {
+            count(item);
+        }
+    }
+
+    private void count(Railroad.Item item) {
+
+        Integer count = counts.get(item);
+        counts.put(item, count == null ? 1 : count + 1);
+
+        if (count == null) {
+            for (Railroad.Item child : item.children()) {
+                count(child);
+            }
+        }
+    }
+
+    // Returns the id of the symbol of an item, writing the symbol when it
+    // is used for the first time, or `null` when the item does not occur
+    // often enough to be a symbol.
+    String use(Railroad.Item item, SvgWriter out) {
+
+        String id = ids.get(item);
+
+        if (id != null) {
+            return id;
+        }
+
+        Integer count = counts.get(item);
+
+        if (count == null || count < 2 || item.children().length == 0) {
+            return null;
+        }
+
+        id = prefix + "-" + (ids.size() + 1);
+        ids.put(item, id);
+
+        // The symbol holds the item at its own width, on a line through
+        // its origin. The symbols it uses itself are written before it.
+        SvgWriter symbol = new SvgWriter(out.getLinker(), out.isMinified(), this);
+
+        symbol.startTag("symbol").attribute("id", id).attribute("overflow", "visible").endStartTag();
+        item.format(0, 0, item.width, symbol);
+        symbol.closeTag("symbol");
+
+        symbols.append(symbol);
+
+        return id;
+    }
+
+    /**
+     * Returns the number of symbols that were written so far.
+     *
+     * @return the number of symbols that were written so far.
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Returns the symbols used by the diagrams written so far, in a SVG
+     * element that takes up no space and displays nothing itself. It can
+     * be put anywhere in the page, also after the diagrams using it.
+     *
+     * @return the SVG with all symbols, or the empty string when no
+     * diagram used a symbol.
+     */
+    public String toSvg() {
+
+        if (ids.isEmpty()) {
+            return "";
+        }
+
+        return "<svg xmlns=\"" + Railroad.SVG_NAMESPACE + "\" xmlns:xlink=\"" + Railroad.XLINK_NAMESPACE +
+                "\" class=\"" + Railroad.DIAGRAM_CLASS + "\" width=\"0\" height=\"0\" style=\"position:absolute\"><defs>" +
+                symbols + "</defs></svg>";
+    }
+}
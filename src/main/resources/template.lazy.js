@@ -0,0 +1,34 @@
+// Loads every diagram once it is about to scroll into view: the page is
+// laid out before any diagram is loaded.
+(function () {
+    var diagrams = document.querySelectorAll('object[data-diagram]');
+
+    function load(diagram) {
+        // An object does not (re)load when its `data` is set after it was
+        // inserted in all browsers: insert a loading copy instead.
+        var copy = diagram.cloneNode(true);
+        copy.setAttribute('data', diagram.getAttribute('data-diagram'));
+        copy.removeAttribute('data-diagram');
+        diagram.parentNode.replaceChild(copy, diagram);
+    }
+
+    if (!('IntersectionObserver' in window)) {
+        for (var i = 0; i < diagrams.length; i++) {
+            load(diagrams[i]);
+        }
+        return;
+    }
+
+    var observer = new IntersectionObserver(function (entries) {
+        entries.forEach(function (entry) {
+            if (entry.isIntersecting) {
+                observer.unobserve(entry.target);
+                load(entry.target);
+            }
+        });
+    }, { rootMargin: '500px 0px' });
+
+    for (var i = 0; i < diagrams.length; i++) {
+        observer.observe(diagrams[i]);
+    }
+})();
@@ -1,5 +1,6 @@
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import nl.bigo.rrdantlr4.GrammarSource;
 import org.junit.Test;
 
 import java.util.List;
@@ -64,4 +65,25 @@ public class CommentsParserTest {
         assertThat(ruleNameToDescription).isEqualTo(ImmutableMap.of("RULE_NAME", "RULE_DESCRIPTION"));
     }
 
+    @Test
+    public void it_should_find_the_same_comments_as_the_regular_expressions() {
+        String[] inputs = {
+            "/* <a> A */ /*/ <b> B */ /**/ /* <c> C",
+            "/* <a <b> x > y */ /* <> empty */ /* <d> /<e>* x */",
+            "/* <x> one */*/ two */ /*<y>*/",
+            "/* <a\n> x <b\n c> <d> */ /* <e> <<\n> */"
+        };
+
+        for (String input : inputs) {
+            assertThat(commentsMap(input)).as(input).isEqualTo(RegexCommentsParser.commentsMap(input));
+        }
+    }
+
+    @Test
+    public void it_should_find_the_same_comments_as_the_regular_expressions_in_grammars() throws Exception {
+        for (String grammar : new String[]{ "Java.g4", "IRI.g4", "Json.g4" }) {
+            String input = GrammarSource.load("src/test/resources/" + grammar).getText().toString();
+            assertThat(commentsMap(input)).as(grammar).isEqualTo(RegexCommentsParser.commentsMap(input));
+        }
+    }
 }
@@ -0,0 +1,101 @@
+import nl.bigo.rrdantlr4.DiagramCache;
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DiagramCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void it_should_key_entries_by_their_contents() {
+        assertThat(DiagramCache.key("svg", "a", "b")).isEqualTo(DiagramCache.key("svg", "a", "b"));
+        assertThat(DiagramCache.key("svg", "a", "b")).isNotEqualTo(DiagramCache.key("svg", "ab", ""));
+        assertThat(DiagramCache.key("svg", "a", "b")).isNotEqualTo(DiagramCache.key("png", "a", "b"));
+        assertThat(DiagramCache.key("svg", "a", "b")).endsWith(".svg");
+    }
+
+    @Test
+    public void it_should_count_hits_and_misses() throws Exception {
+        DiagramCache cache = new DiagramCache(folder.newFolder(), 1024);
+
+        assertThat(cache.getString("a.svg")).isNull();
+        cache.putString("a.svg", "<svg/>");
+        assertThat(cache.getString("a.svg")).isEqualTo("<svg/>");
+
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void it_should_evict_the_least_recently_used_entries() throws Exception {
+        DiagramCache cache = new DiagramCache(folder.newFolder(), 10);
+
+        cache.put("a.png", new byte[4]);
+        cache.put("b.png", new byte[4]);
+        cache.get("a.png");
+        cache.put("c.png", new byte[4]);
+
+        assertThat(cache.get("a.png")).isNotNull();
+        assertThat(cache.get("b.png")).isNull();
+        assertThat(cache.get("c.png")).isNotNull();
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(8);
+    }
+
+    @Test
+    public void it_should_keep_entries_between_runs() throws Exception {
+        File directory = folder.newFolder();
+
+        DiagramGenerator first = new DiagramGenerator("src/test/resources/Json.g4");
+        first.setCache(new DiagramCache(directory, 1024 * 1024));
+        String svg = first.getSVG("jsonValue");
+
+        DiagramGenerator second = new DiagramGenerator("src/test/resources/Json.g4");
+        second.setCache(new DiagramCache(directory, 1024 * 1024));
+
+        assertThat(second.getSVG("jsonValue")).isEqualTo(svg);
+        assertThat(second.getLinkedSVG("jsonValue")).isEqualTo(first.getLinkedSVG("jsonValue"));
+        assertThat(second.getCache().getHits()).isEqualTo(2);
+        assertThat(second.getCache().getMisses()).isEqualTo(0);
+    }
+
+    @Test
+    public void it_should_take_the_diagrams_of_the_html_page_from_the_cache() throws Exception {
+        File directory = folder.newFolder();
+
+        DiagramGenerator first = new DiagramGenerator("src/test/resources/Json.g4");
+        first.setCache(new DiagramCache(directory, 1024 * 1024));
+        String html = first.getHtml("index.html", false);
+
+        DiagramGenerator second = new DiagramGenerator("src/test/resources/Json.g4");
+        second.setCache(new DiagramCache(directory, 1024 * 1024));
+
+        assertThat(second.getHtml("index.html", false)).isEqualTo(html);
+        assertThat(second.getCache().getHits()).isEqualTo(second.getRuleNames().size());
+        assertThat(second.getCache().getMisses()).isEqualTo(0);
+    }
+
+    @Test
+    public void it_should_key_the_png_images_by_their_scale_and_compression() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        generator.setCache(new DiagramCache(folder.newFolder(), 1024 * 1024));
+
+        byte[] compressed = generator.getPNG("jsonValue");
+
+        generator.setPngCompression(0);
+        byte[] uncompressed = generator.getPNG("jsonValue");
+
+        generator.setPngScale(2);
+        byte[] scaled = generator.getPNG("jsonValue");
+
+        assertThat(uncompressed.length).isGreaterThan(compressed.length);
+        assertThat(scaled.length).isGreaterThan(uncompressed.length);
+    }
+}
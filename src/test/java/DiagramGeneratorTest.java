@@ -0,0 +1,250 @@
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import nl.bigo.rrdantlr4.PdfMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DiagramGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Lets a generator write to a new, empty directory: only the files a
+    // test writes itself are in it.
+    private File outputDir(DiagramGenerator generator) throws Exception {
+        File outputDir = new File(folder.newFolder(), generator.getGrammarName());
+        generator.setOutputDir(outputDir);
+        return outputDir;
+    }
+
+    @Test
+    public void it_should_create_png_images_in_parallel() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        File outputDir = outputDir(generator);
+
+        Map<String, Throwable> failures = generator.createDiagrams(generator.getRuleNames(), 3);
+
+        assertThat(failures).isEmpty();
+
+        for (String rule : generator.getRuleNames()) {
+            assertThat(new File(outputDir, rule + ".png").isFile()).as(rule).isTrue();
+        }
+    }
+
+    @Test
+    public void it_should_collect_the_rules_that_could_not_be_rasterized() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        outputDir(generator);
+
+        Map<String, Throwable> failures = generator.createDiagrams(Arrays.asList("jsonText", "no_such_rule", "jsonValue"), 2);
+
+        assertThat(failures.keySet()).containsOnly("no_such_rule");
+    }
+
+    @Test
+    public void it_should_stream_a_linked_html_page() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+
+        StringWriter html = new StringWriter();
+        generator.writeHtml(html, false);
+
+        assertThat(html.toString()).isEqualTo(generator.getHtml("index.html", false));
+        assertThat(html.toString()).startsWith("<!DOCTYPE html");
+        assertThat(html.toString()).contains("<title>Json.g4</title>");
+        assertThat(html.toString()).contains("<td id=\"Json.g4_jsonValue\">");
+        assertThat(html.toString()).contains("<a xlink:href=\"#Json.g4_jsonValue\"><text ");
+        assertThat(html.toString()).doesNotContain("${");
+        assertThat(html.toString().trim()).endsWith("</html>");
+    }
+
+    @Test
+    public void it_should_read_the_comments_of_a_grammar_passed_as_a_string() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("grammar T;\n/* <a> The start rule. */\na : 'x' ;\n");
+
+        assertThat(generator.getRuleNames()).containsOnly("a");
+        assertThat(generator.getHtml("index.html", true)).contains("The start rule.");
+    }
+
+    @Test
+    public void it_should_draw_a_vector_pdf_without_png_images() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        generator.writeVectorPdf(generator.getRuleNames(), pdf);
+
+        assertThat(new String(pdf.toByteArray(), 0, 5, "ISO-8859-1")).isEqualTo("%PDF-");
+        assertThat(new String(pdf.toByteArray(), "ISO-8859-1").trim()).endsWith("%%EOF");
+    }
+
+    @Test
+    public void it_should_embed_the_png_images_in_the_pdf_while_creating_them() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        File outputDir = outputDir(generator);
+
+        List<String> ruleNames = Arrays.asList("jsonText", "no_such_rule", "jsonValue", "jsonArray");
+        Map<String, Throwable> failures = generator.createDiagramsAndPdf(ruleNames, 2);
+
+        assertThat(failures.keySet()).containsOnly("no_such_rule");
+        assertThat(outputDir.list()).containsOnly("jsonText.png", "jsonValue.png", "jsonArray.png", "index.pdf");
+
+        byte[] pdf = Files.readAllBytes(new File(outputDir, "index.pdf").toPath());
+
+        assertThat(new String(pdf, 0, 5, "ISO-8859-1")).isEqualTo("%PDF-");
+        assertThat(new String(pdf, "ISO-8859-1").trim()).endsWith("%%EOF");
+    }
+
+    @Test
+    public void it_should_rasterize_the_images_of_a_raster_pdf_that_were_not_created() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("grammar T;\na : b+ 'x' ;\nb : 'y' | 'z' ;\n");
+        File outputDir = outputDir(generator);
+
+        assertThat(generator.createPdf(PdfMode.RASTER)).isTrue();
+        assertThat(outputDir.list()).containsOnly("index.pdf");
+
+        byte[] pdf = Files.readAllBytes(new File(outputDir, "index.pdf").toPath());
+
+        assertThat(new String(pdf, 0, 5, "ISO-8859-1")).isEqualTo("%PDF-");
+        assertThat(new String(pdf, "ISO-8859-1").trim()).endsWith("%%EOF");
+    }
+
+    @Test
+    public void it_should_create_a_lazy_html_page_with_a_diagram_file_per_rule() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        File outputDir = outputDir(generator);
+
+        assertThat(generator.createLazyHtml("lazy.html", false)).isTrue();
+
+        String html = new String(Files.readAllBytes(new File(outputDir, "lazy.html").toPath()), "UTF-8");
+
+        assertThat(html).contains("<td id=\"Json.g4_jsonValue\">");
+        assertThat(html).contains("data-diagram=\"jsonValue.svg\"");
+        assertThat(html).contains("IntersectionObserver");
+        assertThat(html).doesNotContain("<svg ");
+        assertThat(html.trim()).endsWith("</html>");
+
+        String svg = new String(Files.readAllBytes(new File(outputDir, "jsonValue.svg").toPath()), "UTF-8");
+
+        assertThat(svg).contains("xlink:href=\"lazy.html#Json.g4_jsonObject\" target=\"_top\"");
+    }
+
+    @Test
+    public void it_should_put_the_style_sheet_in_the_html_page_once() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+
+        for (boolean simpleHTML : new boolean[]{ false, true }) {
+            String html = generator.getHtml("index.html", simpleHTML);
+
+            assertThat(html.split("svg.railroad-diagram path", -1).length).as("simple: " + simpleHTML).isEqualTo(2);
+            assertThat(html).as("simple: " + simpleHTML).contains("<td id=\"Json.g4_jsonValue\">");
+        }
+
+        assertThat(generator.getSVG("jsonValue")).contains("svg.railroad-diagram path");
+    }
+
+    @Test
+    public void it_should_write_the_parts_diagrams_share_to_the_html_page_once() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Java.g4");
+
+        assertThat(generator.getHtml("index.html", false)).doesNotContain("<symbol ");
+
+        generator.setSharedSymbols(true);
+        String html = generator.getHtml("index.html", false);
+
+        assertThat(html.split("<symbol id=\"Java.g4-1\"", -1).length).isEqualTo(2);
+        assertThat(html.split("<use xlink:href=\"#Java.g4-1\"", -1).length).isGreaterThan(2);
+        assertThat(html.trim()).endsWith("</html>");
+
+        for (String ruleName : generator.getRuleNames()) {
+            assertThat(generator.getSVG(ruleName)).as(ruleName).doesNotContain("<use ");
+        }
+    }
+
+    // The largest difference between the channels of two pixels.
+    private static int difference(int a, int b) {
+
+        int difference = 0;
+
+        for (int shift = 0; shift < 32; shift += 8) {
+            difference = Math.max(difference, Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF)));
+        }
+
+        return difference;
+    }
+
+    @Test
+    public void it_should_rasterize_an_image_larger_than_the_pixel_budget_in_bands() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        int bandHeight = 7;
+
+        for (String ruleName : generator.getRuleNames()) {
+
+            generator.setMaxPixels(0);
+            BufferedImage whole = ImageIO.read(new ByteArrayInputStream(generator.getPNG(ruleName)));
+
+            generator.setMaxPixels(whole.getWidth() * bandHeight);
+            BufferedImage banded = ImageIO.read(new ByteArrayInputStream(generator.getPNG(ruleName)));
+
+            assertThat(banded.getWidth()).as(ruleName).isEqualTo(whole.getWidth());
+            assertThat(banded.getHeight()).as(ruleName).isEqualTo(whole.getHeight());
+
+            // Every band is the same part of the image as a whole, but for
+            // the anti-aliasing of a few pixels at its edges: a band drawn
+            // a row off differs in every line it crosses.
+            for (int top = 0; top < whole.getHeight(); top += bandHeight) {
+
+                int bottom = Math.min(top + bandHeight, whole.getHeight());
+                int differing = 0;
+
+                for (int y = top; y < bottom; y++) {
+                    for (int x = 0; x < whole.getWidth(); x++) {
+
+                        int difference = difference(whole.getRGB(x, y), banded.getRGB(x, y));
+
+                        assertThat(difference).as(ruleName + " at " + x + "," + y).isLessThanOrEqualTo(128);
+
+                        if (difference > 16) {
+                            differing++;
+                        }
+                    }
+                }
+
+                assertThat(differing).as(ruleName + " rows " + top + "-" + bottom)
+                        .isLessThanOrEqualTo((bottom - top) * whole.getWidth() / 100);
+            }
+        }
+    }
+
+    @Test
+    public void it_should_scale_and_compress_the_png_images() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+
+        byte[] png = generator.getPNG("jsonValue");
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+
+        generator.setPngScale(2);
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(generator.getPNG("jsonValue")));
+
+        assertThat(scaled.getWidth()).isEqualTo(image.getWidth() * 2);
+        assertThat(scaled.getHeight()).isEqualTo(image.getHeight() * 2);
+
+        generator.setPngScale(1);
+        generator.setPngCompression(0);
+        byte[] uncompressed = generator.getPNG("jsonValue");
+
+        assertThat(uncompressed.length).isGreaterThan(png.length);
+        assertThat(ImageIO.read(new ByteArrayInputStream(uncompressed)).getRGB(0, 0)).isEqualTo(image.getRGB(0, 0));
+    }
+}
@@ -0,0 +1,55 @@
+import nl.bigo.rrdantlr4.ANTLRv4Lexer;
+import nl.bigo.rrdantlr4.ANTLRv4Parser;
+import nl.bigo.rrdantlr4.DiagramNode;
+import nl.bigo.rrdantlr4.RuleVisitor;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DiagramNodeTest {
+
+    @Test
+    public void it_should_serialize_a_model_to_the_javascript_dsl() {
+        DiagramNode model = new DiagramNode.Choice(Arrays.asList(
+                new DiagramNode.Sequence(Arrays.<DiagramNode>asList(
+                        new DiagramNode.Terminal("'{'"),
+                        new DiagramNode.Repetition(DiagramNode.Repetition.Kind.ZERO_OR_MORE, new DiagramNode.NonTerminal("pair")))),
+                new DiagramNode.Comment("&#949;")));
+
+        assertThat(model.toDiagramDsl()).isEqualTo(
+                "Diagram(Choice(0, Sequence(Terminal('\\'{\\''), ZeroOrMore(NonTerminal('pair'))), Comment('&#949;'))).toString()");
+    }
+
+    @Test
+    public void it_should_escape_texts_as_javascript_strings() {
+        DiagramNode terminal = new DiagramNode.Terminal("'\\\n'");
+        assertThat(terminal.toDsl()).isEqualTo("Terminal('\\'\\\\\\n\\'')");
+    }
+
+    @Test
+    public void it_should_compare_models_by_structure() {
+        DiagramNode a = new DiagramNode.Repetition(DiagramNode.Repetition.Kind.OPTIONAL, new DiagramNode.Terminal("x"));
+        DiagramNode b = new DiagramNode.Repetition(DiagramNode.Repetition.Kind.OPTIONAL, new DiagramNode.Terminal("x"));
+        DiagramNode c = new DiagramNode.Repetition(DiagramNode.Repetition.Kind.OPTIONAL, new DiagramNode.NonTerminal("x"));
+
+        assertThat(a).isEqualTo(b);
+        assertThat(a.hashCode()).isEqualTo(b.hashCode());
+        assertThat(a).isNotEqualTo(c);
+    }
+
+    @Test
+    public void it_should_keep_a_literal_with_an_invalid_escape_as_it_is_written() {
+        ANTLRv4Parser parser = new ANTLRv4Parser(new CommonTokenStream(new ANTLRv4Lexer(
+                new ANTLRInputStream("grammar T;\na : '\\x' b ;\nb : 'y' ;\n"))));
+
+        RuleVisitor visitor = new RuleVisitor();
+        visitor.visit(parser.grammarSpec());
+
+        assertThat(visitor.getDiagramModels().keySet()).containsOnly("a", "b");
+        assertThat(visitor.getDiagramModel("a").toDsl()).contains("\\\\x");
+    }
+}
@@ -0,0 +1,103 @@
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import nl.bigo.rrdantlr4.DiagramServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DiagramServerTest {
+
+    private DiagramServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        server = new DiagramServer(Collections.singletonList(generator), 1024 * 1024, 4);
+        port = server.start(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void it_should_serve_the_diagram_of_a_rule() throws Exception {
+        assertThat(get("/grammar/Json/rule/jsonValue.svg")).startsWith("200 ");
+        assertThat(get("/grammar/Json/rule/jsonValue.svg")).contains("<svg ");
+        assertThat(get("/grammar/Json/rule/jsonValue.png")).startsWith("200 ");
+        assertThat(get("/grammar/Json")).contains("<td id=\"Json.g4_jsonValue\">");
+    }
+
+    @Test
+    public void it_should_not_find_unknown_grammars_and_rules() throws Exception {
+        assertThat(get("/grammar/Nope/rule/jsonValue.svg")).startsWith("404 ");
+        assertThat(get("/grammar/Json/rule/nope.svg")).startsWith("404 ");
+        assertThat(get("/grammar/Json/rule/jsonValue.gif")).startsWith("404 ");
+    }
+
+    @Test
+    public void it_should_render_a_diagram_requested_concurrently_once() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<String>> responses = new ArrayList<Future<String>>();
+
+            for (int i = 0; i < 8; i++) {
+                responses.add(clients.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return get("/grammar/Json/rule/jsonObject.png");
+                    }
+                }));
+            }
+
+            for (Future<String> response : responses) {
+                assertThat(response.get()).startsWith("200 ");
+            }
+        }
+        finally {
+            clients.shutdown();
+        }
+
+        String metrics = get("/metrics");
+
+        assertThat(metrics).contains("rrd_cache_entries 1\n");
+        assertThat(metrics).contains("rrd_renders_in_flight 0\n");
+    }
+
+    // Returns the status code, a space and the body of a response.
+    private String get(String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+
+        try {
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+
+            return status + " " + body.toString("UTF-8");
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import nl.bigo.rrdantlr4.GrammarBatch;
+import nl.bigo.rrdantlr4.RrdAntlrOptions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GrammarBatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void it_should_not_process_two_grammars_into_the_same_output_directory() throws Exception {
+        File first = new File(folder.newFolder("a"), "Json.g4");
+        File second = new File(folder.newFolder("b"), "Json.g4");
+        Files.copy(new File("src/test/resources/Json.g4").toPath(), first.toPath());
+        Files.copy(new File("src/test/resources/Json.g4").toPath(), second.toPath());
+
+        RrdAntlrOptions options = new RrdAntlrOptions();
+        new CmdLineParser(options).parseArgument(first.getPath(), second.getPath());
+
+        GrammarBatch batch = new GrammarBatch(options, null);
+        File outputDir = folder.newFolder("output");
+        batch.setOutputDir(outputDir);
+
+        List<GrammarBatch.Result> results = batch.run(Arrays.asList(first.getPath(), second.getPath()));
+
+        assertThat(results.get(0).isFailed()).isFalse();
+        assertThat(results.get(1).isFailed()).isTrue();
+        assertThat(results.get(1).getError()).contains(first.getPath())
+                .contains(new File(outputDir, "Json").getPath());
+    }
+
+    @Test
+    public void it_should_process_inline_grammars_into_an_output_directory_each() throws Exception {
+        String first = "grammar T; a : 'a' ;";
+        String second = "grammar T; b : 'b' ;";
+
+        RrdAntlrOptions options = new RrdAntlrOptions();
+        new CmdLineParser(options).parseArgument(first, second, first);
+
+        GrammarBatch batch = new GrammarBatch(options, null);
+        File outputDir = folder.newFolder("output");
+        batch.setOutputDir(outputDir);
+
+        List<GrammarBatch.Result> results = batch.run(Arrays.asList(first, second, first));
+
+        assertThat(results.get(0).isFailed()).isFalse();
+        assertThat(results.get(1).isFailed()).isFalse();
+        assertThat(results.get(2).isFailed()).isTrue();
+        assertThat(results.get(2).getError()).contains(new File(outputDir, "grammar-").getPath());
+    }
+}
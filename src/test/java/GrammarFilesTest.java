@@ -0,0 +1,58 @@
+import nl.bigo.rrdantlr4.GrammarFiles;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GrammarFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String path(String fileName) {
+        return new File("src/test/resources", fileName).getPath();
+    }
+
+    @Test
+    public void it_should_expand_a_directory_into_its_grammars() throws Exception {
+        assertThat(GrammarFiles.expand(Arrays.asList("src/test/resources")))
+                .isEqualTo(Arrays.asList(path("IRI.g4"), path("Java.g4"), path("Json.g4")));
+    }
+
+    @Test
+    public void it_should_expand_a_glob_without_duplicates() throws Exception {
+        assertThat(GrammarFiles.expand(Arrays.asList(path("Json.g4"), "src/test/resources/J*.g4")))
+                .isEqualTo(Arrays.asList(path("Json.g4"), path("Java.g4")));
+    }
+
+    @Test
+    public void it_should_pass_urls_and_missing_files_on_as_is() throws Exception {
+        assertThat(GrammarFiles.expand(Arrays.asList("http://example.com/T.g4", "missing.g4")))
+                .isEqualTo(Arrays.asList("http://example.com/T.g4", "missing.g4"));
+    }
+
+    @Test
+    public void it_should_pass_inline_grammars_with_wildcards_on_as_is() throws Exception {
+        String repetition = "grammar T; r : 'a'* ;";
+        String unclosedSet = "grammar T; r : [a-z ;";
+
+        assertThat(GrammarFiles.expand(Arrays.asList(repetition, unclosedSet)))
+                .isEqualTo(Arrays.asList(repetition, unclosedSet));
+    }
+
+    @Test
+    public void it_should_pass_an_invalid_glob_on_as_is() throws Exception {
+        assertThat(GrammarFiles.expand(Arrays.asList("src/test/resources/[J.g4")))
+                .isEqualTo(Arrays.asList("src/test/resources/[J.g4"));
+    }
+
+    @Test(expected = IOException.class)
+    public void it_should_fail_on_a_directory_without_grammars() throws Exception {
+        GrammarFiles.expand(Arrays.asList(folder.newFolder().getPath()));
+    }
+}
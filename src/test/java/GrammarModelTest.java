@@ -0,0 +1,34 @@
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GrammarModelTest {
+
+    @Test
+    public void it_should_render_and_link_the_imported_rules() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources-imports/Lists.g4");
+
+        assertThat(generator.getRuleNames()).containsExactly("list", "element", "ID", "INT", "COMMA", "WS");
+        assertThat(generator.getLinkedSVG("element")).contains("<a xlink:href=\"#Lists.g4_ID\">");
+        assertThat(generator.getHtml("index.html", false)).contains("An identifier.");
+    }
+
+    @Test
+    public void it_should_parse_a_grammar_imported_by_many_grammars_once() throws Exception {
+        DiagramGenerator lists = new DiagramGenerator("src/test/resources-imports/Lists.g4");
+        DiagramGenerator calls = new DiagramGenerator("src/test/resources-imports/Calls.g4");
+
+        assertThat(calls.getDiagramModel("ID")).isSameAs(lists.getDiagramModel("ID"));
+        assertThat(calls.getDiagramModel("COMMA")).isSameAs(lists.getDiagramModel("COMMA"));
+    }
+
+    @Test
+    public void it_should_not_replace_the_rules_of_the_importing_grammar() throws Exception {
+        DiagramGenerator lists = new DiagramGenerator("src/test/resources-imports/Lists.g4");
+        DiagramGenerator calls = new DiagramGenerator("src/test/resources-imports/Calls.g4");
+
+        assertThat(calls.getRuleNames()).containsExactly("call", "argument", "INT", "ID", "COMMA", "WS");
+        assertThat(calls.getDiagramModel("INT")).isNotSameAs(lists.getDiagramModel("INT"));
+    }
+}
@@ -0,0 +1,46 @@
+import nl.bigo.rrdantlr4.ANTLRv4Lexer;
+import nl.bigo.rrdantlr4.ANTLRv4Parser;
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import nl.bigo.rrdantlr4.GrammarParser;
+import nl.bigo.rrdantlr4.GrammarSource;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GrammarParserTest {
+
+    private static String parseWithLL(GrammarSource source) {
+        ANTLRv4Parser parser = new ANTLRv4Parser(new CommonTokenStream(new ANTLRv4Lexer(source.newCharStream())));
+        return parser.grammarSpec().toStringTree(parser);
+    }
+
+    @Test
+    public void it_should_parse_like_the_ll_parser() throws Exception {
+        ANTLRv4Parser names = new ANTLRv4Parser(null);
+
+        for (String grammar : new String[]{ "Java.g4", "IRI.g4", "Json.g4" }) {
+            GrammarSource source = GrammarSource.load("src/test/resources/" + grammar);
+
+            long sllParses = GrammarParser.getSllParses();
+            ParseTree tree = GrammarParser.parse(source);
+
+            assertThat(tree.toStringTree(names)).as(grammar).isEqualTo(parseWithLL(source));
+            assertThat(GrammarParser.getSllParses()).as(grammar).isEqualTo(sllParses + 1);
+
+            // And again, with the same lexer and parser.
+            assertThat(GrammarParser.parse(source).toStringTree(names)).as(grammar).isEqualTo(parseWithLL(source));
+        }
+    }
+
+    @Test
+    public void it_should_fall_back_to_ll_on_a_syntax_error() throws Exception {
+        long llParses = GrammarParser.getLlParses();
+
+        DiagramGenerator generator = new DiagramGenerator("grammar T;\na : 'x' ;;\nb : 'y' a ;\n");
+
+        assertThat(GrammarParser.getLlParses()).isEqualTo(llParses + 1);
+        assertThat(generator.getRuleNames()).contains("a", "b");
+    }
+}
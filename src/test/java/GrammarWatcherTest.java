@@ -0,0 +1,94 @@
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import nl.bigo.rrdantlr4.GrammarWatcher;
+import nl.bigo.rrdantlr4.RrdAntlrOptions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kohsuke.args4j.CmdLineParser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GrammarWatcherTest {
+
+    private static final String GRAMMAR =
+            "grammar T;\n" +
+            "a : b C ;\n" +
+            "b : C+ ;\n" +
+            "// A C.\n" +
+            "C : 'c' ;\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File write(File file, String grammar) throws Exception {
+        Writer writer = new FileWriter(file);
+
+        try {
+            writer.write(grammar);
+        }
+        finally {
+            writer.close();
+        }
+
+        return file;
+    }
+
+    private DiagramGenerator generator(String grammar) throws Exception {
+        return new DiagramGenerator(write(new File(folder.newFolder(), "T.g4"), grammar).getPath());
+    }
+
+    @Test
+    public void it_should_find_no_changes_in_the_same_grammar() throws Exception {
+        DiagramGenerator previous = generator(GRAMMAR);
+        DiagramGenerator next = generator(GRAMMAR + "\n\n");
+
+        assertThat(GrammarWatcher.changedRules(previous, next)).isEmpty();
+    }
+
+    @Test
+    public void it_should_find_the_changed_and_added_rules() throws Exception {
+        DiagramGenerator previous = generator(GRAMMAR);
+        DiagramGenerator next = generator(GRAMMAR.replace("C+", "C*") + "D : 'd' ;\n");
+
+        assertThat(GrammarWatcher.changedRules(previous, next)).containsOnly("b", "D");
+    }
+
+    @Test
+    public void it_should_watch_a_grammar_that_was_given_as_a_directory() throws Exception {
+        DiagramGenerator generator = generator(GRAMMAR);
+        String directory = new File(generator.getGrammar()).getParent();
+
+        RrdAntlrOptions options = new RrdAntlrOptions();
+        new CmdLineParser(options).parseArgument("--watch", directory);
+
+        // Throws when the directory itself would be watched.
+        new GrammarWatcher(generator, options);
+    }
+
+    @Test
+    public void it_should_watch_and_reparse_the_imported_grammars() throws Exception {
+        File directory = folder.newFolder();
+        File grammar = write(new File(directory, "T.g4"), "grammar T;\nimport Common;\na : B C ;\n");
+        File common = write(new File(directory, "Common.g4"), "lexer grammar Common;\nB : 'b' ;\nC : 'c' ;\n");
+
+        DiagramGenerator previous = new DiagramGenerator(grammar.getPath());
+
+        RrdAntlrOptions options = new RrdAntlrOptions();
+        new CmdLineParser(options).parseArgument("--watch", grammar.getPath());
+
+        assertThat(new GrammarWatcher(previous, options).getWatchedFiles())
+                .containsOnly(grammar.toPath().toAbsolutePath(), common.toPath().toAbsolutePath());
+
+        write(common, "lexer grammar Common;\nB : 'b' ;\nC : 'c'+ ;\n");
+        // Not within the resolution of the modification time.
+        assertThat(common.setLastModified(common.lastModified() + 2000)).isTrue();
+
+        DiagramGenerator next = new DiagramGenerator(grammar.getPath());
+
+        assertThat(GrammarWatcher.changedRules(previous, next)).containsOnly("C");
+    }
+}
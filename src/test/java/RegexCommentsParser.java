@@ -0,0 +1,41 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regular expression based implementation `CommentsParser` used to
+ * have: the reference its results are compared with.
+ */
+final class RegexCommentsParser {
+
+    private static final String RULE_NAME_PATTERN = "<(.*?)>";
+    private static final String COMMENT_BOUNDARY_PATTERN = "/\\*|\\*/";
+
+    private RegexCommentsParser() {
+    }
+
+    static Map<String, String> commentsMap(String input) {
+        Map<String, String> commentsMap = new HashMap<String, String>();
+        List<String> comments = new ArrayList<String>();
+
+        Matcher commentMatcher = Pattern.compile("/\\*(.)*?\\*/", Pattern.MULTILINE | Pattern.DOTALL).matcher(input);
+
+        while (commentMatcher.find()) {
+            comments.add(commentMatcher.group());
+        }
+
+        for (String comment : comments) {
+            Matcher ruleName = Pattern.compile(RULE_NAME_PATTERN, Pattern.MULTILINE | Pattern.DOTALL).matcher(comment);
+
+            if (ruleName.find()) {
+                commentsMap.put(ruleName.group(1), comment.replaceAll(RULE_NAME_PATTERN, "")
+                        .replaceAll(COMMENT_BOUNDARY_PATTERN, "").trim());
+            }
+        }
+
+        return commentsMap;
+    }
+}
@@ -0,0 +1,98 @@
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import nl.bigo.rrdantlr4.Renderer;
+import nl.bigo.rrdantlr4.ScriptContextPool;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RendererTest {
+
+    private static void assertSameSVG(String grammar) throws Exception {
+        DiagramGenerator java = new DiagramGenerator(grammar, Renderer.JAVA);
+        DiagramGenerator javaScript = new DiagramGenerator(grammar, Renderer.JAVASCRIPT);
+
+        for (String rule : java.getRules().keySet()) {
+            assertThat(java.getSVG(rule)).as(rule).isEqualTo(javaScript.getSVG(rule));
+            assertThat(java.getLinkedSVG(rule)).as(rule).isEqualTo(javaScript.getLinkedSVG(rule));
+        }
+    }
+
+    @Test
+    public void it_should_render_the_json_grammar_like_the_javascript_library() throws Exception {
+        assertSameSVG("src/test/resources/Json.g4");
+    }
+
+    @Test
+    public void it_should_render_the_iri_grammar_like_the_javascript_library() throws Exception {
+        assertSameSVG("src/test/resources/IRI.g4");
+    }
+
+    @Test
+    public void it_should_render_the_java_grammar_like_the_javascript_library() throws Exception {
+        assertSameSVG("src/test/resources/Java.g4");
+    }
+
+    @Test
+    public void it_should_render_from_many_threads_with_a_pool_of_script_contexts() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        final ScriptContextPool pool = new ScriptContextPool(2);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            List<String> expected = new ArrayList<String>();
+
+            for (int i = 0; i < 10; i++) {
+                for (final Map.Entry<String, String> rule : generator.getRules().entrySet()) {
+                    expected.add(pool.render(rule.getValue()));
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return pool.render(rule.getValue());
+                        }
+                    }));
+                }
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get()).isEqualTo(expected.get(i));
+            }
+        }
+        finally {
+            executor.shutdown();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void it_should_minify_the_svg_of_both_renderers() throws Exception {
+        for (Renderer renderer : Renderer.values()) {
+            DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4", renderer);
+            DiagramGenerator minified = new DiagramGenerator("src/test/resources/Json.g4", renderer);
+            minified.setMinifiedSVG(true);
+
+            for (String rule : generator.getRuleNames()) {
+                String svg = minified.getSVG(rule);
+
+                assertThat(svg.length()).as(rule).isLessThan(generator.getSVG(rule).length());
+                assertThat(svg).as(rule).doesNotContain("\n");
+                assertThat(svg).as(rule).contains("<style type=\"text/css\">");
+
+                // Still well-formed XML.
+                DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(svg)));
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import nl.bigo.rrdantlr4.Renderer;
+import nl.bigo.rrdantlr4.RuleGraph;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RuleGraphTest {
+
+    @Test
+    public void it_should_know_which_rules_refer_to_a_rule() throws Exception {
+        RuleGraph graph = new DiagramGenerator("src/test/resources/Json.g4").getRuleGraph();
+
+        assertThat(graph.getReferences("jsonObject")).containsExactly("member");
+        assertThat(graph.getReferences("member")).containsExactly("jsonValue", "STRING");
+        assertThat(graph.getUsedBy("jsonValue")).containsExactly("member", "jsonArray");
+        assertThat(graph.getUsedBy("STRING")).containsExactly("jsonString", "member");
+        assertThat(graph.getUsedBy("jsonText")).isEmpty();
+    }
+
+    @Test
+    public void it_should_find_the_rules_that_cannot_be_reached() throws Exception {
+        RuleGraph graph = new DiagramGenerator("src/test/resources/Json.g4").getRuleGraph();
+
+        assertThat(graph.getUnreachable(Collections.singletonList("jsonText"))).containsExactly("WS");
+        assertThat(graph.getUnreachable(Arrays.asList("NUMBER", "STRING")))
+                .containsExactly("jsonText", "jsonValue", "jsonNumber", "jsonString", "jsonObject", "member",
+                        "jsonArray", "WS");
+    }
+
+    @Test
+    public void it_should_only_render_the_rules_reachable_from_the_roots() throws Exception {
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4", Renderer.JAVA,
+                Collections.singletonList("jsonNumber"));
+
+        assertThat(generator.getRuleNames()).containsExactly("jsonNumber", "INT", "NUMBER", "EXPONENT");
+        assertThat(generator.getRuleGraph().size()).isEqualTo(15);
+        assertThat(generator.getHtml("index.html", false)).contains("jsonNumber").doesNotContain("jsonValue");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void it_should_not_accept_a_root_that_is_not_a_rule() throws Exception {
+        new DiagramGenerator("src/test/resources/Json.g4", Renderer.JAVA, Collections.singletonList("jsonDate"));
+    }
+}
@@ -0,0 +1,84 @@
+import nl.bigo.rrdantlr4.ScriptContextPool;
+import org.graalvm.polyglot.Context;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ScriptContextPoolTest {
+
+    // Borrows a context on another thread, which has to wait for it.
+    private static Future<Context> borrowLater(ExecutorService executor, final ScriptContextPool pool) throws Exception {
+
+        Future<Context> waiter = executor.submit(new Callable<Context>() {
+            @Override
+            public Context call() throws InterruptedException {
+                return pool.borrow();
+            }
+        });
+
+        try {
+            waiter.get(200, TimeUnit.MILLISECONDS);
+            throw new AssertionError("the pool is full, but a context was borrowed");
+        }
+        catch (TimeoutException e) {
+            return waiter;
+        }
+    }
+
+    @Test
+    public void it_should_create_a_context_for_a_waiting_thread_when_one_is_discarded() throws Exception {
+        ScriptContextPool pool = new ScriptContextPool(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Context context = pool.borrow();
+            Future<Context> waiter = borrowLater(executor, pool);
+
+            pool.discard(context);
+
+            Context created = waiter.get(30, TimeUnit.SECONDS);
+            assertThat(created).isNotSameAs(context);
+            assertThat(created.eval("js", "1 + 1").asInt()).isEqualTo(2);
+
+            pool.release(created);
+        }
+        finally {
+            executor.shutdownNow();
+            pool.close();
+        }
+    }
+
+    @Test
+    public void it_should_stop_a_waiting_thread_when_the_pool_is_closed() throws Exception {
+        ScriptContextPool pool = new ScriptContextPool(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Context context = pool.borrow();
+            Future<Context> waiter = borrowLater(executor, pool);
+
+            pool.close();
+
+            try {
+                waiter.get(30, TimeUnit.SECONDS);
+                throw new AssertionError("a context was borrowed from a closed pool");
+            }
+            catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            }
+
+            pool.release(context);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import nl.bigo.rrdantlr4.DiagramGenerator;
+import nl.bigo.rrdantlr4.Stats;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StatsTest {
+
+    @After
+    public void tearDown() {
+        Stats.setEnabled(false);
+        Stats.reset();
+    }
+
+    @Test
+    public void it_should_name_the_slowest_rules() throws Exception {
+        Stats.reset();
+        Stats.setEnabled(true);
+
+        DiagramGenerator generator = new DiagramGenerator("src/test/resources/Json.g4");
+        generator.getHtml("index.html", false);
+
+        String summary = summary(3);
+
+        assertThat(summary).contains("parse");
+        assertThat(summary).contains("render svg");
+        assertThat(summary).contains("html");
+        assertThat(summary).contains("3 slowest rule(s):");
+    }
+
+    @Test
+    public void it_should_not_charge_a_phase_for_the_phases_it_contains() throws Exception {
+        Stats.reset();
+        Stats.setEnabled(true);
+
+        Stats.Span outer = Stats.begin(Stats.Phase.PNG, "T.g4", "a");
+        Stats.Span inner = Stats.begin(Stats.Phase.RENDER, "T.g4", "a");
+        Thread.sleep(50);
+        inner.end(10);
+        outer.end(20);
+
+        String summary = summary(1);
+
+        assertThat(millis(summary, "render svg")).isGreaterThanOrEqualTo(50);
+        assertThat(millis(summary, "transcode png")).isLessThan(millis(summary, "render svg") - 40);
+    }
+
+    @Test
+    public void it_should_record_nothing_when_disabled() throws Exception {
+        Stats.reset();
+
+        Stats.begin(Stats.Phase.PARSE, "T.g4", null).end(100);
+
+        assertThat(summary(10)).doesNotContain("parse");
+    }
+
+    // The time of a phase in the summary.
+    private static double millis(String summary, String phase) {
+        Matcher matcher = Pattern.compile(phase + "\\s+\\d+\\s+([\\d.]+)ms").matcher(summary);
+        assertThat(matcher.find()).as(phase).isTrue();
+        return Double.parseDouble(matcher.group(1));
+    }
+
+    private static String summary(int slowest) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Stats.printSummary(new PrintStream(out, true, "UTF-8"), slowest);
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,10 @@
+grammar Calls;
+
+import Common = CommonLexer;
+
+call : ID '(' ( argument ( COMMA argument )* )? ')' ;
+
+argument : ID | INT | call ;
+
+// Replaces the imported rule.
+INT : [1-9] [0-9]* | '0' ;
@@ -0,0 +1,10 @@
+lexer grammar CommonLexer;
+
+/* <ID> An identifier. */
+ID : [a-zA-Z_] [a-zA-Z_0-9]* ;
+
+INT : [0-9]+ ;
+
+COMMA : ',' ;
+
+WS : [ \t\r\n]+ -> skip ;
@@ -0,0 +1,7 @@
+grammar Lists;
+
+import CommonLexer;
+
+list : '[' ( element ( COMMA element )* )? ']' ;
+
+element : ID | INT | list ;